@@ -23,11 +23,16 @@
  */
 package clockwork;
 
+import java.io.File;
+
 import javax.swing.SwingUtilities;
 
+import clockwork.asset.AssetManager;
 import clockwork.gui.UserInterface;
 import clockwork.gui.Window;
 import clockwork.scene.Scene;
+import clockwork.system.Error;
+import clockwork.system.RuntimeOptions;
 
 /**
  * The software renderer's main class.
@@ -38,10 +43,32 @@ public final class Clockwork
 	 * The application's entry point. This will build the user interface and update it for
 	 * the first time or else we'll be left with uninitialised GUI values until a user
 	 * interacts with the application.
-	 * @param unused unused command line parameters.
+	 * The "-single-precision-depth" command line parameter stores depth values in single precision.
+	 * The "-tiled-textures" command line parameter stores textures in a tiled memory layout.
+	 * The "-compressed-textures" command line parameter compresses opaque textures.
+	 * The "-write-virtual-texture image file" command line parameters write the virtual
+	 * texture page file of an image file, then exit.
+	 * @param arguments command line parameters.
 	 */
-	public static void main(final String unused[])
+	public static void main(final String arguments[])
 	{
+		for (int i = 0; i < arguments.length; ++i)
+		{
+			final String argument = arguments[i];
+			if (argument.equals("-write-virtual-texture") && i + 2 < arguments.length)
+			{
+				final Error error = AssetManager.WriteVirtualTexture(new File(arguments[i + 1]), new File(arguments[i + 2]));
+				if (error != Error.None)
+					System.err.println(error);
+				System.exit(error == Error.None ? 0 : 1);
+			}
+			else if (argument.equals("-single-precision-depth"))
+				RuntimeOptions.EnableSinglePrecisionDepth = true;
+			else if (argument.equals("-tiled-textures"))
+				RuntimeOptions.EnableTiledTextures = true;
+			else if (argument.equals("-compressed-textures"))
+				RuntimeOptions.EnableTextureCompression = true;
+		}
 		SwingUtilities.invokeLater(new Runnable()
 		{
 			@Override
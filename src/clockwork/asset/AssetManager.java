@@ -25,20 +25,26 @@ package clockwork.asset;
 
 import java.io.File;
 import java.io.IOException;
+import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.List;
 
 import clockwork.asset.io.reader.AssetReader;
 import clockwork.asset.io.reader.TextureReader;
+import clockwork.asset.io.reader.VirtualTextureReader;
 import clockwork.asset.io.reader.model3d.Model3DReader;
 import clockwork.asset.io.reader.model3d.Model3DReaderCTM;
 import clockwork.asset.io.reader.model3d.Model3DReaderOBJ;
 import clockwork.asset.io.writer.AssetWriter;
 import clockwork.asset.io.writer.TextureWriter;
+import clockwork.asset.io.writer.VirtualTextureWriter;
 import clockwork.asset.io.writer.model3d.Model3DWriter;
 import clockwork.asset.io.writer.model3d.Model3DWriterCTM;
 import clockwork.asset.io.writer.model3d.Model3DWriterOBJ;
 import clockwork.graphics.Model3D;
 import clockwork.graphics.Texture;
+import clockwork.graphics.TextureAtlas;
+import clockwork.system.Error;
 
 public class AssetManager
 {
@@ -53,6 +59,7 @@ public class AssetManager
 		supportedFiles.put("obj",  new ReaderWriterPair(new Model3DReaderOBJ(),  new Model3DWriterOBJ()));
 		supportedFiles.put("ctm",  new ReaderWriterPair(new Model3DReaderCTM(),  new Model3DWriterCTM()));
 		supportedFiles.put("_tex", new ReaderWriterPair(new TextureReader(),     new TextureWriter()));
+		supportedFiles.put("vtex", new ReaderWriterPair(new VirtualTextureReader(), new VirtualTextureWriter()));
 
 //TODO add	supportedFiles.put("json", new ReaderWriterPair(new TextReaderJSON(), new TextWriterJSON()));
 	}
@@ -100,20 +107,71 @@ public class AssetManager
 	}
 	/**
 	 * Load a texture from a given file. If the texture already exists in memory
-	 * then the copy in memory is returned, otherwise the file is loaded.
+	 * then the copy in memory is returned, otherwise the file is loaded. Virtual
+	 * texture page files (*.vtex) are loaded as virtual textures.
 	 * @param file the file containing the texture data to load.
 	 */
 	public static Texture LoadTexture(final File file)
 	{
 		if (file != null)
 		{
-			// Use the internal "_tex" extension to retrieve the texture reader.
-			final TextureReader reader = (TextureReader)supportedFiles.get("_tex").reader;
+			// Use the internal "_tex" extension to retrieve the texture reader, unless
+			// the file is a virtual texture's page file.
+			final String key = "vtex".equals(getFileExtension(file)) ? "vtex" : "_tex";
+			final AssetReader<?> reader = supportedFiles.get(key).reader;
 			if (reader != null)
 				return (Texture)LoadAsset(file, reader);
 		}
 		return null;
 	}
+	/**
+	 * Pack the diffuse maps of every loaded 3D model into texture atlas pages, which are
+	 * added to the loaded assets. The models' texture coordinates and materials are
+	 * modified accordingly.
+	 * @see TextureAtlas
+	 */
+	public static List<Texture> PackTextureAtlas()
+	{
+		final List<Model3D> models = new ArrayList<Model3D>();
+		for (final Asset asset : assets.values())
+		{
+			if (asset instanceof Model3D)
+				models.add((Model3D)asset);
+		}
+
+		final List<Texture> pages = TextureAtlas.Pack(models);
+		for (final Texture page : pages)
+		{
+			final String assetKey = "atlas/" + System.identityHashCode(page);
+			page.setAssetKey(assetKey);
+			assets.put(assetKey, page);
+		}
+		return pages;
+	}
+	/**
+	 * Write the virtual texture page file of an image file, which may be too large to be
+	 * loaded as a texture. The page file can then be loaded with LoadTexture.
+	 * @param image the image file.
+	 * @param file the page file (*.vtex) to write to.
+	 */
+	public static Error WriteVirtualTexture(final File image, final File file)
+	{
+		final VirtualTextureWriter writer = (VirtualTextureWriter)supportedFiles.get("vtex").writer;
+		try
+		{
+			final long t0 = System.currentTimeMillis();
+			final Error error = writer.write(image, file);
+			final long t1 = System.currentTimeMillis();
+			if (error == Error.None)
+				System.out.println(String.format("Wrote '%s' in %.1fs", file.getName(), (t1 - t0)/1000.0));
+			return error;
+		}
+		catch (IOException e)
+		{
+			System.err.println("Could not write '" + file.getName() + "': " + e.getMessage());
+			return Error.CouldNotWriteFile;
+		}
+	}
 	/**
 	 * Load a texture from a given file.
 	 * @param filename the name of the file containing the texture data to load.
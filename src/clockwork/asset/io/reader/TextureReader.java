@@ -32,6 +32,7 @@ import java.io.IOException;
 import javax.imageio.ImageIO;
 
 import clockwork.graphics.Texture;
+import clockwork.system.RuntimeOptions;
 
 public class TextureReader extends AssetReader<Texture>
 {
@@ -62,6 +63,11 @@ public class TextureReader extends AssetReader<Texture>
 					((DataBufferInt)ARGB.getRaster().getDataBuffer()).getData();
 
 					output = new Texture(texels, width, height);
+					output.generateMipmaps();
+					if (RuntimeOptions.EnableTextureCompression)
+						output.compress();
+					if (RuntimeOptions.EnableTiledTextures)
+						output.tile();
 				}
 			}
 		}
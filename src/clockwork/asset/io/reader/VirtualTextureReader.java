@@ -0,0 +1,70 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2013 Jeremy Othieno.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package clockwork.asset.io.reader;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+
+import clockwork.graphics.Texture;
+import clockwork.graphics.VirtualTexture;
+
+/**
+ * Reads a virtual texture's page file. The page file remains open while the texture is
+ * used, so pages are streamed from it rather than read here.
+ */
+public class VirtualTextureReader extends AssetReader<Texture>
+{
+	/**
+	 * Open a page file and return the virtual texture it stores, or null if the page file
+	 * is not valid. The page file is accessed randomly, so it is not read as a stream.
+	 * @param file the page file.
+	 */
+	@Override
+	public Texture read(final File file)
+	{
+		Texture output = null;
+		if (file != null && file.exists())
+		{
+			try
+			{
+				output = new VirtualTexture(file);
+			}
+			catch (final IOException e)
+			{
+				System.err.println("Could not parse '" + file.getName() + "'");
+			}
+		}
+		return output;
+	}
+	/**
+	 * Page files are not read as streams.
+	 * @see #read(File)
+	 */
+	@Override
+	protected Texture parse(final FileInputStream input) throws IOException
+	{
+		return null;
+	}
+}
@@ -0,0 +1,300 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2013 Jeremy Othieno.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package clockwork.asset.io.writer;
+
+import java.awt.Rectangle;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.util.Iterator;
+
+import javax.imageio.ImageIO;
+import javax.imageio.ImageReadParam;
+import javax.imageio.ImageReader;
+import javax.imageio.stream.ImageInputStream;
+
+import clockwork.graphics.Texture;
+import clockwork.graphics.VirtualTexture;
+import clockwork.system.Error;
+
+/**
+ * Writes a virtual texture's page file, either from a texture in memory or from an image
+ * file that is too large to be loaded at once. Image files are read one strip of pages at a
+ * time, and each level of the mipmap pyramid is generated from the previous level's pages.
+ * @see VirtualTexture
+ */
+public class VirtualTextureWriter implements AssetWriter<Texture>
+{
+	@Override
+	public Error write(final Texture asset, final File file) throws IOException
+	{
+		final int texels[] = asset != null ? asset.getTexels() : null;
+		if (texels == null)
+			return Error.CouldNotWriteFile;
+
+		return write(new RowSource()
+		{
+			@Override
+			public int[] getRows(final int y0, final int y1)
+			{
+				final int rows[] = new int[(y1 - y0) * asset.width];
+				System.arraycopy(texels, y0 * asset.width, rows, 0, rows.length);
+				return rows;
+			}
+		},
+		asset.width, asset.height, file);
+	}
+	/**
+	 * Write the page file of an image file.
+	 * @param image the image file.
+	 * @param file the page file to write to.
+	 */
+	public Error write(final File image, final File file) throws IOException
+	{
+		final ImageInputStream stream = ImageIO.createImageInputStream(image);
+		if (stream == null)
+			return Error.CouldNotReadFile;
+
+		try
+		{
+			final Iterator<ImageReader> readers = ImageIO.getImageReaders(stream);
+			if (!readers.hasNext())
+				return Error.CouldNotReadFile;
+
+			final ImageReader reader = readers.next();
+			try
+			{
+				reader.setInput(stream, false, true);
+				final int width = reader.getWidth(0);
+
+				// Only decode the rows of each strip of pages.
+				return write(new RowSource()
+				{
+					@Override
+					public int[] getRows(final int y0, final int y1) throws IOException
+					{
+						final ImageReadParam param = reader.getDefaultReadParam();
+						param.setSourceRegion(new Rectangle(0, y0, width, y1 - y0));
+						return reader.read(0, param).getRGB(0, 0, width, y1 - y0, null, 0, width);
+					}
+				},
+				width, reader.getHeight(0), file);
+			}
+			finally
+			{
+				reader.dispose();
+			}
+		}
+		finally
+		{
+			stream.close();
+		}
+	}
+	/**
+	 * Write a page file.
+	 * @param source the texture's rows.
+	 * @param width the texture's width.
+	 * @param height the texture's height.
+	 * @param file the page file to write to.
+	 */
+	private Error write(final RowSource source, final int width, final int height, final File file)
+	throws IOException
+	{
+		final int levels = VirtualTexture.GetLevelCount(width, height);
+		final long offsets[] = new long[levels];
+		final RandomAccessFile output = new RandomAccessFile(file, "rw");
+		try
+		{
+			output.setLength(0);
+			output.writeInt(VirtualTexture.MAGIC);
+			output.writeInt(width);
+			output.writeInt(height);
+			output.writeInt(VirtualTexture.PAGE_SIZE);
+			output.writeInt(levels);
+
+			final int P = VirtualTexture.PAGE_SIZE;
+			final int S = VirtualTexture.PAGE_STRIDE;
+			final int page[] = new int[S * S];
+			final byte bytes[] = new byte[4 * page.length];
+
+			int w = width, h = height;
+			for (int level = 0; level < levels; ++level)
+			{
+				offsets[level] = output.getFilePointer();
+				final int columns = (w + P - 1) / P;
+				final int rows = (h + P - 1) / P;
+
+				for (int r = 0; r < rows; ++r)
+				{
+					// The rows covered by the strip of pages, including their border.
+					final int y0 = r * P;
+					final int y1 = Math.min(h, y0 + S);
+					final int strip[];
+					if (level == 0)
+						strip = source.getRows(y0, y1);
+					else
+					{
+						// Generate the strip from the previous level's pages.
+						final int parentWidth = Math.max(1, width >> (level - 1));
+						final int parentHeight = Math.max(1, height >> (level - 1));
+						final long position = output.getFilePointer();
+						final int parent[] = readRows
+						(
+							output,
+							offsets[level - 1],
+							parentWidth,
+							2 * y0,
+							Math.min(parentHeight, 2 * y1)
+						);
+						output.seek(position);
+						strip = downsample(parent, parentWidth, parentHeight, 2 * y0, w, y0, y1);
+					}
+
+					for (int c = 0; c < columns; ++c)
+					{
+						for (int py = 0; py < S; ++py)
+						{
+							final int y = Math.min(y1 - y0 - 1, py);
+							for (int px = 0; px < S; ++px)
+							{
+								final int x = Math.min(w - 1, (c * P) + px);
+								page[px + (py * S)] = strip[x + (y * w)];
+							}
+						}
+						ByteBuffer.wrap(bytes).asIntBuffer().put(page);
+						output.write(bytes);
+					}
+				}
+				w = Math.max(1, w >> 1);
+				h = Math.max(1, h >> 1);
+			}
+		}
+		finally
+		{
+			output.close();
+		}
+		return Error.None;
+	}
+	/**
+	 * Read rows of a level that was already written to the page file.
+	 * @param file the page file.
+	 * @param offset the offset of the level's first page.
+	 * @param width the level's width.
+	 * @param y0 the first row to read.
+	 * @param y1 the row after the last row to read.
+	 */
+	private static int[] readRows
+	(
+		final RandomAccessFile file,
+		final long offset,
+		final int width,
+		final int y0,
+		final int y1
+	)
+	throws IOException
+	{
+		final int P = VirtualTexture.PAGE_SIZE;
+		final int S = VirtualTexture.PAGE_STRIDE;
+		final int columns = (width + P - 1) / P;
+		final int page[] = new int[S * S];
+		final byte bytes[] = new byte[4 * page.length];
+		final int rows[] = new int[(y1 - y0) * width];
+
+		for (int r = y0 / P; r <= (y1 - 1) / P; ++r)
+		{
+			for (int c = 0; c < columns; ++c)
+			{
+				file.seek(offset + ((long)bytes.length * (c + ((long)r * columns))));
+				file.readFully(bytes);
+				ByteBuffer.wrap(bytes).asIntBuffer().get(page);
+
+				final int ya = Math.max(y0, r * P), yb = Math.min(y1, (r + 1) * P);
+				final int xa = c * P, xb = Math.min(width, xa + P);
+				for (int y = ya; y < yb; ++y)
+					System.arraycopy(page, (y - (r * P)) * S, rows, (xa + ((y - y0) * width)), xb - xa);
+			}
+		}
+		return rows;
+	}
+	/**
+	 * Generate rows of a level from the previous level's rows. Each texel is the average
+	 * of the (up to) 2x2 texels it covers in the previous level.
+	 * @param parent the previous level's rows.
+	 * @param parentWidth the previous level's width.
+	 * @param parentHeight the previous level's height.
+	 * @param parentY0 the index of the first of the previous level's rows.
+	 * @param width the level's width.
+	 * @param y0 the first row to generate.
+	 * @param y1 the row after the last row to generate.
+	 */
+	private static int[] downsample
+	(
+		final int parent[],
+		final int parentWidth,
+		final int parentHeight,
+		final int parentY0,
+		final int width,
+		final int y0,
+		final int y1
+	)
+	{
+		final int rows[] = new int[(y1 - y0) * width];
+		for (int y = y0; y < y1; ++y)
+		{
+			final int sy0 = Math.min(parentHeight - 1, y * 2) - parentY0;
+			final int sy1 = Math.min(parentHeight - 1, (y * 2) + 1) - parentY0;
+			for (int x = 0; x < width; ++x)
+			{
+				final int sx0 = Math.min(parentWidth - 1, x * 2), sx1 = Math.min(parentWidth - 1, (x * 2) + 1);
+				final int t00 = parent[sx0 + (sy0 * parentWidth)], t10 = parent[sx1 + (sy0 * parentWidth)];
+				final int t01 = parent[sx0 + (sy1 * parentWidth)], t11 = parent[sx1 + (sy1 * parentWidth)];
+
+				// Average each channel, rounding to the nearest value.
+				int texel = 0;
+				for (int shift = 0; shift < 32; shift += 8)
+				{
+					final int sum =
+					((t00 >>> shift) & 0xff) + ((t10 >>> shift) & 0xff) +
+					((t01 >>> shift) & 0xff) + ((t11 >>> shift) & 0xff);
+					texel |= ((sum + 2) >> 2) << shift;
+				}
+				rows[x + ((y - y0) * width)] = texel;
+			}
+		}
+		return rows;
+	}
+	/**
+	 * A source of a texture's rows.
+	 */
+	private static interface RowSource
+	{
+		/**
+		 * Return the texture's rows in a given range, in row-major order.
+		 * @param y0 the first row.
+		 * @param y1 the row after the last row.
+		 */
+		int[] getRows(final int y0, final int y1) throws IOException;
+	}
+}
@@ -0,0 +1,143 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2013 Jeremy Othieno.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package clockwork.benchmark;
+
+import clockwork.graphics.Framebuffer;
+import clockwork.graphics.renderer.Renderer;
+import clockwork.graphics.renderer.RendererFactory;
+import clockwork.physics.lighting.Light;
+import clockwork.physics.lighting.LightEmitter;
+import clockwork.scene.Scene;
+import clockwork.system.Services;
+import clockwork.types.math.Point3f;
+
+/**
+ * The scene rendered by the benchmarks: the default scene, lit by a set of directional
+ * lights. The scene is rendered headless, without a window, and frames are read back from
+ * the framebuffer so that they can be timed and compared.
+ */
+final class BenchmarkScene
+{
+	/**
+	 * The number of frames rendered before a measurement, so that the renderer's code
+	 * is compiled before it is timed.
+	 */
+	private static final int WARMUP_FRAMES = 10;
+	/**
+	 * The benchmark scene is never instantiated.
+	 */
+	private BenchmarkScene(){}
+	/**
+	 * Create the scene and add a number of directional lights to it. This must be called
+	 * before any other part of the renderer is used.
+	 * The lighting kernel compares a light's position against fragments in window coordinates,
+	 * so the lights are spread around the framebuffer's center, far in front of it.
+	 * @param lights the number of lights to add.
+	 */
+	static void initialise(final int lights)
+	{
+		System.setProperty("java.awt.headless", "true");
+
+		final Scene scene = Scene.getUniqueInstance();
+		final Framebuffer framebuffer = Services.Graphics.getFramebuffer();
+		final double cx = 0.5 * framebuffer.getWidth();
+		final double cy = 0.5 * framebuffer.getHeight();
+		for (int i = 0; i < lights; ++i)
+		{
+			final double angle = 0.5 + ((2.0 * Math.PI * i) / lights);
+			final Light light = new Light("Light " + (i + 1), LightEmitter.Type.Directional);
+			light.setPosition(new Point3f(cx + (800.0 * Math.cos(angle)), cy + (800.0 * Math.sin(angle)), -800.0));
+			scene.add(light);
+		}
+	}
+	/**
+	 * Select the renderer used to render the scene.
+	 * @param type the type of renderer to use.
+	 */
+	static void setRenderer(final Renderer.Type type)
+	{
+		Scene.getUniqueInstance().getViewer().getRenderContext().setRenderer(RendererFactory.get(type));
+	}
+	/**
+	 * Render a frame and return a copy of the framebuffer's output.
+	 */
+	static int[] render()
+	{
+		Services.Update(0);
+		return Services.Graphics.getFramebuffer().getOutput().clone();
+	}
+	/**
+	 * Return the average time it takes to render a frame, in milliseconds.
+	 * @param frames the number of frames to average the time over.
+	 */
+	static double time(final int frames)
+	{
+		for (int i = 0; i < WARMUP_FRAMES; ++i)
+			Services.Update(0);
+
+		final long t0 = System.nanoTime();
+		for (int i = 0; i < frames; ++i)
+			Services.Update(0);
+
+		return (System.nanoTime() - t0) / (frames * 1e6);
+	}
+	/**
+	 * Compare two frames and print the number of pixels that differ, the largest and mean
+	 * absolute difference of their color channels, and the peak signal-to-noise ratio.
+	 * @param title the title of the comparison.
+	 * @param expected the reference frame.
+	 * @param actual the frame to compare against the reference.
+	 * @return the largest absolute difference of a color channel, between 0 and 255.
+	 */
+	static int compare(final String title, final int expected[], final int actual[])
+	{
+		int pixels = 0;
+		int max = 0;
+		double sum = 0.0;
+		double sum2 = 0.0;
+		for (int i = 0; i < expected.length; ++i)
+		{
+			if (expected[i] != actual[i])
+			{
+				++pixels;
+				for (int shift = 0; shift < 24; shift += 8)
+				{
+					final int d = Math.abs(((expected[i] >> shift) & 0xff) - ((actual[i] >> shift) & 0xff));
+					max = Math.max(max, d);
+					sum += d;
+					sum2 += d * d;
+				}
+			}
+		}
+		final int channels = 3 * expected.length;
+		final double mse = sum2 / channels;
+		final double psnr = mse > 0.0 ? 10.0 * Math.log10((255.0 * 255.0) / mse) : Double.POSITIVE_INFINITY;
+		System.out.printf
+		(
+			"%s: %d of %d pixels differ, max error %d, mean error %.4f, PSNR %.2f dB%n",
+			title, pixels, expected.length, max, sum / channels, psnr
+		);
+		return max;
+	}
+}
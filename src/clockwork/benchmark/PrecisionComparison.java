@@ -0,0 +1,91 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2013 Jeremy Othieno.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package clockwork.benchmark;
+
+import clockwork.graphics.Framebuffer;
+import clockwork.graphics.renderer.Renderer;
+import clockwork.system.Services;
+
+/**
+ * Compare the frames rendered with a single precision depth buffer against those rendered
+ * with the double precision depth buffer, and time both. The program exits with a non-zero
+ * status if more than a given fraction of a frame's pixels differ.
+ * Run it with "java -cp bin:lib/* clockwork.benchmark.PrecisionComparison [frames]".
+ */
+public final class PrecisionComparison
+{
+	/**
+	 * The renderers whose frames are compared.
+	 */
+	private static final Renderer.Type TYPES[] =
+	{
+		Renderer.Type.Depth,
+		Renderer.Type.Normals,
+		Renderer.Type.Constant,
+		Renderer.Type.Phong
+	};
+	/**
+	 * The largest fraction of a frame's pixels that may differ between both precisions.
+	 */
+	private static final double TOLERANCE = 0.001;
+	/**
+	 * The entry point.
+	 * @param arguments the number of frames to average the render times over.
+	 */
+	public static void main(final String arguments[])
+	{
+		final int frames = arguments.length > 0 ? Integer.parseInt(arguments[0]) : 50;
+
+		BenchmarkScene.initialise(2);
+		final Framebuffer framebuffer = Services.Graphics.getFramebuffer();
+
+		boolean passed = true;
+		for (final Renderer.Type type : TYPES)
+		{
+			BenchmarkScene.setRenderer(type);
+
+			framebuffer.setSinglePrecision(false);
+			final int expected[] = BenchmarkScene.render();
+			final double t = BenchmarkScene.time(frames);
+
+			framebuffer.setSinglePrecision(true);
+			final int actual[] = BenchmarkScene.render();
+			final double tf = BenchmarkScene.time(frames);
+
+			BenchmarkScene.compare(type.name(), expected, actual);
+			System.out.printf("%s: %.2f ms per frame in double precision, %.2f ms in single precision%n", type.name(), t, tf);
+
+			int pixels = 0;
+			for (int i = 0; i < expected.length; ++i)
+			{
+				if (expected[i] != actual[i])
+					++pixels;
+			}
+			if (pixels > TOLERANCE * expected.length)
+				passed = false;
+		}
+		System.out.println(passed ? "PASSED" : "FAILED");
+		System.exit(passed ? 0 : 1);
+	}
+}
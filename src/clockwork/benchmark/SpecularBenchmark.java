@@ -0,0 +1,186 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2013 Jeremy Othieno.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package clockwork.benchmark;
+
+import java.util.Random;
+
+import clockwork.graphics.renderer.Renderer;
+import clockwork.system.RuntimeOptions;
+import clockwork.types.math.FastMath;
+import clockwork.types.math.PowerTable;
+
+/**
+ * Compare the specular lookup tables and the fast exponentiation against Math.pow. The
+ * throughput and largest absolute error of each method are measured over random bases,
+ * then the Phong renderer's frames and render times are compared against the exact path.
+ * Run it with "java -cp bin:lib/* clockwork.benchmark.SpecularBenchmark [frames]".
+ */
+public final class SpecularBenchmark
+{
+	/**
+	 * The shininess exponents the methods are measured with.
+	 */
+	private static final double EXPONENTS[] = {8.0, 32.0, 128.0};
+	/**
+	 * The number of random bases, and the number of times each method is run over them.
+	 * The fastest run is reported.
+	 */
+	private static final int BASES = 1 << 22;
+	private static final int RUNS = 15;
+	/**
+	 * The lookup tables' error bounds the rendered frames are compared with.
+	 */
+	private static final double ERROR_BOUNDS[] = {1.0 / 1024.0, 1.0 / 256.0, 1.0 / 64.0, 1.0 / 16.0};
+	/**
+	 * The methods that are measured.
+	 */
+	private static enum Method
+	{
+		Exact,
+		Table,
+		Fast
+	}
+	/**
+	 * The sum of the results, which is printed so that the measured loops are not removed
+	 * as dead code.
+	 */
+	private static double checksum = 0.0;
+	/**
+	 * The entry point.
+	 * @param arguments the number of frames to average the render times over.
+	 */
+	public static void main(final String arguments[])
+	{
+		final int frames = arguments.length > 0 ? Integer.parseInt(arguments[0]) : 50;
+
+		// Measure each method's throughput and error.
+		final double bases[] = new double[BASES];
+		final Random random = new Random(0);
+		for (int i = 0; i < bases.length; ++i)
+			bases[i] = 1.0 - random.nextDouble();
+
+		for (final double exponent : EXPONENTS)
+		{
+			final PowerTable table = PowerTable.create(exponent, RuntimeOptions.SpecularLookupTableErrorBound);
+			System.out.printf("x^%.0f:", exponent);
+			for (final Method method : Method.values())
+			{
+				if (method == Method.Table && table == null)
+					continue;
+
+				double best = Double.POSITIVE_INFINITY;
+				for (int run = 0; run < RUNS; ++run)
+				{
+					final long t0 = System.nanoTime();
+					checksum += evaluate(method, table, bases, exponent);
+					best = Math.min(best, (double)(System.nanoTime() - t0) / bases.length);
+				}
+				double error = 0.0;
+				for (final double x : bases)
+					error = Math.max(error, Math.abs(evaluate(method, table, x, exponent) - Math.pow(x, exponent)));
+
+				System.out.printf("  %s %.1f ns/op (max error %.1e)", method.name(), best, error);
+			}
+			System.out.println();
+		}
+
+		// Compare the rendered frames and render times.
+		BenchmarkScene.initialise(2);
+		BenchmarkScene.setRenderer(Renderer.Type.Phong);
+		final double errorBound = RuntimeOptions.SpecularLookupTableErrorBound;
+		int reference[] = null;
+		for (final Method method : Method.values())
+		{
+			RuntimeOptions.EnableSpecularLookupTables = method == Method.Table;
+			RuntimeOptions.EnableFastExponentiation = method == Method.Fast;
+
+			final int frame[] = BenchmarkScene.render();
+			final double t = BenchmarkScene.time(frames);
+			if (reference == null)
+				reference = frame;
+			else
+				BenchmarkScene.compare(method.name(), reference, frame);
+			System.out.printf("%s: %.2f ms per frame%n", method.name(), t);
+		}
+
+		// The image error of the lookup tables for a range of error bounds.
+		RuntimeOptions.EnableSpecularLookupTables = true;
+		RuntimeOptions.EnableFastExponentiation = false;
+		for (final double bound : ERROR_BOUNDS)
+		{
+			RuntimeOptions.SpecularLookupTableErrorBound = bound;
+			BenchmarkScene.compare(String.format("Table (error bound 1/%.0f)", 1.0 / bound), reference, BenchmarkScene.render());
+		}
+		RuntimeOptions.SpecularLookupTableErrorBound = errorBound;
+		System.out.printf("(checksum %.3f)%n", checksum);
+		System.exit(0);
+	}
+	/**
+	 * Return the sum of x^exponent over a set of bases, calculated with a given method.
+	 */
+	private static double evaluate
+	(
+		final Method method,
+		final PowerTable table,
+		final double bases[],
+		final double exponent
+	)
+	{
+		double sum = 0.0;
+		switch (method)
+		{
+			case Exact:
+				for (final double x : bases)
+					sum += Math.pow(x, exponent);
+				break;
+			case Table:
+				for (final double x : bases)
+					sum += table.get(x);
+				break;
+			case Fast:
+				for (final double x : bases)
+					sum += FastMath.pow(x, exponent);
+				break;
+		}
+		return sum;
+	}
+	/**
+	 * Return x^exponent, calculated with a given method.
+	 */
+	private static double evaluate
+	(
+		final Method method,
+		final PowerTable table,
+		final double x,
+		final double exponent
+	)
+	{
+		switch (method)
+		{
+			case Table: return table.get(x);
+			case Fast:  return FastMath.pow(x, exponent);
+			default:    return Math.pow(x, exponent);
+		}
+	}
+}
@@ -0,0 +1,165 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2013 Jeremy Othieno.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package clockwork.benchmark;
+
+import java.util.Random;
+
+import clockwork.graphics.Texture;
+
+/**
+ * Compare the throughput of texture sampling in the linear and tiled memory layouts. A
+ * random texture is sampled along spans of pixels, as a rasteriser would when drawing a
+ * textured surface at an arbitrary orientation. Both layouts must return the same samples.
+ * Run it with "java -cp bin:lib/* clockwork.benchmark.TextureLayoutBenchmark [runs]".
+ */
+public final class TextureLayoutBenchmark
+{
+	/**
+	 * The width and height of the sampled texture, in texels.
+	 */
+	private static final int SIZE = 2048;
+	/**
+	 * The number of spans sampled in each case, and the length and width of each span in
+	 * pixels.
+	 */
+	private static final int SPANS = 2000;
+	private static final int SPAN_LENGTH = 256;
+	private static final int SPAN_WIDTH = 16;
+	/**
+	 * The sampling patterns that are measured.
+	 */
+	private static enum Case
+	{
+		RandomNearest("random orientation, nearest", Texture.Filter.Nearest, false, 1.0),
+		RandomBilinear("random orientation, bilinear", Texture.Filter.Bilinear, false, 1.0),
+		VerticalNearest("vertical spans, nearest", Texture.Filter.Nearest, true, 1.0),
+		SteppedBilinear("3-texel steps, bilinear", Texture.Filter.Bilinear, false, 3.0);
+		/**
+		 * The case's title.
+		 */
+		private final String title;
+		/**
+		 * The texture filter the spans are sampled with.
+		 */
+		private final Texture.Filter filter;
+		/**
+		 * Are the spans vertical? If not, they are randomly oriented.
+		 */
+		private final boolean isVertical;
+		/**
+		 * The distance between two neighbouring pixels' samples, in texels.
+		 */
+		private final double step;
+		/**
+		 * Instantiate a case.
+		 */
+		Case(final String title, final Texture.Filter filter, final boolean isVertical, final double step)
+		{
+			this.title = title;
+			this.filter = filter;
+			this.isVertical = isVertical;
+			this.step = step;
+		}
+	}
+	/**
+	 * The entry point.
+	 * @param arguments the number of times each case is run. The fastest run is reported.
+	 */
+	public static void main(final String arguments[])
+	{
+		final int runs = arguments.length > 0 ? Integer.parseInt(arguments[0]) : 5;
+
+		final Random random = new Random(0);
+		final int texels[] = new int[SIZE * SIZE];
+		for (int i = 0; i < texels.length; ++i)
+			texels[i] = random.nextInt();
+
+		final Texture linear = new Texture(texels.clone(), SIZE, SIZE);
+		linear.generateMipmaps();
+		final Texture tiled = new Texture(texels.clone(), SIZE, SIZE);
+		tiled.generateMipmaps();
+		tiled.tile();
+
+		final double samples = (double)SPANS * SPAN_LENGTH * SPAN_WIDTH;
+		System.out.printf("%dx%d texture, %d spans of %dx%d pixels, in Msamples/s:%n", SIZE, SIZE, SPANS, SPAN_LENGTH, SPAN_WIDTH);
+		for (final Case c : Case.values())
+		{
+			final double best[] = {Double.POSITIVE_INFINITY, Double.POSITIVE_INFINITY};
+			final long checksums[] = new long[2];
+			for (int run = 0; run < runs; ++run)
+			{
+				for (int layout = 0; layout < 2; ++layout)
+				{
+					final long t0 = System.nanoTime();
+					checksums[layout] = sample(layout == 0 ? linear : tiled, c);
+					best[layout] = Math.min(best[layout], (System.nanoTime() - t0) * 1e-3);
+				}
+			}
+			System.out.printf
+			(
+				"  %-30s linear %6.1f  tiled %6.1f%s%n",
+				c.title,
+				samples / best[0],
+				samples / best[1],
+				checksums[0] == checksums[1] ? "" : "  (samples differ)"
+			);
+		}
+		System.exit(0);
+	}
+	/**
+	 * Sample a texture along a set of spans and return the sum of the samples. The spans
+	 * are the same for every call with the same case.
+	 * @param texture the texture to sample.
+	 * @param c the sampling pattern.
+	 */
+	private static long sample(final Texture texture, final Case c)
+	{
+		final Random random = new Random(c.ordinal());
+		final double d = c.step / SIZE;
+		long sum = 0;
+		for (int s = 0; s < SPANS; ++s)
+		{
+			// The span's origin and orientation, in normalised texture coordinates. The
+			// derivatives along the span's rows and columns set the level of detail.
+			final double u0 = random.nextDouble();
+			final double v0 = random.nextDouble();
+			final double angle = c.isVertical ? 0.5 * Math.PI : 2.0 * Math.PI * random.nextDouble();
+			final double dudx = d * Math.cos(angle), dvdx = d * Math.sin(angle);
+			final double dudy = -dvdx, dvdy = dudx;
+
+			for (int y = 0; y < SPAN_WIDTH; ++y)
+			{
+				double u = u0 + (y * dudy);
+				double v = v0 + (y * dvdy);
+				for (int x = 0; x < SPAN_LENGTH; ++x)
+				{
+					sum += texture.sample(c.filter, u, v, dudx, dvdx, dudy, dvdy);
+					u += dudx;
+					v += dvdx;
+				}
+			}
+		}
+		return sum;
+	}
+}
@@ -65,7 +65,8 @@ public class Antialiasing
 	 */
 	public static Algorithm ALGORITHM = Algorithm.FXAA;
 	/**
-	 * Apply an anti-aliasing algorithm to the framebuffer.
+	 * Apply an anti-aliasing algorithm to the framebuffer. The filter's buffers are only
+	 * allocated for this call; the post-processing chain's AntialiasingFilter keeps its own.
 	 * @param framebuffer the framebuffer where the anti-aliasing will be performed.
 	 */
 	public static void apply(final Framebuffer framebuffer)
@@ -75,7 +76,7 @@ public class Antialiasing
 			switch (ALGORITHM)
 			{
 				case FXAA:
-					FXAA.apply(framebuffer);
+					new FXAA().apply(framebuffer);
 					break;
 				default:
 					break;
@@ -64,6 +64,7 @@ public final class Appearance extends SceneEntityProperty<SceneObject>
 	public void setModel3D(final Model3D model3D)
 	{
 		this.model3D = model3D;
+		setModified();
 	}
 	/**
 	 * @see {@link SceneEntityProperty#update(float)}}
@@ -81,7 +82,9 @@ public final class Appearance extends SceneEntityProperty<SceneObject>
 		final RenderProcessingQueue queue
 	)
 	{
+		// The CMTM at the top of the stack belongs to this property's scene object, which
+		// also caches the matching NORMAL transformation matrix.
 		if (model3D != null)
-			queue.add(new Renderable(model3D, stack.peek()));
+			queue.add(new Renderable(model3D, stack.peek(), getEntity().getNormalMatrix(), this));
 	}
 }
\ No newline at end of file
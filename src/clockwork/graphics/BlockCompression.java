@@ -0,0 +1,235 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2013 Jeremy Othieno.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package clockwork.graphics;
+
+/**
+ * A fixed-rate block compression format for opaque textures, similar to BC1 (DXT1).
+ * A texture is divided into 4x4 blocks of texels, each stored in a single long: two
+ * RGB565 endpoint colors in the lower 32 bits, followed by a 2-bit index per texel
+ * that selects one of four colors evenly spaced between the endpoints. This takes
+ * 4 bits per texel instead of 32, and decoding a texel only requires its block.
+ */
+final class BlockCompression
+{
+	/**
+	 * The width and height of a block, in texels.
+	 */
+	public static final int BLOCK_SIZE = 4;
+	/**
+	 * Return the number of block columns needed to cover a given width.
+	 * @param width the width to cover, in texels.
+	 */
+	public static int getColumns(final int width)
+	{
+		return (width + BLOCK_SIZE - 1) / BLOCK_SIZE;
+	}
+	/**
+	 * Return true if every texel in an array is fully opaque.
+	 * @param texels the texels to check.
+	 */
+	public static boolean isOpaque(final int texels[])
+	{
+		for (final int texel : texels)
+		{
+			if ((texel >>> 24) != 0xff)
+				return false;
+		}
+		return true;
+	}
+	/**
+	 * Compress an array of texels stored in row-major order. Blocks on the right and
+	 * bottom edges repeat the last column and row of texels.
+	 * @param texels the texels to compress.
+	 * @param width the width of the texel array.
+	 * @param height the height of the texel array.
+	 */
+	public static long[] encode(final int texels[], final int width, final int height)
+	{
+		final int columns = getColumns(width);
+		final int rows = getColumns(height);
+		final long blocks[] = new long[columns * rows];
+		final int block[] = new int[BLOCK_SIZE * BLOCK_SIZE];
+
+		for (int r = 0; r < rows; ++r)
+		{
+			for (int c = 0; c < columns; ++c)
+			{
+				for (int i = 0; i < block.length; ++i)
+				{
+					final int x = Math.min(width - 1, (c * BLOCK_SIZE) + (i % BLOCK_SIZE));
+					final int y = Math.min(height - 1, (r * BLOCK_SIZE) + (i / BLOCK_SIZE));
+					block[i] = texels[x + (y * width)];
+				}
+				blocks[c + (r * columns)] = encodeBlock(block);
+			}
+		}
+		return blocks;
+	}
+	/**
+	 * Compress a single block of texels. The endpoints are the corners of the block's
+	 * color bounding box along the diagonal that best follows the colors' distribution.
+	 * @param block the block's texels, in row-major order.
+	 */
+	private static long encodeBlock(final int block[])
+	{
+		int minR = 255, minG = 255, minB = 255;
+		int maxR = 0, maxG = 0, maxB = 0;
+		for (final int texel : block)
+		{
+			final int R = (texel >> 16) & 0xff, G = (texel >> 8) & 0xff, B = texel & 0xff;
+			minR = Math.min(minR, R); maxR = Math.max(maxR, R);
+			minG = Math.min(minG, G); maxG = Math.max(maxG, G);
+			minB = Math.min(minB, B); maxB = Math.max(maxB, B);
+		}
+
+		// Flip the red and blue extents when they vary inversely with green.
+		final double meanR = (minR + maxR) * 0.5, meanG = (minG + maxG) * 0.5, meanB = (minB + maxB) * 0.5;
+		double covRG = 0.0, covBG = 0.0;
+		for (final int texel : block)
+		{
+			final double dG = ((texel >> 8) & 0xff) - meanG;
+			covRG += (((texel >> 16) & 0xff) - meanR) * dG;
+			covBG += ((texel & 0xff) - meanB) * dG;
+		}
+		if (covRG < 0.0)
+		{
+			final int tmp = minR; minR = maxR; maxR = tmp;
+		}
+		if (covBG < 0.0)
+		{
+			final int tmp = minB; minB = maxB; maxB = tmp;
+		}
+
+		final int c0 = toRGB565(maxR, maxG, maxB);
+		final int c1 = toRGB565(minR, minG, minB);
+		final int palette[] = getPalette(c0, c1);
+
+		// Select the closest palette color for each texel.
+		long indices = 0;
+		for (int i = 0; i < block.length; ++i)
+		{
+			final int texel = block[i];
+			int index = 0;
+			int best = Integer.MAX_VALUE;
+			for (int p = 0; p < palette.length; ++p)
+			{
+				final int dR = ((texel >> 16) & 0xff) - ((palette[p] >> 16) & 0xff);
+				final int dG = ((texel >> 8) & 0xff) - ((palette[p] >> 8) & 0xff);
+				final int dB = (texel & 0xff) - (palette[p] & 0xff);
+				final int distance = (dR * dR) + (dG * dG) + (dB * dB);
+				if (distance < best)
+				{
+					best = distance;
+					index = p;
+				}
+			}
+			indices |= ((long)index) << (2 * i);
+		}
+		return c0 | ((long)c1 << 16) | (indices << 32);
+	}
+	/**
+	 * Return the texel at a given position in an array of compressed blocks.
+	 * @param blocks the compressed blocks.
+	 * @param columns the number of block columns.
+	 * @param x the texel's horizontal coordinate.
+	 * @param y the texel's vertical coordinate.
+	 */
+	public static int decode(final long blocks[], final int columns, final int x, final int y)
+	{
+		final long block = blocks[(x >> 2) + ((y >> 2) * columns)];
+		final int index = (int)(block >>> (32 + (2 * ((x & 3) + ((y & 3) << 2))))) & 3;
+		final int c0 = fromRGB565((int)block & 0xffff);
+		final int c1 = fromRGB565((int)(block >>> 16) & 0xffff);
+
+		switch (index)
+		{
+			case 0:
+				return c0;
+			case 1:
+				return c1;
+			case 2:
+				return mix(c0, c1);
+			default:
+				return mix(c1, c0);
+		}
+	}
+	/**
+	 * Decompress an array of blocks into texels stored in row-major order.
+	 * @param blocks the compressed blocks.
+	 * @param width the width of the texel array.
+	 * @param height the height of the texel array.
+	 */
+	public static int[] decode(final long blocks[], final int width, final int height)
+	{
+		final int columns = getColumns(width);
+		final int texels[] = new int[width * height];
+		for (int y = 0; y < height; ++y)
+		{
+			for (int x = 0; x < width; ++x)
+				texels[x + (y * width)] = decode(blocks, columns, x, y);
+		}
+		return texels;
+	}
+	/**
+	 * Return the four colors a block's indices select from.
+	 * @param c0 the first endpoint, in RGB565.
+	 * @param c1 the second endpoint, in RGB565.
+	 */
+	private static int[] getPalette(final int c0, final int c1)
+	{
+		final int a = fromRGB565(c0);
+		final int b = fromRGB565(c1);
+
+		return new int[]{a, b, mix(a, b), mix(b, a)};
+	}
+	/**
+	 * Return the opaque color two thirds of the way from one color to another.
+	 * @param a the color whose weight is 2/3.
+	 * @param b the color whose weight is 1/3.
+	 */
+	private static int mix(final int a, final int b)
+	{
+		final int R = ((2 * ((a >> 16) & 0xff)) + ((b >> 16) & 0xff) + 1) / 3;
+		final int G = ((2 * ((a >> 8) & 0xff)) + ((b >> 8) & 0xff) + 1) / 3;
+		final int B = ((2 * (a & 0xff)) + (b & 0xff) + 1) / 3;
+
+		return 0xff000000 | (R << 16) | (G << 8) | B;
+	}
+	/**
+	 * Quantise an 8-bit RGB color to RGB565.
+	 */
+	private static int toRGB565(final int R, final int G, final int B)
+	{
+		return (((R * 31 + 127) / 255) << 11) | (((G * 63 + 127) / 255) << 5) | ((B * 31 + 127) / 255);
+	}
+	/**
+	 * Expand an RGB565 color to an opaque 8-bit ARGB color.
+	 */
+	private static int fromRGB565(final int c)
+	{
+		final int R = (c >> 11) & 0x1f, G = (c >> 5) & 0x3f, B = c & 0x1f;
+
+		return 0xff000000 | (((R << 3) | (R >> 2)) << 16) | (((G << 2) | (G >> 4)) << 8) | ((B << 3) | (B >> 2));
+	}
+}
@@ -0,0 +1,127 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2013 Jeremy Othieno.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package clockwork.graphics;
+
+import clockwork.system.RuntimeOptions;
+
+/**
+ * Dynamic resolution scaling. The controller watches the time it takes to render each
+ * frame and chooses the fraction of the display's resolution that the next frames are
+ * rendered at, so that the render time stays within a budget. The rendered frames are
+ * upscaled to the display.
+ * <p>
+ * A frame's render time is roughly proportional to its number of pixels, i.e. the square of
+ * the resolution scale. When the render time exceeds the budget, the scale drops at once to
+ * the one expected to meet it. When the render time leaves enough headroom, the scale rises
+ * one step at a time. The scale is a multiple of a fixed step, and is only changed once every
+ * few frames, so the framebuffer is not reallocated every frame.
+ * @see RuntimeOptions#DynamicResolutionBudget
+ * @see RuntimeOptions#DynamicResolutionFloor
+ */
+public final class DynamicResolution
+{
+	/**
+	 * The difference between two consecutive resolution scales.
+	 */
+	public static final double STEP = 0.05;
+	/**
+	 * The number of frames rendered at a resolution scale before it may change again.
+	 */
+	private static final int SETTLING_FRAMES = 8;
+	/**
+	 * The fraction of the budget below which the resolution scale rises.
+	 */
+	private static final double HEADROOM = 0.75;
+	/**
+	 * The weight of the latest frame's render time in the average render time.
+	 */
+	private static final double SMOOTHING = 0.25;
+	/**
+	 * The current resolution scale.
+	 */
+	private double scale = 1.0;
+	/**
+	 * The average render time in milliseconds, or a negative value if no frame was timed
+	 * since the resolution scale last changed.
+	 */
+	private double averageTime = -1.0;
+	/**
+	 * The number of frames rendered since the resolution scale last changed.
+	 */
+	private int frames = 0;
+	/**
+	 * Return the current resolution scale.
+	 */
+	public double getScale()
+	{
+		return scale;
+	}
+	/**
+	 * Return to the full resolution.
+	 */
+	public void reset()
+	{
+		setScale(1.0);
+	}
+	/**
+	 * Set the resolution scale and restart the timing.
+	 * @param scale the resolution scale to set.
+	 */
+	private void setScale(final double scale)
+	{
+		if (this.scale != scale)
+		{
+			this.scale = scale;
+			this.averageTime = -1.0;
+			this.frames = 0;
+		}
+	}
+	/**
+	 * Update the resolution scale with the render time of the latest frame.
+	 * @param nanoseconds the time it took to render the latest frame, in nanoseconds.
+	 */
+	public void update(final long nanoseconds)
+	{
+		final double time = nanoseconds / 1e6;
+		averageTime = averageTime < 0.0 ? time : (SMOOTHING * time) + ((1.0 - SMOOTHING) * averageTime);
+		if (++frames < SETTLING_FRAMES)
+			return;
+
+		final double budget = RuntimeOptions.DynamicResolutionBudget;
+		final double floor = Math.max(STEP, Math.min(1.0, RuntimeOptions.DynamicResolutionFloor));
+		if (averageTime > budget)
+		{
+			// Drop to the largest step that is expected to meet the budget.
+			final double expected = scale * Math.sqrt(budget / averageTime);
+			final int steps = (int)Math.min(Math.round(scale / STEP) - 1, Math.floor(expected / STEP));
+			setScale(Math.max(floor, steps * STEP));
+		}
+		else if (averageTime < HEADROOM * budget && scale < 1.0)
+			setScale(Math.min(1.0, (Math.round(scale / STEP) + 1) * STEP));
+
+		// Raise a scale that is below the floor, which happens when the floor is raised.
+		if (scale < floor)
+			setScale(floor);
+	}
+}
@@ -39,11 +39,25 @@ public class Fragment implements Comparable<Fragment>
 	public double x = 0.0;
 	public double y = 0.0;
 	public double z = 0.0;
+	/**
+	 * The derivatives of the fragment's depth value with respect to its window coordinates,
+	 * which determine the depth values of a pixel's samples in a multisampled framebuffer.
+	 */
+	public double dzdx = 0.0;
+	public double dzdy = 0.0;
 	/**
 	 * The fragment's mapping coordinates.
 	 */
 	public double u = 0;
 	public double v = 0;
+	/**
+	 * The derivatives of the fragment's mapping coordinates with respect to its window
+	 * coordinates, which determine a texture's level of detail.
+	 */
+	public double dudx = 0.0;
+	public double dvdx = 0.0;
+	public double dudy = 0.0;
+	public double dvdy = 0.0;
 	/**
 	 * The fragment's normal vector components.
 	 */
@@ -24,9 +24,16 @@
 package clockwork.graphics;
 
 import java.awt.Dimension;
+import java.awt.Rectangle;
 import java.util.Arrays;
 
-import clockwork.graphics.filters.FXAA;
+import clockwork.graphics.color.ColorRGBA;
+import clockwork.graphics.filters.AntialiasingFilter;
+import clockwork.graphics.filters.ColorGrading;
+import clockwork.graphics.filters.GammaCorrection;
+import clockwork.graphics.filters.PostProcessingChain;
+import clockwork.graphics.filters.ToneMapping;
+import clockwork.graphics.renderer.DamageTracking;
 import clockwork.graphics.renderer.Renderer;
 import clockwork.gui.Display;
 import clockwork.system.RuntimeOptions;
@@ -64,10 +71,25 @@ public final class Framebuffer
 	 */
 	private Framebuffer.Output outputMode = Output.Color;
 	/**
-	 * The framebuffer's width and height.
+	 * The framebuffer's width and height, which is the resolution it is rendered at.
 	 */
 	private int width = 0;
 	private int height = 0;
+	/**
+	 * The framebuffer's output width and height, which is the display's resolution.
+	 * The framebuffer is rendered at a fraction of this resolution, the resolution scale,
+	 * and its output is upscaled to it.
+	 */
+	private int outputWidth = 0;
+	private int outputHeight = 0;
+	private double resolutionScale = 1.0;
+	/**
+	 * The upscaled output, and the source columns and horizontal weights of each output
+	 * column, which are only allocated when the framebuffer is rendered at a lower resolution.
+	 */
+	private int output[];
+	private int outputColumns[];
+	private int outputWeights[];
 	/**
 	 * The pixel buffer which holds color information for each pixel in the display.
 	 */
@@ -78,8 +100,16 @@ public final class Framebuffer
 	private int cbufferClearValue = 0xff000000;
 	/**
 	 * The depth buffer which holds depth information for each pixel in the display.
+	 * Depending on the precision selected at startup, depth values are either stored in
+	 * double precision, or in single precision which halves the buffer's memory bandwidth.
+	 * Only one of the two buffers is ever allocated.
 	 */
 	private double zbuffer[];
+	private float zbufferf[];
+	/**
+	 * Is the depth buffer stored in single precision?
+	 */
+	private boolean isSinglePrecision = RuntimeOptions.EnableSinglePrecisionDepth;
 	/**
 	 * The depth buffer's clear value.
 	 */
@@ -94,8 +124,9 @@ public final class Framebuffer
 	 */
 	private char sbufferClearValue = Character.MAX_VALUE;
 	/**
-	 * TODO Explain me.
-	 * The accumulation buffer.
+	 * The accumulation buffer, which holds the accumulated result of the previous frames
+	 * when temporal accumulation is enabled.
+	 * @see TemporalAccumulation
 	 */
 	private int abuffer[];
 	/**
@@ -106,6 +137,80 @@ public final class Framebuffer
 	 * The framebuffer's scissor.
 	 */
 	private final Scissor scissor = new Scissor();
+	/**
+	 * The fragment tests specialised for the current set of per-fragment runtime options,
+	 * and the set of options they were specialised for.
+	 */
+	private FragmentTest fragmentTest;
+	private int fragmentTestOptions = -1;
+	/**
+	 * The post-processing filters applied to the color buffer once a frame is rendered.
+	 */
+	private final PostProcessingChain postProcessingChain = new PostProcessingChain();
+	/**
+	 * The accumulation of rendered frames over time.
+	 */
+	private final TemporalAccumulation temporalAccumulation = new TemporalAccumulation();
+	/**
+	 * Does the framebuffer hold a preview frame? A preview frame is rendered while the user
+	 * interacts with the scene, and skips the passes that only refine the image's quality,
+	 * i.e. temporal accumulation and anti-aliasing filters.
+	 */
+	private boolean isPreview = false;
+	/**
+	 * The shading rates of the framebuffer's tiles, and whether they are used in the current
+	 * frame, which is read once per frame when the framebuffer is cleared.
+	 */
+	private final VariableRateShading variableRateShading = new VariableRateShading();
+	private boolean isVariableRateShading = false;
+	/**
+	 * The region that was cleared for the current frame, which is the only region rendered,
+	 * resolved and post-processed. When it does not cover the whole framebuffer, fragments
+	 * are scissored to it.
+	 */
+	private final Rectangle region = new Rectangle();
+	private boolean isScissored = false;
+	/**
+	 * The tracking of the regions damaged from one frame to the next.
+	 */
+	private final DamageTracking damageTracking = new DamageTracking();
+	/**
+	 * The largest number of samples a pixel can hold.
+	 */
+	public static final int MAX_SAMPLE_COUNT = 8;
+	/**
+	 * The sample positions for each supported number of samples per pixel, as <x, y> offsets
+	 * from the pixel's center in sixteenths of a pixel. These are the standard Direct3D patterns,
+	 * which are rotated so that near-horizontal and near-vertical edges are sampled at as many
+	 * distinct positions as there are samples.
+	 */
+	private static final int SAMPLE_POSITIONS[][] =
+	{
+		{ 0, 0},
+		{ 4, 4, -4, -4},
+		{-2, -6, 6, -2, -6, 2, 2, 6},
+		{ 1, -3, -1, 3, 5, 1, -3, -5, -5, 5, -7, -1, 3, 7, 7, -7},
+	};
+	/**
+	 * The number of samples stored per pixel, and its base 2 logarithm. A multisampled
+	 * framebuffer stores a color and a depth value for each of a pixel's samples in the
+	 * multisample buffers, where a pixel's samples are contiguous. The samples are averaged
+	 * into the pixel buffer when the framebuffer is resolved.
+	 */
+	private int samples = 1;
+	private int sampleShift = 0;
+	/**
+	 * The multisample color and depth buffers, which are only allocated when the framebuffer
+	 * is multisampled. Like the depth buffer, only one of the two multisample depth buffers
+	 * is ever allocated.
+	 */
+	private int msbuffer[];
+	private double mszbuffer[];
+	private float mszbufferf[];
+	/**
+	 * The offsets of the current sample positions in pixels, interleaved as <x, y> pairs.
+	 */
+	private double sampleOffsets[] = new double[2];
 	/**
 	 * Instantiate a framebuffer attached to a given display device.
 	 * @param display the display device.
@@ -115,15 +220,60 @@ public final class Framebuffer
 		this.display = display;
 		if (this.display != null)
 			this.display.setFramebuffer(this);
+
+		// Color adjustments are fused into one pass, followed by anti-aliasing which
+		// expects gamma-corrected colors.
+		postProcessingChain.add(new ToneMapping());
+		postProcessingChain.add(new ColorGrading());
+		postProcessingChain.add(new GammaCorrection());
+		postProcessingChain.add(new AntialiasingFilter());
+
+		updateFragmentTest();
 	}
 	/**
-	 * Resize the framebuffer.
-	 * @param width the framebuffer's new width.
-	 * @param height the framebuffer's new height.
+	 * Resize the framebuffer's output. The framebuffer is rendered at this resolution,
+	 * multiplied by the resolution scale.
+	 * @param width the framebuffer's new output width.
+	 * @param height the framebuffer's new output height.
 	 */
 	public void resize(final int width, final int height)
 	{
-		// Resize iff the resolution is different.
+		if (this.outputWidth != width || this.outputHeight != height)
+		{
+			this.outputWidth = width;
+			this.outputHeight = height;
+			allocate();
+		}
+	}
+	/**
+	 * Set the fraction of the output resolution that the framebuffer is rendered at. The
+	 * buffers are reallocated, and cleared, if the rendered resolution changes.
+	 * @param scale the resolution scale, between 0 exclusive and 1 inclusive.
+	 */
+	public void setResolutionScale(final double scale)
+	{
+		final double resolutionScale = Math.max(Double.MIN_VALUE, Math.min(1.0, scale));
+		if (this.resolutionScale != resolutionScale)
+		{
+			this.resolutionScale = resolutionScale;
+			allocate();
+		}
+	}
+	/**
+	 * Return the fraction of the output resolution that the framebuffer is rendered at.
+	 */
+	public double getResolutionScale()
+	{
+		return resolutionScale;
+	}
+	/**
+	 * Allocate the buffers for the output resolution and resolution scale, iff the
+	 * resulting resolution is different.
+	 */
+	private void allocate()
+	{
+		final int width = Math.max(1, (int)Math.round(outputWidth * resolutionScale));
+		final int height = Math.max(1, (int)Math.round(outputHeight * resolutionScale));
 		if (this.width != width || this.height != height)
 		{
 			this.width = width;
@@ -132,20 +282,60 @@ public final class Framebuffer
 			this.scissor.height = height;
 
 			pbuffer = new int[this.width * this.height];
-			zbuffer = new double[pbuffer.length];
+			allocateDepthBuffer();
 			abuffer = new int[pbuffer.length];
 			sbuffer = new char[pbuffer.length];
+			allocateMultisampleBuffers();
+			temporalAccumulation.reset();
+			allocateOutput();
 
 			clear();
 		}
 	}
+	/**
+	 * Allocate the depth buffer for the current resolution, in the selected precision.
+	 */
+	private void allocateDepthBuffer()
+	{
+		zbuffer = null;
+		zbufferf = null;
+		if (pbuffer != null)
+		{
+			if (isSinglePrecision)
+				zbufferf = new float[pbuffer.length];
+			else
+				zbuffer = new double[pbuffer.length];
+		}
+	}
+	/**
+	 * Allocate the upscaled output, and calculate the source column and weight of each
+	 * output column, if the framebuffer is rendered at a lower resolution than its output.
+	 * Each output pixel's center is mapped to the framebuffer, where it is sampled.
+	 */
+	private void allocateOutput()
+	{
+		output = null;
+		outputColumns = outputWeights = null;
+		if (width != outputWidth || height != outputHeight)
+		{
+			output = new int[outputWidth * outputHeight];
+			outputColumns = new int[outputWidth];
+			outputWeights = new int[outputWidth];
+			for (int x = 0; x < outputWidth; ++x)
+			{
+				final double sx = Math.max(0.0, Math.min(width - 1, ((x + 0.5) * width) / outputWidth - 0.5));
+				outputColumns[x] = (int)sx;
+				outputWeights[x] = (int)((sx - (int)sx) * 256.0);
+			}
+		}
+	}
 	/**
 	 * Resize the framebuffer.
 	 * @param resolution the framebuffer's new resolution.
 	 */
 	public void resize(final Display.Resolution resolution)
 	{
-		if (resolution != null && resolution.width != this.width && resolution.height != this.height)
+		if (resolution != null && resolution.width != this.outputWidth && resolution.height != this.outputHeight)
 			resize(resolution.width, resolution.height);
 	}
 	/**
@@ -169,6 +359,68 @@ public final class Framebuffer
 	{
 		return height;
 	}
+	/**
+	 * Set the number of samples stored per pixel. The number is rounded down to 1, 2, 4 or 8,
+	 * and the multisample buffers are reallocated if it has changed, in which case their
+	 * contents are undefined until the framebuffer is cleared.
+	 * @param count the number of samples to set.
+	 */
+	public void setSampleCount(final int count)
+	{
+		final int shift = count >= 8 ? 3 : count >= 4 ? 2 : count >= 2 ? 1 : 0;
+		if (shift != sampleShift)
+		{
+			sampleShift = shift;
+			samples = 1 << shift;
+
+			final int positions[] = SAMPLE_POSITIONS[shift];
+			sampleOffsets = new double[positions.length];
+			for (int i = 0; i < positions.length; ++i)
+				sampleOffsets[i] = positions[i] / 16.0;
+
+			allocateMultisampleBuffers();
+		}
+	}
+	/**
+	 * Return the number of samples stored per pixel.
+	 */
+	public int getSampleCount()
+	{
+		return samples;
+	}
+	/**
+	 * Return the current sample positions, as <x, y> offsets from a pixel's center in
+	 * sixteenths of a pixel. The array must not be modified.
+	 */
+	public int[] getSamplePositions()
+	{
+		return SAMPLE_POSITIONS[sampleShift];
+	}
+	/**
+	 * Return true if the framebuffer stores more than one sample per pixel, false otherwise.
+	 */
+	public boolean isMultisampled()
+	{
+		return samples > 1;
+	}
+	/**
+	 * Allocate the multisample buffers for the current resolution and number of samples,
+	 * or release them if the framebuffer is not multisampled.
+	 */
+	private void allocateMultisampleBuffers()
+	{
+		msbuffer = null;
+		mszbuffer = null;
+		mszbufferf = null;
+		if (samples > 1 && pbuffer != null)
+		{
+			msbuffer = new int[pbuffer.length * samples];
+			if (isSinglePrecision)
+				mszbufferf = new float[msbuffer.length];
+			else
+				mszbuffer = new double[msbuffer.length];
+		}
+	}
 	/**
 	 * Return the framebuffer offset for an <x, y> coordinate. If the coordinate is out
 	 * of bounds, -1 is returned.
@@ -211,12 +463,80 @@ public final class Framebuffer
 		return cbufferClearValue;
 	}
 	/**
-	 * Return the depth buffer.
+	 * Return the double precision depth buffer, or null if the depth buffer is
+	 * stored in single precision.
 	 */
 	public double[] getDepthBuffer()
 	{
 		return zbuffer;
 	}
+	/**
+	 * Return the single precision depth buffer, or null if the depth buffer is
+	 * stored in double precision.
+	 */
+	public float[] getSinglePrecisionDepthBuffer()
+	{
+		return zbufferf;
+	}
+	/**
+	 * Select the precision depth values are stored in. The depth buffers are reallocated,
+	 * and the framebuffer is cleared, if the precision has changed.
+	 * @param isSinglePrecision true to store depth values in single precision, false to
+	 * store them in double precision.
+	 */
+	public void setSinglePrecision(final boolean isSinglePrecision)
+	{
+		if (this.isSinglePrecision != isSinglePrecision)
+		{
+			this.isSinglePrecision = isSinglePrecision;
+			allocateDepthBuffer();
+			allocateMultisampleBuffers();
+
+			// The depth tests are specialised per precision.
+			fragmentTestOptions = -1;
+			updateFragmentTest();
+			if (pbuffer != null)
+				clear();
+		}
+	}
+	/**
+	 * Return true if the depth buffer is stored in single precision, false otherwise.
+	 */
+	public boolean isSinglePrecision()
+	{
+		return isSinglePrecision;
+	}
+	/**
+	 * Return the depth value stored at a given offset.
+	 * @param offset the offset of the depth value to return.
+	 */
+	public double getDepth(final int offset)
+	{
+		return isSinglePrecision ? zbufferf[offset] : zbuffer[offset];
+	}
+	/**
+	 * Store a depth value at a given offset.
+	 * @param offset the offset of the depth value to store.
+	 * @param z the depth value to store.
+	 */
+	private void setDepth(final int offset, final double z)
+	{
+		if (isSinglePrecision)
+			zbufferf[offset] = (float)z;
+		else
+			zbuffer[offset] = z;
+	}
+	/**
+	 * Return true if a depth value is strictly closer than the one stored at a given offset.
+	 * In single precision, the depth value is rounded before the comparison so that it is
+	 * compared exactly as it would be stored.
+	 * @param offset the offset of the depth value to test against.
+	 * @param z the depth value to test.
+	 */
+	private boolean isCloser(final int offset, final double z)
+	{
+		return isSinglePrecision ? (float)z < zbufferf[offset] : z < zbuffer[offset];
+	}
 	/**
 	 * Set the depth buffer's clear value.
 	 * @param value the clear value to set.
@@ -315,17 +635,114 @@ public final class Framebuffer
 			}
 			default:break;
 		}
+
+		// A framebuffer rendered at a lower resolution is upscaled to its output resolution
+		// using bilinear filtering.
+		if (output != null)
+		{
+			PostProcessingChain.ForEachBand(outputHeight, upscaleBand);
+			return output;
+		}
 		return pbuffer;
 	}
+	/**
+	 * Upscale a band of output rows.
+	 */
+	private final PostProcessingChain.Band upscaleBand = new PostProcessingChain.Band()
+	{
+		@Override
+		public void process(final int y0, final int y1)
+		{
+			for (int y = y0; y < y1; ++y)
+			{
+				final double sy = Math.max(0.0, Math.min(height - 1, ((y + 0.5) * height) / outputHeight - 0.5));
+				final int row0 = (int)sy * width;
+				final int row1 = Math.min((int)sy + 1, height - 1) * width;
+				final int fy = (int)((sy - (int)sy) * 256.0);
+
+				final int offset = y * outputWidth;
+				for (int x = 0; x < outputWidth; ++x)
+				{
+					final int x0 = outputColumns[x];
+					final int x1 = Math.min(x0 + 1, width - 1);
+					final int fx = outputWeights[x];
+
+					final int top = ColorRGBA.lerp(pbuffer[row0 + x0], pbuffer[row0 + x1], fx);
+					final int bottom = ColorRGBA.lerp(pbuffer[row1 + x0], pbuffer[row1 + x1], fx);
+					output[offset + x] = ColorRGBA.lerp(top, bottom, fy);
+				}
+			}
+		}
+	};
 	/**
 	 * Clear the framebuffer.
 	 */
 	public void clear()
 	{
-		Arrays.fill(pbuffer, cbufferClearValue);
-		Arrays.fill(zbuffer, zbufferClearValue);
-		Arrays.fill(sbuffer, sbufferClearValue);
-		Arrays.fill(abuffer, abufferClearValue);
+		clear(new Rectangle(0, 0, width, height));
+	}
+	/**
+	 * Clear a region of the framebuffer. Until the framebuffer is cleared again, only that
+	 * region is rendered, resolved and post-processed, while the rest of the framebuffer
+	 * keeps its contents.
+	 * @param region the region to clear, which is clipped to the framebuffer's bounds.
+	 */
+	public void clear(final Rectangle region)
+	{
+		this.region.setBounds(region.intersection(new Rectangle(0, 0, width, height)));
+		if (this.region.isEmpty())
+			this.region.setBounds(0, 0, 0, 0);
+
+		// The accumulation buffer is only cleared when it does not hold any history.
+		final boolean isAccumulated = isTemporallyAccumulated();
+		if (!isAccumulated)
+			temporalAccumulation.reset();
+
+		// A region that spans whole rows is contiguous, and is cleared in one go.
+		final int x0 = this.region.x, x1 = this.region.x + this.region.width;
+		final int y0 = this.region.y, y1 = this.region.y + this.region.height;
+		final boolean isContiguous = x0 == 0 && x1 == width;
+		for (int y = y0; y < (isContiguous ? Math.min(y1, y0 + 1) : y1); ++y)
+		{
+			final int from = x0 + (y * width);
+			final int to = isContiguous ? y1 * width : x1 + (y * width);
+
+			Arrays.fill(pbuffer, from, to, cbufferClearValue);
+			if (isSinglePrecision)
+				Arrays.fill(zbufferf, from, to, (float)zbufferClearValue);
+			else
+				Arrays.fill(zbuffer, from, to, zbufferClearValue);
+			Arrays.fill(sbuffer, from, to, sbufferClearValue);
+			if (!isAccumulated)
+				Arrays.fill(abuffer, from, to, abufferClearValue);
+			if (msbuffer != null)
+			{
+				Arrays.fill(msbuffer, from << sampleShift, to << sampleShift, cbufferClearValue);
+				if (isSinglePrecision)
+					Arrays.fill(mszbufferf, from << sampleShift, to << sampleShift, (float)zbufferClearValue);
+				else
+					Arrays.fill(mszbuffer, from << sampleShift, to << sampleShift, zbufferClearValue);
+			}
+		}
+
+		// Fragments outside a region that does not cover the whole framebuffer are scissored.
+		isScissored = !isContiguous || y0 != 0 || y1 != height;
+		scissor.left = isScissored ? x0 : 0;
+		scissor.bottom = isScissored ? y0 : 0;
+		scissor.width = isScissored ? this.region.width : width;
+		scissor.height = isScissored ? this.region.height : height;
+
+		// The framebuffer is cleared once per frame, before anything is written to it,
+		// which makes it the place to pick up any changes made to the runtime options.
+		updateFragmentTest();
+		isVariableRateShading = RuntimeOptions.EnableVariableRateShading;
+	}
+	/**
+	 * Return the region that was cleared for the current frame.
+	 */
+	public Rectangle getRegion()
+	{
+		return new Rectangle(region);
 	}
 	/**
 	 * Write a fragment to the framebuffer iff it passes all fragment tests.
@@ -334,15 +751,137 @@ public final class Framebuffer
 	 */
 	public void write(final Renderer renderer, final Fragment fragment)
 	{
+		if (msbuffer != null)
+		{
+			write(renderer, fragment, (int)Math.round(fragment.x), (int)Math.round(fragment.y));
+			return;
+		}
 		final int offset = getFramebufferOffset(fragment.x, fragment.y);
 		if (fragmentPasses(fragment, offset))
 		{
-			pbuffer[offset] = renderer.fragmentProgram(fragment);
-			zbuffer[offset] = fragment.z;
-			abuffer[offset] = abufferClearValue;
+			pbuffer[offset] = shade(renderer, fragment, Math.round((float)fragment.x), Math.round((float)fragment.y));
+			setDepth(offset, fragment.z);
+			sbuffer[offset] = fragment.stencil;
+		}
+	}
+	/**
+	 * Write a fragment located at given window coordinates to the framebuffer iff it passes
+	 * all fragment tests. Unlike {@link #write(Renderer, Fragment)}, the fragment's position
+	 * is not rounded since the rasteriser already knows which pixel it belongs to.
+	 * @param renderer a reference to the renderer containing the fragment program implementation.
+	 * @param fragment the fragment to write.
+	 * @param x the fragment's horizontal window coordinate.
+	 * @param y the fragment's vertical window coordinate.
+	 */
+	public void write(final Renderer renderer, final Fragment fragment, final int x, final int y)
+	{
+		if (msbuffer != null)
+			write(renderer, fragment, x, y, (1 << samples) - 1);
+		else if (x >= 0 && y >= 0 && x < width && y < height)
+		{
+			final int offset = x + (y * width);
+			if (fragmentPasses(fragment, offset, x, y))
+			{
+				pbuffer[offset] = shade(renderer, fragment, x, y);
+				setDepth(offset, fragment.z);
+				sbuffer[offset] = fragment.stencil;
+			}
+		}
+	}
+	/**
+	 * Write a fragment to the samples it covers in a multisampled framebuffer. Each covered
+	 * sample is depth-tested against its own depth value, which is extrapolated from the
+	 * fragment's depth at the pixel center using the fragment's depth derivatives. The fragment
+	 * program is only invoked once per pixel, and its color is replicated to every sample that
+	 * passed. If the framebuffer is not multisampled, the fragment is written to the pixel iff
+	 * it covers the pixel's center.
+	 * @param renderer a reference to the renderer containing the fragment program implementation.
+	 * @param fragment the fragment to write.
+	 * @param x the fragment's horizontal window coordinate.
+	 * @param y the fragment's vertical window coordinate.
+	 * @param coverage the fragment's coverage mask, where bit i is set if sample i is covered.
+	 */
+	public void write(final Renderer renderer, final Fragment fragment, final int x, final int y, final int coverage)
+	{
+		if (msbuffer == null)
+		{
+			if ((coverage & 1) != 0)
+				write(renderer, fragment, x, y);
+			return;
+		}
+		if (x < 0 || y < 0 || x >= width || y >= height)
+			return;
+
+		// The scissor test is performed once per pixel, and the depth test once per sample.
+		// See updateFragmentTest for the meaning of the option bits.
+		if ((fragmentTestOptions & 1) != 0 && !scissor.test(x, y))
+			return;
+		final boolean isDepthTested = (fragmentTestOptions & 2) != 0;
+
+		final int offset = x + (y * width);
+		final int first = offset << sampleShift;
+		int passed = 0;
+		for (int s = 0; s < samples; ++s)
+		{
+			if ((coverage & (1 << s)) != 0)
+			{
+				final double z =
+				fragment.z + (fragment.dzdx * sampleOffsets[2 * s]) + (fragment.dzdy * sampleOffsets[2 * s + 1]);
+
+				if (!isDepthTested || isSampleCloser(first + s, z))
+				{
+					setSampleDepth(first + s, z);
+					passed |= 1 << s;
+				}
+			}
+		}
+		if (passed != 0)
+		{
+			final int color = shade(renderer, fragment, x, y);
+			for (int s = 0; s < samples; ++s)
+			{
+				if ((passed & (1 << s)) != 0)
+					msbuffer[first + s] = color;
+			}
 			sbuffer[offset] = fragment.stencil;
 		}
 	}
+	/**
+	 * Return the color of a fragment that passed the fragment tests. If variable-rate shading
+	 * is enabled, the color may be shared with other fragments of the same primitive.
+	 * @param renderer a reference to the renderer containing the fragment program implementation.
+	 * @param fragment the fragment to shade.
+	 * @param x the fragment's horizontal window coordinate.
+	 * @param y the fragment's vertical window coordinate.
+	 */
+	private int shade(final Renderer renderer, final Fragment fragment, final int x, final int y)
+	{
+		return isVariableRateShading ?
+		variableRateShading.shade(renderer, fragment, x, y) :
+		renderer.fragmentProgram(fragment);
+	}
+	/**
+	 * Return true if a depth value is strictly closer than the sample depth value stored at
+	 * a given offset in the multisample depth buffer.
+	 * @param offset the offset of the sample depth value to test against.
+	 * @param z the depth value to test.
+	 */
+	private boolean isSampleCloser(final int offset, final double z)
+	{
+		return isSinglePrecision ? (float)z < mszbufferf[offset] : z < mszbuffer[offset];
+	}
+	/**
+	 * Store a depth value at a given offset in the multisample depth buffer.
+	 * @param offset the offset of the sample depth value to store.
+	 * @param z the depth value to store.
+	 */
+	private void setSampleDepth(final int offset, final double z)
+	{
+		if (isSinglePrecision)
+			mszbufferf[offset] = (float)z;
+		else
+			mszbuffer[offset] = z;
+	}
 	/**
 	 * Return true if a fragment passes all fragment tests, false otherwise.
 	 * @param fragment the fragment to test.
@@ -357,33 +896,244 @@ public final class Framebuffer
 		final int xw = (int)Math.round(fragment.x);
 		final int yw = (int)Math.round(fragment.y);
 
-		if (RuntimeOptions.EnableScissorTest && !scissor.test(xw, yw)) return false;
-
-		// TODO Implement alpha testing.
-		if (RuntimeOptions.EnableAlphaTest)
-			;
-
-		// TODO Implement stencil testing.
-		if (RuntimeOptions.EnableStencilTest)
-			;
+		return fragmentPasses(fragment, offset, xw, yw);
+	}
+	/**
+	 * Return true if a fragment passes all fragment tests, false otherwise.
+	 * @param fragment the fragment to test.
+	 * @param offset the index of the framebuffer value to test against.
+	 * @param xw the fragment's horizontal window coordinate.
+	 * @param yw the fragment's vertical window coordinate.
+	 */
+	private boolean fragmentPasses(final Fragment fragment, final int offset, final int xw, final int yw)
+	{
+		return fragmentTest.passes(fragment, offset, xw, yw);
+	}
+	/**
+	 * Select the fragment tests specialised for the current per-fragment runtime options,
+	 * if they have changed since the tests were last selected. The options are read once
+	 * here instead of once per fragment, and each specialisation only performs the tests
+	 * it was selected for, without re-checking any option.
+	 */
+	private void updateFragmentTest()
+	{
+		final int options =
+		(RuntimeOptions.EnableScissorTest || isScissored ? 1 : 0) |
+		(RuntimeOptions.EnableDepthTest ? 2 : 0);
 
-		// Perform stencil test. A stencil test passes if the fragment's stencil value is strictly
-		// less than the value contained in the stencil buffer; it fails otherwise.
-//		if (RuntimeOptions.EnableStencilTest && fragment.stencil >= sbuffer[offset])
-//			return;
+		if (options != fragmentTestOptions)
+		{
+			fragmentTestOptions = options;
+			switch (options)
+			{
+				case 1:  fragmentTest = new ScissorTest(); break;
+				case 2:  fragmentTest = isSinglePrecision ? new SinglePrecisionDepthTest() : new DepthTest(); break;
+				case 3:  fragmentTest = isSinglePrecision ? new SinglePrecisionScissorDepthTest() : new ScissorDepthTest(); break;
+				default: fragmentTest = new NoTest(); break;
+			}
+		}
+	}
+	/**
+	 * A set of fragment tests. A fragment is only written to the framebuffer if it
+	 * passes all of them.
+	 */
+	private abstract class FragmentTest
+	{
+		/**
+		 * Return true if a fragment passes all fragment tests, false otherwise.
+		 * @param fragment the fragment to test.
+		 * @param offset the index of the framebuffer value to test against.
+		 * @param xw the fragment's horizontal window coordinate.
+		 * @param yw the fragment's vertical window coordinate.
+		 */
+		public abstract boolean passes(final Fragment fragment, final int offset, final int xw, final int yw);
+	}
+	/**
+	 * Every fragment passes when all fragment tests are disabled.
+	 */
+	private final class NoTest extends FragmentTest
+	{
+		@Override
+		public boolean passes(final Fragment fragment, final int offset, final int xw, final int yw)
+		{
+			return true;
+		}
+	}
+	/**
+	 * A fragment passes the scissor test if its window coordinates are inside the scissor box.
+	 */
+	private final class ScissorTest extends FragmentTest
+	{
+		@Override
+		public boolean passes(final Fragment fragment, final int offset, final int xw, final int yw)
+		{
+			return scissor.test(xw, yw);
+		}
+	}
+	/**
+	 * A fragment passes the depth test if it is strictly closer than the stored depth value.
+	 */
+	private final class DepthTest extends FragmentTest
+	{
+		@Override
+		public boolean passes(final Fragment fragment, final int offset, final int xw, final int yw)
+		{
+			return fragment.z < zbuffer[offset];
+		}
+	}
+	/**
+	 * The depth test performed against a single precision depth buffer.
+	 */
+	private final class SinglePrecisionDepthTest extends FragmentTest
+	{
+		@Override
+		public boolean passes(final Fragment fragment, final int offset, final int xw, final int yw)
+		{
+			return (float)fragment.z < zbufferf[offset];
+		}
+	}
+	/**
+	 * The scissor test followed by the depth test.
+	 */
+	private final class ScissorDepthTest extends FragmentTest
+	{
+		@Override
+		public boolean passes(final Fragment fragment, final int offset, final int xw, final int yw)
+		{
+			return scissor.test(xw, yw) && fragment.z < zbuffer[offset];
+		}
+	}
+	/**
+	 * The scissor test followed by the depth test performed against a single precision
+	 * depth buffer.
+	 */
+	private final class SinglePrecisionScissorDepthTest extends FragmentTest
+	{
+		@Override
+		public boolean passes(final Fragment fragment, final int offset, final int xw, final int yw)
+		{
+			return scissor.test(xw, yw) && (float)fragment.z < zbufferf[offset];
+		}
+	}
+	/**
+	 * Resolve a multisampled framebuffer by averaging each pixel's samples into the pixel
+	 * buffer, and storing each pixel's closest sample depth in the depth buffer. Only the
+	 * region cleared for the current frame is resolved, and its rows are resolved in parallel
+	 * bands. Nothing is done if the framebuffer is not multisampled.
+	 */
+	public void resolve()
+	{
+		if (msbuffer != null)
+			PostProcessingChain.ForEachBand(region.height, resolveBand);
+	}
+	/**
+	 * Resolve a band of rows.
+	 */
+	private final PostProcessingChain.Band resolveBand = new PostProcessingChain.Band()
+	{
+		@Override
+		public void process(final int y0, final int y1)
+		{
+			for (int y = region.y + y0; y < region.y + y1; ++y)
+			{
+				final int last = region.x + region.width + (y * width);
+				for (int offset = region.x + (y * width); offset < last; ++offset)
+				{
+					final int first = offset << sampleShift;
 
+					// The red and blue channels are summed in one integer, and the alpha and green
+					// channels in another. With at most 8 samples, no channel sum overflows into
+					// its neighbour, and each sum is divided by shifting.
+					int rb = 0, ag = 0;
+					double z = Double.MAX_VALUE;
+					for (int s = first; s < first + samples; ++s)
+					{
+						final int color = msbuffer[s];
+						rb += color & 0x00ff00ff;
+						ag += (color >>> 8) & 0x00ff00ff;
 
-		if (RuntimeOptions.EnableDepthTest && !(fragment.z < zbuffer[offset])) return false;
+						final double zs = isSinglePrecision ? mszbufferf[s] : mszbuffer[s];
+						if (zs < z)
+							z = zs;
+					}
+					pbuffer[offset] = (((ag >>> sampleShift) & 0x00ff00ff) << 8) | ((rb >>> sampleShift) & 0x00ff00ff);
+					setDepth(offset, z);
+				}
+			}
+		}
+	};
+	/**
+	 * Resolve the region of the framebuffer rendered in the current frame if it is multisampled,
+	 * choose the next frame's shading rates, blend it with the previous frames if they are
+	 * accumulated, then post-process the region.
+	 */
+	public void postProcess()
+	{
+		resolve();
 
+		// The shading rates are chosen before the frame is post-processed.
+		if (isVariableRateShading)
+			variableRateShading.update(this);
+		else
+			variableRateShading.reset();
 
-		return true;
+		if (isTemporallyAccumulated())
+			temporalAccumulation.apply(this);
+		postProcessingChain.apply(this);
 	}
 	/**
-	 * Post-processing the framebuffer's contents.
+	 * Set whether the framebuffer holds preview frames. The accumulated history is discarded
+	 * when preview frames start, since they are not accumulated.
+	 * @param isPreview true if the next frames are preview frames, false otherwise.
 	 */
-	public void postProcess()
+	public void setPreview(final boolean isPreview)
+	{
+		if (isPreview && !this.isPreview)
+			temporalAccumulation.reset();
+		this.isPreview = isPreview;
+	}
+	/**
+	 * Return true if the framebuffer holds a preview frame, false otherwise.
+	 */
+	public boolean isPreview()
 	{
-		FXAA.apply(this);
+		return isPreview;
+	}
+	/**
+	 * Return true if the framebuffer's frames are accumulated over time, which is the
+	 * case when temporal accumulation is enabled and the framebuffer does not hold a preview.
+	 */
+	public boolean isTemporallyAccumulated()
+	{
+		return RuntimeOptions.EnableTemporalAccumulation && !isPreview;
+	}
+	/**
+	 * Return the shading rates of the framebuffer's tiles.
+	 */
+	public VariableRateShading getVariableRateShading()
+	{
+		return variableRateShading;
+	}
+	/**
+	 * Return the tracking of the regions damaged from one frame to the next.
+	 */
+	public DamageTracking getDamageTracking()
+	{
+		return damageTracking;
+	}
+	/**
+	 * Return the accumulation of rendered frames over time.
+	 */
+	public TemporalAccumulation getTemporalAccumulation()
+	{
+		return temporalAccumulation;
+	}
+	/**
+	 * Return the chain of post-processing filters applied to the framebuffer's contents.
+	 */
+	public PostProcessingChain getPostProcessingChain()
+	{
+		return postProcessingChain;
 	}
 	/**
 	 * Discard a framebuffer value which resets a single element of the framebuffer.
@@ -392,9 +1142,16 @@ public final class Framebuffer
 	public void discard(final int offset)
 	{
 		pbuffer[offset] = cbufferClearValue;
-		zbuffer[offset] = zbufferClearValue;
+		setDepth(offset, zbufferClearValue);
 		abuffer[offset] = abufferClearValue;
 		sbuffer[offset] = sbufferClearValue;
+		if (msbuffer != null)
+		{
+			final int first = offset << sampleShift;
+			Arrays.fill(msbuffer, first, first + samples, cbufferClearValue);
+			for (int s = first; s < first + samples; ++s)
+				setSampleDepth(s, zbufferClearValue);
+		}
 	}
 
 
@@ -406,11 +1163,23 @@ public final class Framebuffer
 	public void setPixel(int x, int y, float z, int pixel)
 	{
 		final int offset = getFramebufferOffset(x, y);
-		if (offset >= 0 && zbuffer[offset] > z)
+		if (offset >= 0 && msbuffer != null)
+		{
+			// The pixel is drawn to each of its samples.
+			final int first = offset << sampleShift;
+			for (int s = first; s < first + samples; ++s)
+			{
+				if (isSampleCloser(s, z))
+				{
+					msbuffer[s] = pixel;
+					setSampleDepth(s, z);
+				}
+			}
+		}
+		else if (offset >= 0 && isCloser(offset, z))
 		{
 			pbuffer[offset] = pixel;
-			zbuffer[offset] = z;
-			abuffer[offset] = abufferClearValue;
+			setDepth(offset, z);
 			sbuffer[offset] = sbufferClearValue;
 		}
 	}
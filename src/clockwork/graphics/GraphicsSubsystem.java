@@ -28,6 +28,7 @@ import java.awt.image.BufferedImage;
 import java.awt.image.DataBufferInt;
 
 import clockwork.gui.Display;
+import clockwork.system.RuntimeOptions;
 import clockwork.system.Subsystem;
 
 public final class GraphicsSubsystem extends Subsystem
@@ -48,6 +49,14 @@ public final class GraphicsSubsystem extends Subsystem
 	 * Create the default framebuffer with a resolution identical to the display device.
 	 */
 	private final Framebuffer framebuffer = new Framebuffer(display);
+	/**
+	 * The controller that scales the framebuffer's resolution to meet the render time budget.
+	 */
+	private final DynamicResolution dynamicResolution = new DynamicResolution();
+	/**
+	 * The quality of the frames rendered while, and after, the user interacts with the scene.
+	 */
+	private final ProgressiveRefinement progressiveRefinement = new ProgressiveRefinement();
 	/**
 	 * Return the display device.
 	 */
@@ -62,6 +71,13 @@ public final class GraphicsSubsystem extends Subsystem
 	{
 		return framebuffer;
 	}
+	/**
+	 * Return the progressive refinement of the rendered frames.
+	 */
+	public ProgressiveRefinement getProgressiveRefinement()
+	{
+		return progressiveRefinement;
+	}
 	/**
 	 * Render the scene.
 	 * @param dt the time elapsed since the last render.
@@ -69,14 +85,37 @@ public final class GraphicsSubsystem extends Subsystem
 	@Override
 	public void update(final float dt)
 	{
-		framebuffer.clear();
+		// Select the resolution and the anti-aliasing passes for the frame's quality level.
+		double scale = 1.0;
+		if (RuntimeOptions.EnableDynamicResolution)
+			scale = dynamicResolution.getScale();
+		else
+			dynamicResolution.reset();
+
+		final ProgressiveRefinement.Level level = progressiveRefinement.getLevel();
+		if (level == ProgressiveRefinement.Level.Preview)
+			scale = Math.min(scale, RuntimeOptions.PreviewResolutionScale);
+
+		final boolean isPreview = level != ProgressiveRefinement.Level.Final;
+		framebuffer.setResolutionScale(scale);
+		framebuffer.setPreview(isPreview);
+		framebuffer.setSampleCount(isPreview ? 1 : RuntimeOptions.MultisampleCount);
 		if (display != null)
 		{
 			// If the scene has been changed by another subsystem, notify its viewers.
 			// This will, in turn, update the render contexts held by the scene viewers,
-			// then render the scene to the framebuffer and apply post-processing filters.
+			// then render the regions of the framebuffer that the changes have damaged, and
+			// apply post-processing filters to them.
+			// The render time determines the resolution the next frames are rendered at, but
+			// only frames rendered at the controller's resolution are timed.
 			if (scene.hasChanged())
+			{
+				final long t0 = System.nanoTime();
 				scene.notifyObservers(dt);
+				if (RuntimeOptions.EnableDynamicResolution && scale == dynamicResolution.getScale())
+					dynamicResolution.update(System.nanoTime() - t0);
+			}
+			progressiveRefinement.rendered(framebuffer);
 		}
 	}
 	/**
@@ -98,9 +137,10 @@ public final class GraphicsSubsystem extends Subsystem
 	 */
 	public void showImage(final Texture texture)
 	{
-		if (texture != null)
+		final int texels[] = texture != null ? texture.getTexels() : null;
+		if (texels != null)
 		{
-			new ImageViewer(texture.texels, texture.width, texture.height);
+			new ImageViewer(texels, texture.width, texture.height);
 		}
 	}
 	/**
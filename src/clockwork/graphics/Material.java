@@ -24,6 +24,8 @@
 package clockwork.graphics;
 
 import clockwork.graphics.color.ColorRGB;
+import clockwork.system.RuntimeOptions;
+import clockwork.types.math.PowerTable;
 
 public class Material
 {
@@ -71,6 +73,13 @@ public class Material
 	 * The displacement map.
 	 */
 	public Texture displacement = null;
+	/**
+	 * The lookup table for the specular term, which is rebuilt whenever the material's
+	 * shininess or the error bound changes.
+	 */
+	private PowerTable specularTable = null;
+	private double specularTableShininess = Double.NaN;
+	private double specularTableErrorBound = Double.NaN;
 	/**
 	 * Instantiate a material.
 	 */
@@ -97,4 +106,20 @@ public class Material
 		this.bump = bump;
 		this.specular = specular;
 	}
+	/**
+	 * Return the lookup table for x^shininess, built for the current error bound, or null
+	 * if no table can meet the bound.
+	 * @see RuntimeOptions#SpecularLookupTableErrorBound
+	 */
+	public PowerTable getSpecularTable()
+	{
+		final double errorBound = RuntimeOptions.SpecularLookupTableErrorBound;
+		if (shininess != specularTableShininess || errorBound != specularTableErrorBound)
+		{
+			specularTable = PowerTable.create(shininess, errorBound);
+			specularTableShininess = shininess;
+			specularTableErrorBound = errorBound;
+		}
+		return specularTable;
+	}
 }
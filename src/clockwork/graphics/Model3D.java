@@ -38,6 +38,10 @@ public final class Model3D extends Asset
 	 * The model's material, i.e. its look and feel.
 	 */
 	private Material material = null;
+	/**
+	 * The number of times the model's mesh data or material have been modified.
+	 */
+	private int revision = 0;
 	/**
 	 * Instantiate a 3D model with a given mesh and material.
 	 * @param mesh the 3D model's mesh data.
@@ -70,7 +74,10 @@ public final class Model3D extends Asset
 	public void setMesh(final Mesh mesh)
 	{
 		if (mesh != null)
+		{
 			this.mesh = mesh;
+			setModified();
+		}
 	}
 	/**
 	 * Return the 3D model's material data.
@@ -86,7 +93,25 @@ public final class Model3D extends Asset
 	public void setMaterial(final Material material)
 	{
 		if (mesh != null)
+		{
 			this.material = material;
+			setModified();
+		}
+	}
+	/**
+	 * Return the number of times the model's mesh data or material have been modified.
+	 */
+	public int getRevision()
+	{
+		return revision;
+	}
+	/**
+	 * Mark the model as modified. This must be called each time its mesh data, such as its
+	 * texture coordinates, is modified in place.
+	 */
+	public void setModified()
+	{
+		++revision;
 	}
 	/**
 	 * Convert the 3D model data to a string.
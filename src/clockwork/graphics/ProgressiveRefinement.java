@@ -0,0 +1,152 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2013 Jeremy Othieno.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package clockwork.graphics;
+
+import java.awt.event.ActionEvent;
+import java.awt.event.ActionListener;
+
+import javax.swing.Timer;
+
+import clockwork.scene.Scene;
+import clockwork.system.RuntimeOptions;
+
+/**
+ * Progressive refinement. While the user interacts with the scene, frames are rendered
+ * as cheap previews so the controls stay responsive. Once the input has been idle for
+ * a short delay, the scene is rendered again at increasingly higher qualities, until it
+ * reaches the final quality selected by the runtime options. When frames are accumulated
+ * over time, final quality frames are then rendered until the accumulated history is full.
+ * @see RuntimeOptions#EnableProgressiveRefinement
+ * @see TemporalAccumulation
+ */
+public final class ProgressiveRefinement
+{
+	/**
+	 * The quality levels, from the cheapest to the final quality.
+	 */
+	public enum Level
+	{
+		/**
+		 * A preview rendered at a fraction of the resolution, without anti-aliasing.
+		 * @see RuntimeOptions#PreviewResolutionScale
+		 */
+		Preview,
+		/**
+		 * A preview rendered at full resolution, without anti-aliasing.
+		 */
+		FullResolution,
+		/**
+		 * The quality selected by the runtime options.
+		 */
+		Final
+	}
+	/**
+	 * The level the next frame is rendered at.
+	 */
+	private Level level = Level.Final;
+	/**
+	 * The timer that starts each refinement once the input has been idle, and each
+	 * accumulated frame. It runs on the event dispatch thread, like the controls that
+	 * report interactions.
+	 */
+	private final Timer timer = new Timer(0, new ActionListener()
+	{
+		@Override
+		public void actionPerformed(final ActionEvent e)
+		{
+			refine();
+		}
+	});
+	/**
+	 * Instantiate a progressive refinement at the final quality.
+	 */
+	public ProgressiveRefinement()
+	{
+		timer.setRepeats(false);
+
+		// The timer is restarted without delay while its previous event is being handled,
+		// which a coalescing timer would drop.
+		timer.setCoalesce(false);
+	}
+	/**
+	 * Return the level the next frame is rendered at.
+	 */
+	public Level getLevel()
+	{
+		return level;
+	}
+	/**
+	 * Report an interaction with the scene. The frames rendered until the input has been
+	 * idle for RuntimeOptions.RefinementDelay milliseconds are previews.
+	 */
+	public void interact()
+	{
+		if (RuntimeOptions.EnableProgressiveRefinement)
+		{
+			level = Level.Preview;
+			timer.setInitialDelay(RuntimeOptions.RefinementDelay);
+			timer.restart();
+		}
+		else
+		{
+			level = Level.Final;
+			timer.stop();
+		}
+	}
+	/**
+	 * Report that a frame has been rendered to a framebuffer. If the framebuffer's frames are
+	 * accumulated over time and its history is not full yet, another final quality frame is
+	 * scheduled, since the scene is otherwise only rendered when it changes.
+	 * @param framebuffer the framebuffer the frame was rendered to.
+	 */
+	public void rendered(final Framebuffer framebuffer)
+	{
+		if
+		(
+			level == Level.Final &&
+			framebuffer.isTemporallyAccumulated() &&
+			!framebuffer.getTemporalAccumulation().isConverged() &&
+			!timer.isRunning()
+		)
+		{
+			timer.setInitialDelay(0);
+			timer.restart();
+		}
+	}
+	/**
+	 * Render the scene at the next level, and schedule the following refinement if the
+	 * final quality has not been reached. At the final quality, the scene is rendered again
+	 * to accumulate another frame.
+	 */
+	private void refine()
+	{
+		if (level != Level.Final)
+		{
+			level = Level.values()[level.ordinal() + 1];
+			if (level != Level.Final)
+				timer.restart();
+		}
+		Scene.RunUpdateTask();
+	}
+}
@@ -0,0 +1,340 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2013 Jeremy Othieno.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package clockwork.graphics;
+
+import clockwork.graphics.color.ColorRGBA;
+import clockwork.graphics.filters.PostProcessingChain;
+import clockwork.system.RuntimeOptions;
+import clockwork.types.math.Matrix4;
+import clockwork.types.math.Point3f;
+
+/**
+ * Temporal accumulation. Each frame is rendered with its projection jittered by a different
+ * subpixel offset, and blended with the previous frames' accumulated result, the history,
+ * which is stored in the framebuffer's accumulation buffer. The history is reprojected
+ * through the previous frame's VIEWPROJECTION so that it stays aligned with the current
+ * frame while the camera moves, and is clamped to the colors of each pixel's neighbourhood
+ * to reject what moving objects leave behind. When the camera is still, the result
+ * converges to an image supersampled at every jitter offset. A frame without a history is
+ * not jittered, since it is displayed as it is.
+ */
+public final class TemporalAccumulation
+{
+	/**
+	 * The number of jitter offsets, which is also the largest number of frames whose
+	 * average is accumulated when the camera is still.
+	 */
+	public static final int JITTER_COUNT = 16;
+	/**
+	 * The jitter offsets in pixels, interleaved as <x, y> pairs. These are the first points
+	 * of the Halton sequence in bases 2 and 3, which cover a pixel evenly for any number of
+	 * consecutive frames.
+	 */
+	private static final double JITTER[] = new double[2 * JITTER_COUNT];
+	static
+	{
+		for (int i = 0; i < JITTER_COUNT; ++i)
+		{
+			JITTER[2 * i] = Halton(i + 1, 2) - 0.5;
+			JITTER[2 * i + 1] = Halton(i + 1, 3) - 0.5;
+		}
+	}
+	/**
+	 * The transformation applied to frames that are not jittered.
+	 */
+	private static final Matrix4 NO_JITTER = Matrix4.translate(0.0, 0.0, 0.0);
+	/**
+	 * The index of the current jitter offset, or -1 if the current frame is not jittered, and
+	 * the current jitter transformation which translates normalised device coordinates by
+	 * that offset.
+	 */
+	private int jitter = -1;
+	private Matrix4 JITTER_TRANSFORMATION = NO_JITTER;
+	/**
+	 * The number of frames that make up the history, including the current frame. The
+	 * current frame's weight is the inverse of this number.
+	 */
+	private int frames = 1;
+	/**
+	 * The previous frame's unjittered VIEWPROJECTION, its viewer's position and its viewport
+	 * transformation values, or null if there is no history.
+	 */
+	private Matrix4 previousVIEWPROJECTION = null;
+	private Point3f previousViewerPosition = null;
+	private double previousVx = 0.0;
+	private double previousVy = 0.0;
+	/**
+	 * The transformation from the current frame's window coordinates to the previous
+	 * frame's, or null if there is no history.
+	 */
+	private double REPROJECTION[] = null;
+	/**
+	 * A copy of the history, which is read while the accumulation buffer is written.
+	 */
+	private int history[] = new int[0];
+	/**
+	 * The framebuffer being accumulated into, and the current frame's weight, read by the bands.
+	 */
+	private Framebuffer framebuffer = null;
+	private int weight = 256;
+	/**
+	 * Return the element of the Halton sequence with a given index and base.
+	 * @param index the element's index, starting at 1.
+	 * @param base the sequence's base.
+	 */
+	private static double Halton(int index, final int base)
+	{
+		double result = 0.0;
+		double f = 1.0;
+		while (index > 0)
+		{
+			f /= base;
+			result += f * (index % base);
+			index /= base;
+		}
+		return result;
+	}
+	/**
+	 * Discard the history. The next frame is not blended with any previous frame.
+	 */
+	public void reset()
+	{
+		previousVIEWPROJECTION = null;
+		REPROJECTION = null;
+		frames = 1;
+	}
+	/**
+	 * Return true if the history holds as many frames as there are jitter offsets, in which
+	 * case rendering more frames of a still scene does not improve the result.
+	 */
+	public boolean isConverged()
+	{
+		return frames >= JITTER_COUNT;
+	}
+	/**
+	 * Prepare the accumulation of a new frame. If there is a history, this advances the
+	 * jitter offset, and calculates the transformation that reprojects the current frame's
+	 * pixels into the previous frame. The history's weight is reduced to at most 1 - TemporalAccumulationWeight
+	 * while the camera moves, so that the history does not lag behind it.
+	 * @param VIEWPROJECTION the frame's unjittered VIEWPROJECTION transformation.
+	 * @param viewerPosition the position of the viewer, which the VIEWPROJECTION is relative to.
+	 * @param vx the viewport's transformation component on the X axis.
+	 * @param vy the viewport's transformation component on the Y axis.
+	 */
+	public void update(final Matrix4 VIEWPROJECTION, final Point3f viewerPosition, final double vx, final double vy)
+	{
+		if (previousVIEWPROJECTION == null)
+		{
+			jitter = -1;
+			JITTER_TRANSFORMATION = NO_JITTER;
+			REPROJECTION = null;
+			frames = 1;
+		}
+		else
+		{
+			// One pixel spans 1 / vx and 1 / vy in normalised device coordinates.
+			jitter = (jitter + 1) % JITTER_COUNT;
+			JITTER_TRANSFORMATION = Matrix4.translate(JITTER[2 * jitter] / vx, JITTER[2 * jitter + 1] / vy, 0.0);
+
+			// Convert the current frame's window coordinates to world space, relative to the
+			// previous viewer, then to the previous frame's window coordinates. Both frames are
+			// reprojected without their jitter since a pixel's history is centered on the pixel,
+			// and a still camera's history is then read without being resampled.
+			final Matrix4 WINDOWTONDC = new Matrix4
+			(
+				new double[]
+				{
+					1.0 / vx,      0.0, 0.0, -1.0,
+					     0.0, 1.0 / vy, 0.0, -1.0,
+					     0.0,      0.0, 1.0,  0.0,
+					     0.0,      0.0, 0.0,  1.0
+				}
+			);
+			final Matrix4 NDCTOWINDOW = new Matrix4
+			(
+				new double[]
+				{
+					previousVx,        0.0, 0.0, previousVx,
+					       0.0, previousVy, 0.0, previousVy,
+					       0.0,        0.0, 1.0,        0.0,
+					       0.0,        0.0, 0.0,        1.0
+				}
+			);
+			REPROJECTION = NDCTOWINDOW
+			.multiply(previousVIEWPROJECTION)
+			.multiply(Matrix4.translate
+			(
+				viewerPosition.x - previousViewerPosition.x,
+				viewerPosition.y - previousViewerPosition.y,
+				viewerPosition.z - previousViewerPosition.z
+			))
+			.multiply(Matrix4.inverse(VIEWPROJECTION))
+			.multiply(WINDOWTONDC)
+			.getData();
+
+			final boolean isStill =
+			VIEWPROJECTION.isEqual(previousVIEWPROJECTION) &&
+			viewerPosition.x == previousViewerPosition.x &&
+			viewerPosition.y == previousViewerPosition.y &&
+			viewerPosition.z == previousViewerPosition.z &&
+			vx == previousVx && vy == previousVy;
+
+			final int limit = isStill ?
+			JITTER_COUNT :
+			(int)Math.max(1, Math.min(JITTER_COUNT, Math.round(1.0 / RuntimeOptions.TemporalAccumulationWeight)));
+			frames = Math.min(frames + 1, limit);
+		}
+
+		previousVIEWPROJECTION = new Matrix4(VIEWPROJECTION);
+		previousViewerPosition = new Point3f(viewerPosition);
+		previousVx = vx;
+		previousVy = vy;
+	}
+	/**
+	 * Return the current jitter transformation, which is applied to the PROJECTION.
+	 */
+	public Matrix4 getJitter()
+	{
+		return JITTER_TRANSFORMATION;
+	}
+	/**
+	 * Blend a framebuffer's rendered frame with its history. The result is stored in both
+	 * the accumulation buffer, where it becomes the next frame's history, and the color buffer.
+	 * @param framebuffer the framebuffer to accumulate.
+	 */
+	public void apply(final Framebuffer framebuffer)
+	{
+		final int pixels[] = framebuffer.getColorBuffer();
+		final int accumulation[] = framebuffer.getAccumulationBuffer();
+		if (history.length != accumulation.length)
+		{
+			history = new int[accumulation.length];
+			REPROJECTION = null;
+		}
+		System.arraycopy(accumulation, 0, history, 0, accumulation.length);
+
+		this.framebuffer = framebuffer;
+		this.weight = REPROJECTION == null ? 256 : (int)Math.round(256.0 / frames);
+		PostProcessingChain.ForEachBand(framebuffer.getHeight(), band);
+
+		System.arraycopy(accumulation, 0, pixels, 0, pixels.length);
+	}
+	/**
+	 * Accumulate a band of rows.
+	 */
+	private final PostProcessingChain.Band band = new PostProcessingChain.Band()
+	{
+		@Override
+		public void process(final int y0, final int y1)
+		{
+			final int pixels[] = framebuffer.getColorBuffer();
+			final int accumulation[] = framebuffer.getAccumulationBuffer();
+			final int width = framebuffer.getWidth();
+			final int height = framebuffer.getHeight();
+			final double M[] = REPROJECTION;
+
+			for (int y = y0; y < y1; ++y)
+			{
+				for (int x = 0; x < width; ++x)
+				{
+					final int offset = x + (y * width);
+					final int color = pixels[offset];
+					if (M == null || weight >= 256)
+					{
+						accumulation[offset] = color;
+						continue;
+					}
+
+					// Find the pixel's position in the previous frame. Pixels that nothing was
+					// rendered to are reprojected as if they were on the far plane.
+					final double z = Math.min(1.0, framebuffer.getDepth(offset));
+					final double w = (M[12] * x) + (M[13] * y) + (M[14] * z) + M[15];
+					final double px = ((M[0] * x) + (M[1] * y) + (M[2] * z) + M[3]) / w;
+					final double py = ((M[4] * x) + (M[5] * y) + (M[6] * z) + M[7]) / w;
+					if (!(w > 0.0 && px >= 0.0 && py >= 0.0 && px <= width - 1 && py <= height - 1))
+					{
+						accumulation[offset] = color;
+						continue;
+					}
+
+					final int previous = clamp(sample(history, width, height, px, py), pixels, width, height, x, y);
+					accumulation[offset] = ColorRGBA.lerp(previous, color, weight);
+				}
+			}
+		}
+	};
+	/**
+	 * Sample a frame at given window coordinates using bilinear filtering.
+	 * @param pixels the frame's pixels.
+	 * @param width the frame's width.
+	 * @param height the frame's height.
+	 * @param x the horizontal window coordinate, between 0 and width - 1.
+	 * @param y the vertical window coordinate, between 0 and height - 1.
+	 */
+	private static int sample(final int pixels[], final int width, final int height, final double x, final double y)
+	{
+		final int x0 = (int)x;
+		final int y0 = (int)y;
+		final int x1 = Math.min(x0 + 1, width - 1);
+		final int y1 = Math.min(y0 + 1, height - 1);
+		final int fx = (int)((x - x0) * 256.0);
+		final int fy = (int)((y - y0) * 256.0);
+
+		final int top = ColorRGBA.lerp(pixels[x0 + (y0 * width)], pixels[x1 + (y0 * width)], fx);
+		final int bottom = ColorRGBA.lerp(pixels[x0 + (y1 * width)], pixels[x1 + (y1 * width)], fx);
+		return ColorRGBA.lerp(top, bottom, fy);
+	}
+	/**
+	 * Clamp each of a color's channels to the range of that channel's values in a pixel's
+	 * 3x3 neighbourhood.
+	 * @param color the color to clamp.
+	 * @param pixels the frame's pixels.
+	 * @param width the frame's width.
+	 * @param height the frame's height.
+	 * @param x the pixel's horizontal window coordinate.
+	 * @param y the pixel's vertical window coordinate.
+	 */
+	private static int clamp(final int color, final int pixels[], final int width, final int height, final int x, final int y)
+	{
+		int amin = 255, rmin = 255, gmin = 255, bmin = 255;
+		int amax = 0, rmax = 0, gmax = 0, bmax = 0;
+		for (int j = Math.max(0, y - 1); j <= Math.min(height - 1, y + 1); ++j)
+		{
+			for (int i = Math.max(0, x - 1); i <= Math.min(width - 1, x + 1); ++i)
+			{
+				final int c = pixels[i + (j * width)];
+				final int a = c >>> 24, r = (c >> 16) & 0xff, g = (c >> 8) & 0xff, b = c & 0xff;
+				amin = Math.min(amin, a); amax = Math.max(amax, a);
+				rmin = Math.min(rmin, r); rmax = Math.max(rmax, r);
+				gmin = Math.min(gmin, g); gmax = Math.max(gmax, g);
+				bmin = Math.min(bmin, b); bmax = Math.max(bmax, b);
+			}
+		}
+		final int a = Math.min(amax, Math.max(amin, color >>> 24));
+		final int r = Math.min(rmax, Math.max(rmin, (color >> 16) & 0xff));
+		final int g = Math.min(gmax, Math.max(gmin, (color >> 8) & 0xff));
+		final int b = Math.min(bmax, Math.max(bmin, color & 0xff));
+		return (a << 24) | (r << 16) | (g << 8) | b;
+	}
+}
@@ -24,6 +24,7 @@
 package clockwork.graphics;
 
 import clockwork.asset.Asset;
+import clockwork.system.RuntimeOptions;
 
 /**
  * A texture.
@@ -31,9 +32,48 @@ import clockwork.asset.Asset;
 public class Texture extends Asset
 {
 	/**
-	 * The array of texture elements.
+	 * The texture filters used to sample a texture.
 	 */
-	public final int texels[];
+	public static enum Filter
+	{
+		/**
+		 * The texel closest to the texture coordinates in the full-resolution texture.
+		 */
+		Nearest("Nearest"),
+		/**
+		 * A weighted average of the four closest texels in the most appropriate mipmap level.
+		 */
+		Bilinear("Bilinear"),
+		/**
+		 * A weighted average of bilinear samples in the two most appropriate mipmap levels.
+		 */
+		Trilinear("Trilinear");
+		/**
+		 * The filter's title.
+		 */
+		private final String title;
+		/**
+		 * Instantiate a filter with a given title.
+		 * @param title the filter's title.
+		 */
+		Filter(final String title)
+		{
+			this.title = title;
+		}
+		/**
+		 * Convert the filter data to a string.
+		 */
+		@Override
+		public String toString()
+		{
+			return title;
+		}
+	}
+	/**
+	 * The array of texture elements in row-major order, or null if the texture has been
+	 * tiled or compressed.
+	 */
+	private int texels[];
 	/**
 	 * The width of the texture.
 	 */
@@ -42,6 +82,37 @@ public class Texture extends Asset
 	 * The height of the texture.
 	 */
 	public final int height;
+	/**
+	 * The mipmap pyramid, where level 0 is the texture itself and each following level is
+	 * half the size of the previous one, down to a single texel. Until mipmaps are generated,
+	 * the pyramid only contains the texture.
+	 */
+	private int mipmaps[][];
+	private int mipmapWidths[];
+	private int mipmapHeights[];
+	/**
+	 * The width and height of a block in the tiled memory layout, in texels, and its base 2
+	 * logarithm. A 4x4 block of 32-bit texels fills a 64-byte cache line.
+	 */
+	public static final int BLOCK_SIZE = 4;
+	private static final int BLOCK_SHIFT = 2;
+	/**
+	 * Is the mipmap pyramid stored in the tiled memory layout? If so, each level is divided
+	 * into square blocks stored in row-major order, and each block's texels are themselves
+	 * stored in row-major order. Neighbouring texels along either axis then usually lie in the
+	 * same cache line, whatever the direction in which a texture is traversed.
+	 */
+	private boolean isTiled = false;
+	/**
+	 * The number of block columns in each mipmap level of a tiled or compressed texture.
+	 */
+	private int mipmapBlockColumns[];
+	/**
+	 * The block-compressed mipmap pyramid, or null if the texture is not compressed. When a
+	 * texture is compressed, its uncompressed texels and mipmap levels are released.
+	 * @see BlockCompression
+	 */
+	private long compressedMipmaps[][] = null;
 	/**
 	 * Instantiate a texture with a given array of texels, width and height.
 	 * @param texels the texture elements that will make up this texture.
@@ -53,8 +124,248 @@ public class Texture extends Asset
 		this.width = width;
 		this.height = height;
 		this.texels = texels;
+		this.mipmaps = new int[][]{texels};
+		this.mipmapWidths = new int[]{width};
+		this.mipmapHeights = new int[]{height};
+	}
+	/**
+	 * Instantiate a texture with a given width and height whose texels are provided by a
+	 * subclass, which must override the samplers.
+	 * @param width the texture's width.
+	 * @param height the texture's height.
+	 */
+	protected Texture(final int width, final int height)
+	{
+		this.width = width;
+		this.height = height;
+		this.texels = null;
+		this.mipmaps = new int[0][];
+		this.mipmapWidths = new int[0];
+		this.mipmapHeights = new int[0];
+	}
+	/**
+	 * Return the texture's texels in row-major order. If the texture is tiled or compressed,
+	 * the texels are rebuilt into a new array. If the texels are not held in memory, null
+	 * is returned.
+	 */
+	public int[] getTexels()
+	{
+		return texels != null ? texels : getLinearMipmap(0);
 	}
+	/**
+	 * Are the texture's texels held in memory, in any layout? Unlike getTexels, this does
+	 * not decode tiled or compressed texels.
+	 */
+	public boolean isInMemory()
+	{
+		return compressedMipmaps != null || mipmaps.length > 0;
+	}
+	/**
+	 * Generate the texture's mipmap pyramid. Each texel of a level is the average of the
+	 * (up to) 2x2 texels it covers in the previous level.
+	 */
+	public void generateMipmaps()
+	{
+		int levels = 1;
+		for (int w = width, h = height; w > 1 || h > 1; w = Math.max(1, w >> 1), h = Math.max(1, h >> 1))
+			++levels;
+
+		final int pyramid[][] = new int[levels][];
+		final int widths[] = new int[levels];
+		final int heights[] = new int[levels];
+		pyramid[0] = getTexels();
+		widths[0] = width;
+		heights[0] = height;
+
+		for (int level = 1; level < levels; ++level)
+		{
+			final int src[] = pyramid[level - 1];
+			final int sw = widths[level - 1];
+			final int sh = heights[level - 1];
+			final int dw = Math.max(1, sw >> 1);
+			final int dh = Math.max(1, sh >> 1);
+			final int dst[] = new int[dw * dh];
 
+			for (int y = 0; y < dh; ++y)
+			{
+				final int y0 = Math.min(sh - 1, y * 2), y1 = Math.min(sh - 1, (y * 2) + 1);
+				for (int x = 0; x < dw; ++x)
+				{
+					final int x0 = Math.min(sw - 1, x * 2), x1 = Math.min(sw - 1, (x * 2) + 1);
+					final int t00 = src[x0 + (y0 * sw)], t10 = src[x1 + (y0 * sw)];
+					final int t01 = src[x0 + (y1 * sw)], t11 = src[x1 + (y1 * sw)];
+
+					// Average each channel, rounding to the nearest value.
+					int texel = 0;
+					for (int shift = 0; shift < 32; shift += 8)
+					{
+						final int sum =
+						((t00 >>> shift) & 0xff) + ((t10 >>> shift) & 0xff) +
+						((t01 >>> shift) & 0xff) + ((t11 >>> shift) & 0xff);
+						texel |= ((sum + 2) >> 2) << shift;
+					}
+					dst[x + (y * dw)] = texel;
+				}
+			}
+			pyramid[level] = dst;
+			widths[level] = dw;
+			heights[level] = dh;
+		}
+		// The new pyramid is in the linear layout. If the texture was tiled or compressed,
+		// tile or compress it again.
+		final boolean tiled = isTiled;
+		final boolean compressed = compressedMipmaps != null;
+		mipmaps = pyramid;
+		mipmapWidths = widths;
+		mipmapHeights = heights;
+		compressedMipmaps = null;
+		isTiled = false;
+		if (compressed)
+			compress();
+		else if (tiled)
+			tile();
+	}
+	/**
+	 * Store the texture's mipmap pyramid in the tiled memory layout. The linear texels are
+	 * released so that level 0 is not held in memory twice. Compressed textures are already
+	 * stored in blocks and are left unchanged.
+	 */
+	public void tile()
+	{
+		if (isTiled || compressedMipmaps != null)
+			return;
+
+		mipmapBlockColumns = new int[mipmaps.length];
+		for (int level = 0; level < mipmaps.length; ++level)
+		{
+			final int src[] = mipmaps[level];
+			final int w = mipmapWidths[level];
+			final int h = mipmapHeights[level];
+			final int columns = (w + BLOCK_SIZE - 1) >> BLOCK_SHIFT;
+			final int rows = (h + BLOCK_SIZE - 1) >> BLOCK_SHIFT;
+
+			// Blocks on the right and bottom edges are padded to a full block.
+			final int dst[] = new int[(columns * rows) << (2 * BLOCK_SHIFT)];
+			for (int y = 0; y < h; ++y)
+			{
+				for (int x = 0; x < w; ++x)
+					dst[getTiledOffset(x, y, columns)] = src[x + (y * w)];
+			}
+			mipmaps[level] = dst;
+			mipmapBlockColumns[level] = columns;
+		}
+		texels = null;
+		isTiled = true;
+	}
+	/**
+	 * Compress the texture's mipmap pyramid, which then takes an eighth of the memory it
+	 * previously did. Compression is lossy and drops the alpha channel, so only opaque
+	 * textures are compressed. Compressed textures are sampled without being decompressed.
+	 * Mipmaps should be generated beforehand, from the uncompressed texels.
+	 * @return true if the texture is compressed, false otherwise.
+	 */
+	public boolean compress()
+	{
+		if (compressedMipmaps != null)
+			return true;
+		if (!BlockCompression.isOpaque(getTexels()))
+			return false;
+
+		final long pyramid[][] = new long[mipmaps.length][];
+		final int columns[] = new int[mipmaps.length];
+		for (int level = 0; level < mipmaps.length; ++level)
+		{
+			final int w = mipmapWidths[level];
+			final int h = mipmapHeights[level];
+			pyramid[level] = BlockCompression.encode(getLinearMipmap(level), w, h);
+			columns[level] = BlockCompression.getColumns(w);
+		}
+		compressedMipmaps = pyramid;
+		mipmapBlockColumns = columns;
+		mipmaps = null;
+		texels = null;
+		isTiled = false;
+
+		return true;
+	}
+	/**
+	 * Is the texture compressed?
+	 */
+	public boolean isCompressed()
+	{
+		return compressedMipmaps != null;
+	}
+	/**
+	 * Return a mipmap level's texels in row-major order.
+	 * @param level the mipmap level.
+	 */
+	private int[] getLinearMipmap(final int level)
+	{
+		final int w = mipmapWidths[level];
+		final int h = mipmapHeights[level];
+		if (compressedMipmaps != null)
+			return BlockCompression.decode(compressedMipmaps[level], w, h);
+		if (!isTiled)
+			return mipmaps[level];
+
+		final int linear[] = new int[w * h];
+		for (int y = 0; y < h; ++y)
+		{
+			for (int x = 0; x < w; ++x)
+				linear[x + (y * w)] = mipmaps[level][getOffset(level, x, y)];
+		}
+		return linear;
+	}
+	/**
+	 * Is the texture's mipmap pyramid stored in the tiled memory layout?
+	 */
+	public boolean isTiled()
+	{
+		return isTiled;
+	}
+	/**
+	 * Return the offset of a texel in a mipmap level stored in the tiled memory layout.
+	 * @param x the texel's horizontal coordinate.
+	 * @param y the texel's vertical coordinate.
+	 * @param columns the number of block columns in the mipmap level.
+	 */
+	private static int getTiledOffset(final int x, final int y, final int columns)
+	{
+		final int block = (x >> BLOCK_SHIFT) + ((y >> BLOCK_SHIFT) * columns);
+		final int mask = BLOCK_SIZE - 1;
+
+		return (block << (2 * BLOCK_SHIFT)) + (x & mask) + ((y & mask) << BLOCK_SHIFT);
+	}
+	/**
+	 * Return the offset of a texel in a mipmap level, in the level's memory layout.
+	 * @param level the mipmap level.
+	 * @param x the texel's horizontal coordinate.
+	 * @param y the texel's vertical coordinate.
+	 */
+	private int getOffset(final int level, final int x, final int y)
+	{
+		return isTiled ? getTiledOffset(x, y, mipmapBlockColumns[level]) : x + (y * mipmapWidths[level]);
+	}
+	/**
+	 * Return the texel at a given position in a mipmap level, whatever the level's storage.
+	 * @param level the mipmap level.
+	 * @param x the texel's horizontal coordinate.
+	 * @param y the texel's vertical coordinate.
+	 */
+	private int getMipmapTexel(final int level, final int x, final int y)
+	{
+		if (compressedMipmaps != null)
+			return BlockCompression.decode(compressedMipmaps[level], mipmapBlockColumns[level], x, y);
+
+		return mipmaps[level][getOffset(level, x, y)];
+	}
+	/**
+	 * Return the number of levels in the texture's mipmap pyramid.
+	 */
+	public int getMipmapLevels()
+	{
+		return mipmapWidths.length;
+	}
 	/**
 	 * TODO Explain parameters.
 	 * Return the texture element at the given UV coordinate.
@@ -64,7 +375,7 @@ public class Texture extends Asset
 		u = u < width  ? u : width  - 1;
 		v = v < height ? v : height - 1;
 
-		return texels[(v * width) + u];
+		return getMipmapTexel(0, u, v);
 	}
 	/**
 	 * TODO Explain parameters.
@@ -77,6 +388,112 @@ public class Texture extends Asset
 
 		return getTexel(ut, vt);
 	}
+	/**
+	 * Sample the texture at a fragment's texture coordinates with the current texture filter.
+	 * @param fragment the fragment whose texture coordinates and their derivatives are used.
+	 * @see RuntimeOptions#TextureFilter
+	 */
+	public int sample(final Fragment fragment)
+	{
+		return sample
+		(
+			RuntimeOptions.TextureFilter,
+			fragment.u,
+			fragment.v,
+			fragment.dudx,
+			fragment.dvdx,
+			fragment.dudy,
+			fragment.dvdy
+		);
+	}
+	/**
+	 * Sample the texture at the given normalised UV coordinate. The derivatives of the
+	 * coordinate with respect to the window coordinates determine the texture's footprint
+	 * on the pixel, and therefore the mipmap level of detail.
+	 * @param filter the texture filter to use.
+	 * @param u the horizontal texture coordinate.
+	 * @param v the vertical texture coordinate.
+	 * @param dudx the derivative of u along the window's X axis.
+	 * @param dvdx the derivative of v along the window's X axis.
+	 * @param dudy the derivative of u along the window's Y axis.
+	 * @param dvdy the derivative of v along the window's Y axis.
+	 */
+	public int sample
+	(
+		final Texture.Filter filter,
+		final double u,
+		final double v,
+		final double dudx,
+		final double dvdx,
+		final double dudy,
+		final double dvdy
+	)
+	{
+		if (filter == Texture.Filter.Nearest)
+			return getTexel(u, v);
+
+		// The level of detail is the base 2 logarithm of the larger of the footprint's
+		// two axes, measured in texels.
+		final double dx2 = (dudx * dudx * width * width) + (dvdx * dvdx * height * height);
+		final double dy2 = (dudy * dudy * width * width) + (dvdy * dvdy * height * height);
+		final double rho2 = Math.max(dx2, dy2);
+		final double lod = rho2 > 1.0 ? 0.5 * Math.log(rho2) * 1.4426950408889634 : 0.0; // 1/ln(2).
+		final int maxLevel = getMipmapLevels() - 1;
+
+		if (filter == Texture.Filter.Bilinear || lod >= maxLevel)
+			return sampleBilinear(Math.min(maxLevel, (int)Math.round(lod)), u, v);
+
+		// Blend the bilinear samples of the two nearest levels.
+		final int level = (int)lod;
+		final double t = lod - level;
+		final int a = sampleBilinear(level, u, v);
+		final int b = sampleBilinear(level + 1, u, v);
+
+		int texel = 0;
+		for (int shift = 0; shift < 32; shift += 8)
+		{
+			final double ca = (a >>> shift) & 0xff;
+			final double cb = (b >>> shift) & 0xff;
+			texel |= ((int)(ca + ((cb - ca) * t) + 0.5)) << shift;
+		}
+		return texel;
+	}
+	/**
+	 * Return the weighted average of the four texels closest to the given normalised UV
+	 * coordinate in a mipmap level. Coordinates are clamped to the level's edges.
+	 * @param level the mipmap level to sample.
+	 * @param u the horizontal texture coordinate.
+	 * @param v the vertical texture coordinate.
+	 */
+	protected int sampleBilinear(final int level, final double u, final double v)
+	{
+		final int w = mipmapWidths[level];
+		final int h = mipmapHeights[level];
+
+		// Texel centers lie at half-integer coordinates.
+		final double x = ((u < 0.0 ? 0.0 : (u > 1.0 ? 1.0 : u)) * w) - 0.5;
+		final double y = ((v < 0.0 ? 0.0 : (v > 1.0 ? 1.0 : v)) * h) - 0.5;
+		final int x0 = x < 0.0 ? 0 : (int)x;
+		final int y0 = y < 0.0 ? 0 : (int)y;
+		final int x1 = Math.min(w - 1, x0 + 1);
+		final int y1 = Math.min(h - 1, y0 + 1);
+		final double fx = x < 0.0 ? 0.0 : Math.min(1.0, x - x0);
+		final double fy = y < 0.0 ? 0.0 : Math.min(1.0, y - y0);
+
+		final int t00 = getMipmapTexel(level, x0, y0), t10 = getMipmapTexel(level, x1, y0);
+		final int t01 = getMipmapTexel(level, x0, y1), t11 = getMipmapTexel(level, x1, y1);
+
+		int texel = 0;
+		for (int shift = 0; shift < 32; shift += 8)
+		{
+			final double c00 = (t00 >>> shift) & 0xff, c10 = (t10 >>> shift) & 0xff;
+			final double c01 = (t01 >>> shift) & 0xff, c11 = (t11 >>> shift) & 0xff;
+			final double top = c00 + ((c10 - c00) * fx);
+			final double bottom = c01 + ((c11 - c01) * fx);
+			texel |= ((int)(top + ((bottom - top) * fy) + 0.5)) << shift;
+		}
+		return texel;
+	}
 	/**
 	 * Convert the texture data to a string.
 	 */
@@ -0,0 +1,326 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2013 Jeremy Othieno.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package clockwork.graphics;
+
+import java.awt.geom.Point2D;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.IdentityHashMap;
+import java.util.List;
+
+import clockwork.system.RuntimeOptions;
+
+/**
+ * A texture atlas builder. The diffuse maps of many small materials are packed into shared
+ * atlas pages and the texture coordinates of the models that use them are rewritten to
+ * address the pages. Materials that only differed by their diffuse map then become a single
+ * material, and the texture working set shrinks to a few pages.
+ * <p>
+ * Each packed texture is surrounded by a gutter that repeats its edge texels, so filtering
+ * a texture's edges in the atlas gives the same result as clamping the original texture.
+ * The gutter only covers the first few mipmap levels; coarser levels blend neighbouring
+ * textures.
+ */
+public final class TextureAtlas
+{
+	/**
+	 * The width of an atlas page, and the maximum height of an atlas page, in texels.
+	 */
+	public static final int PAGE_SIZE = 2048;
+	/**
+	 * The largest width or height of a texture that is packed into an atlas page.
+	 */
+	public static final int MAX_TEXTURE_SIZE = 512;
+	/**
+	 * The width of the gutter around each packed texture, in texels.
+	 */
+	public static final int GUTTER = 4;
+	/**
+	 * Pack the diffuse maps of a collection of models into atlas pages. Only textures whose
+	 * texels are held in memory and whose dimensions do not exceed MAX_TEXTURE_SIZE are
+	 * packed. Materials with any other texture map are left unchanged, since their other
+	 * maps are addressed by the same texture coordinates, and so are materials used by a
+	 * model whose texture coordinates leave the texture, since the sampler clamps them per
+	 * fragment while the rewritten coordinates would be interpolated across the atlas. The
+	 * models' texture coordinates and materials are modified.
+	 * @param models the models to pack.
+	 * @return the atlas pages.
+	 */
+	public static List<Texture> Pack(final Collection<Model3D> models)
+	{
+		// Find the materials whose texture coordinates leave their texture.
+		final IdentityHashMap<Material, Boolean> unpackable = new IdentityHashMap<Material, Boolean>();
+		for (final Model3D model : models)
+		{
+			final Material material = model.getMaterial();
+			if (material != null && !isInTexture(model))
+				unpackable.put(material, Boolean.TRUE);
+		}
+
+		// Find the textures to pack. A texture shared by several materials is packed once.
+		final IdentityHashMap<Texture, Slot> slots = new IdentityHashMap<Texture, Slot>();
+		final IdentityHashMap<Material, Slot> materialSlots = new IdentityHashMap<Material, Slot>();
+		for (final Model3D model : models)
+		{
+			final Material material = model.getMaterial();
+			final Texture texture = material != null ? material.diffuse : null;
+			if
+			(
+				texture != null &&
+				isPackable(texture) &&
+				hasOnlyDiffuseMap(material) &&
+				!unpackable.containsKey(material)
+			)
+			{
+				Slot slot = slots.get(texture);
+				if (slot == null)
+				{
+					slot = new Slot(texture);
+					slots.put(texture, slot);
+				}
+				materialSlots.put(material, slot);
+			}
+		}
+
+		// Shelf packing: place the tallest textures first, left to right, in rows whose
+		// height is the height of their first texture.
+		final List<Slot> sorted = new ArrayList<Slot>(slots.values());
+		Collections.sort(sorted, new Comparator<Slot>()
+		{
+			@Override
+			public int compare(final Slot a, final Slot b)
+			{
+				return b.texture.height - a.texture.height;
+			}
+		});
+
+		final List<Integer> pageHeights = new ArrayList<Integer>();
+		int page = -1, x = PAGE_SIZE, y = 0, shelfHeight = 0;
+		for (final Slot slot : sorted)
+		{
+			final int w = slot.texture.width + (2 * GUTTER);
+			final int h = slot.texture.height + (2 * GUTTER);
+			if (x + w > PAGE_SIZE)
+			{
+				// Start a new shelf, or a new page if the shelf does not fit.
+				x = 0;
+				y += shelfHeight;
+				shelfHeight = h;
+				if (page < 0 || y + h > PAGE_SIZE)
+				{
+					++page;
+					y = 0;
+					pageHeights.add(0);
+				}
+			}
+			slot.page = page;
+			slot.x = x + GUTTER;
+			slot.y = y + GUTTER;
+			pageHeights.set(page, Math.max(pageHeights.get(page), y + h));
+			x += w;
+		}
+
+		// Copy each texture into its page.
+		final List<Texture> pages = new ArrayList<Texture>();
+		final List<int[]> pageTexels = new ArrayList<int[]>();
+		for (final int height : pageHeights)
+			pageTexels.add(new int[PAGE_SIZE * height]);
+		for (final Slot slot : sorted)
+			slot.copy(pageTexels.get(slot.page));
+		for (int p = 0; p < pageTexels.size(); ++p)
+		{
+			final Texture texture = new Texture(pageTexels.get(p), PAGE_SIZE, pageHeights.get(p));
+			texture.generateMipmaps();
+			if (RuntimeOptions.EnableTextureCompression)
+				texture.compress();
+			if (RuntimeOptions.EnableTiledTextures)
+				texture.tile();
+			pages.add(texture);
+		}
+
+		// Rewrite the texture coordinates of the models whose diffuse map was packed. UV
+		// coordinates may be shared by faces and meshes, so each is only rewritten once.
+		final IdentityHashMap<Point2D.Double, Boolean> rewritten = new IdentityHashMap<Point2D.Double, Boolean>();
+		final List<Material> shared = new ArrayList<Material>();
+		for (final Model3D model : models)
+		{
+			final Material material = model.getMaterial();
+			final Slot slot = material != null ? materialSlots.get(material) : null;
+			if (slot == null)
+				continue;
+
+			final Texture atlas = pages.get(slot.page);
+			for (final PolygonFace face : model.getMesh().getFaces())
+			{
+				final Point2D.Double uvcoords[] = face.getTextureCoordinates();
+				if (uvcoords == null)
+					continue;
+
+				for (final Point2D.Double uv : uvcoords)
+				{
+					if (uv != null && rewritten.put(uv, Boolean.TRUE) == null)
+						slot.rewrite(uv, atlas);
+				}
+			}
+
+			// Point the material to the atlas page, then share it with every equivalent
+			// material. The model's mesh data was modified in place, so its transformed
+			// vertices must not be reused.
+			material.diffuse = atlas;
+			model.setModified();
+
+			Material equivalent = null;
+			for (final Material candidate : shared)
+			{
+				if (isEquivalent(candidate, material))
+				{
+					equivalent = candidate;
+					break;
+				}
+			}
+			if (equivalent == null)
+				shared.add(material);
+			else
+				model.setMaterial(equivalent);
+		}
+		return pages;
+	}
+	/**
+	 * Return true if a texture can be packed into an atlas page.
+	 * @param texture the texture to check.
+	 */
+	private static boolean isPackable(final Texture texture)
+	{
+		return
+		texture.width <= MAX_TEXTURE_SIZE &&
+		texture.height <= MAX_TEXTURE_SIZE &&
+		texture.isInMemory();
+	}
+	/**
+	 * Return true if all of a model's texture coordinates lie within its texture, i.e. in
+	 * the [0, 1] range.
+	 * @param model the model to check.
+	 */
+	private static boolean isInTexture(final Model3D model)
+	{
+		for (final PolygonFace face : model.getMesh().getFaces())
+		{
+			final Point2D.Double uvcoords[] = face.getTextureCoordinates();
+			if (uvcoords == null)
+				continue;
+
+			for (final Point2D.Double uv : uvcoords)
+			{
+				if (uv != null && (uv.x < 0.0 || uv.x > 1.0 || uv.y < 0.0 || uv.y > 1.0))
+					return false;
+			}
+		}
+		return true;
+	}
+	/**
+	 * Return true if a material's only texture map is its diffuse map.
+	 * @param material the material to check.
+	 */
+	private static boolean hasOnlyDiffuseMap(final Material material)
+	{
+		return
+		material.ambient == null &&
+		material.bump == null &&
+		material.normal == null &&
+		material.specular == null &&
+		material.displacement == null;
+	}
+	/**
+	 * Return true if two materials have identical attributes.
+	 * @param a the first material.
+	 * @param b the second material.
+	 */
+	private static boolean isEquivalent(final Material a, final Material b)
+	{
+		return
+		a.shininess == b.shininess &&
+		a.transparency == b.transparency &&
+		a.Ka.r == b.Ka.r && a.Ka.g == b.Ka.g && a.Ka.b == b.Ka.b &&
+		a.Kd.r == b.Kd.r && a.Kd.g == b.Kd.g && a.Kd.b == b.Kd.b &&
+		a.Ks.r == b.Ks.r && a.Ks.g == b.Ks.g && a.Ks.b == b.Ks.b &&
+		a.ambient == b.ambient &&
+		a.diffuse == b.diffuse &&
+		a.bump == b.bump &&
+		a.normal == b.normal &&
+		a.specular == b.specular &&
+		a.displacement == b.displacement;
+	}
+	/**
+	 * The location of a packed texture in the atlas.
+	 */
+	private static final class Slot
+	{
+		/**
+		 * The packed texture.
+		 */
+		public final Texture texture;
+		/**
+		 * The index of the atlas page, and the position of the texture's first texel in it.
+		 */
+		public int page;
+		public int x;
+		public int y;
+		/**
+		 * Instantiate a slot for a given texture.
+		 */
+		public Slot(final Texture texture)
+		{
+			this.texture = texture;
+		}
+		/**
+		 * Copy the texture and its gutter into an atlas page.
+		 * @param atlas the atlas page's texels.
+		 */
+		public void copy(final int atlas[])
+		{
+			final int texels[] = texture.getTexels();
+			final int w = texture.width;
+			final int h = texture.height;
+			for (int j = -GUTTER; j < h + GUTTER; ++j)
+			{
+				final int row = Math.min(h - 1, Math.max(0, j)) * w;
+				for (int i = -GUTTER; i < w + GUTTER; ++i)
+					atlas[(x + i) + ((y + j) * PAGE_SIZE)] = texels[row + Math.min(w - 1, Math.max(0, i))];
+			}
+		}
+		/**
+		 * Rewrite a texture coordinate, which lies within the texture, so that it addresses
+		 * the same texel in the atlas page.
+		 * @param uv the texture coordinate to rewrite.
+		 * @param atlas the atlas page.
+		 */
+		public void rewrite(final Point2D.Double uv, final Texture atlas)
+		{
+			uv.x = (x + (uv.x * texture.width)) / atlas.width;
+			uv.y = (y + (uv.y * texture.height)) / atlas.height;
+		}
+	}
+}
@@ -0,0 +1,251 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2013 Jeremy Othieno.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package clockwork.graphics;
+
+import java.util.Arrays;
+
+import clockwork.graphics.filters.PostProcessingChain;
+import clockwork.graphics.renderer.Renderer;
+import clockwork.system.RuntimeOptions;
+
+/**
+ * Variable-rate shading. The framebuffer is divided into square tiles, and each tile is
+ * shaded at a rate of one fragment per pixel, per 2x2 block or per 4x4 block. At a coarse
+ * rate, the fragment program is only invoked for the first fragment a primitive writes to
+ * a block, and its color is broadcast to the rest of that primitive's fragments in the block.
+ * Depth tests are still performed for each pixel, and a block covered by two primitives is
+ * shaded once for each of them, so the edges between primitives stay sharp.
+ * <p>
+ * The rates are chosen from the previous frame. A tile is shaded at the full rate if its
+ * depth values are not planar, which happens at silhouettes and creases. Otherwise its rate
+ * is reduced as its colors become smoother, which is typical of flat or distant surfaces.
+ * @see RuntimeOptions#VariableRateShadingThreshold
+ */
+public final class VariableRateShading
+{
+	/**
+	 * The width and height of a tile, in pixels. This is a multiple of the largest block size.
+	 */
+	public static final int TILE_SIZE = 8;
+	private static final int TILE_SHIFT = 3;
+	/**
+	 * The base 2 logarithm of the largest block size.
+	 */
+	private static final int MAX_RATE_SHIFT = 2;
+	/**
+	 * The framebuffer's width and height, and its number of tile columns and rows.
+	 */
+	private int width = 0;
+	private int height = 0;
+	private int columns = 0;
+	private int rows = 0;
+	/**
+	 * The base 2 logarithm of each tile's block size, in row-major order.
+	 */
+	private byte rates[] = new byte[0];
+	/**
+	 * The color last shaded in each 2x2 block, and the primitive it was shaded for. A 4x4
+	 * block's color is stored in its top-left 2x2 block. Since tiles are aligned to the
+	 * largest block size, each 2x2 block belongs to a single tile and is used at a single rate.
+	 */
+	private int blockColumns = 0;
+	private int blockColors[] = new int[0];
+	private int blockPrimitives[] = new int[0];
+	/**
+	 * The primitive being rasterised.
+	 */
+	private int primitive = 0;
+	/**
+	 * The framebuffer whose rates are being chosen, read by the bands.
+	 */
+	private Framebuffer framebuffer = null;
+	/**
+	 * Resize the rate map and the block colors for a framebuffer with a given resolution.
+	 * Every tile is shaded at the full rate until the next rates are chosen.
+	 * @param width the framebuffer's width.
+	 * @param height the framebuffer's height.
+	 */
+	private void resize(final int width, final int height)
+	{
+		this.width = width;
+		this.height = height;
+		columns = (width + TILE_SIZE - 1) >> TILE_SHIFT;
+		rows = (height + TILE_SIZE - 1) >> TILE_SHIFT;
+		rates = new byte[columns * rows];
+
+		blockColumns = (width + 1) >> 1;
+		blockColors = new int[blockColumns * ((height + 1) >> 1)];
+		blockPrimitives = new int[blockColors.length];
+		Arrays.fill(blockPrimitives, -1);
+	}
+	/**
+	 * Shade every tile at the full rate.
+	 */
+	public void reset()
+	{
+		Arrays.fill(rates, (byte)0);
+	}
+	/**
+	 * Start the rasterisation of a new primitive. Fragments of different primitives never
+	 * share a shaded color.
+	 */
+	public void beginPrimitive()
+	{
+		++primitive;
+	}
+	/**
+	 * Return the color of a fragment located at given window coordinates, which is either
+	 * the output of the renderer's fragment program for that fragment, or the color that
+	 * was shaded for the same primitive in the fragment's block.
+	 * @param renderer a reference to the renderer containing the fragment program implementation.
+	 * @param fragment the fragment to shade.
+	 * @param x the fragment's horizontal window coordinate.
+	 * @param y the fragment's vertical window coordinate.
+	 */
+	public int shade(final Renderer renderer, final Fragment fragment, final int x, final int y)
+	{
+		if (x >= width || y >= height)
+			return renderer.fragmentProgram(fragment);
+
+		final int shift = rates[(x >> TILE_SHIFT) + ((y >> TILE_SHIFT) * columns)];
+		if (shift == 0)
+			return renderer.fragmentProgram(fragment);
+
+		// The index of the top-left 2x2 block of the fragment's block.
+		final int block = (((x >> shift) << shift) >> 1) + ((((y >> shift) << shift) >> 1) * blockColumns);
+		if (blockPrimitives[block] != primitive)
+		{
+			blockColors[block] = renderer.fragmentProgram(fragment);
+			blockPrimitives[block] = primitive;
+		}
+		return blockColors[block];
+	}
+	/**
+	 * Choose the rate of each tile for the next frame from a framebuffer's rendered frame,
+	 * before it is post-processed. Tiles are processed in parallel bands.
+	 * @param framebuffer the framebuffer that holds the rendered frame.
+	 */
+	public void update(final Framebuffer framebuffer)
+	{
+		if (width != framebuffer.getWidth() || height != framebuffer.getHeight())
+			resize(framebuffer.getWidth(), framebuffer.getHeight());
+
+		this.framebuffer = framebuffer;
+		PostProcessingChain.ForEachBand(rows, band);
+	}
+	/**
+	 * Choose the rates of a band of tile rows.
+	 */
+	private final PostProcessingChain.Band band = new PostProcessingChain.Band()
+	{
+		@Override
+		public void process(final int r0, final int r1)
+		{
+			for (int r = r0; r < r1; ++r)
+			{
+				for (int c = 0; c < columns; ++c)
+					rates[c + (r * columns)] = (byte)getRate(c, r);
+			}
+		}
+	};
+	/**
+	 * Return the base 2 logarithm of the block size a tile should be shaded at.
+	 * @param column the tile's column.
+	 * @param row the tile's row.
+	 */
+	private int getRate(final int column, final int row)
+	{
+		final int pixels[] = framebuffer.getColorBuffer();
+		final double background = framebuffer.getClearDepthValue();
+		final int x0 = column << TILE_SHIFT, x1 = Math.min(width, x0 + TILE_SIZE);
+		final int y0 = row << TILE_SHIFT, y1 = Math.min(height, y0 + TILE_SIZE);
+
+		long gradient = 0;
+		int count = 0;
+		for (int y = y0; y < y1; ++y)
+		{
+			for (int x = x0; x < x1; ++x)
+			{
+				final int offset = x + (y * width);
+				final double z = framebuffer.getDepth(offset);
+				final boolean isBackground = z >= background;
+
+				// A window's depth values are an affine function of its window coordinates on
+				// any one plane, so their second differences only become large where planes meet.
+				// A tile containing both the background and a surface holds a silhouette.
+				if (x + 1 < x1)
+				{
+					if (isBackground != (framebuffer.getDepth(offset + 1) >= background))
+						return 0;
+					if (!isBackground && x + 2 < x1 && isDiscontinuous(z, framebuffer.getDepth(offset + 1), framebuffer.getDepth(offset + 2)))
+						return 0;
+
+					gradient += Math.abs(luma(pixels[offset + 1]) - luma(pixels[offset]));
+					++count;
+				}
+				if (y + 1 < y1)
+				{
+					if (isBackground != (framebuffer.getDepth(offset + width) >= background))
+						return 0;
+					if (!isBackground && y + 2 < y1 && isDiscontinuous(z, framebuffer.getDepth(offset + width), framebuffer.getDepth(offset + 2 * width)))
+						return 0;
+
+					gradient += Math.abs(luma(pixels[offset + width]) - luma(pixels[offset]));
+					++count;
+				}
+			}
+		}
+
+		// The mean difference between neighbouring pixels' luma, which a coarser rate
+		// preserves on smooth gradients.
+		final double threshold = RuntimeOptions.VariableRateShadingThreshold;
+		final double mean = count > 0 ? (double)gradient / count : 0.0;
+		if (mean < threshold * 0.25)
+			return MAX_RATE_SHIFT;
+		else if (mean < threshold)
+			return 1;
+		return 0;
+	}
+	/**
+	 * Return true if three consecutive depth values do not lie on a line, i.e. if the
+	 * depth's slope changes by more than half between them.
+	 * @param z0 the first depth value.
+	 * @param z1 the second depth value.
+	 * @param z2 the third depth value.
+	 */
+	private static boolean isDiscontinuous(final double z0, final double z1, final double z2)
+	{
+		final double d0 = z1 - z0;
+		final double d1 = z2 - z1;
+		return Math.abs(d1 - d0) > 0.5 * (Math.abs(d0) + Math.abs(d1)) + 1e-7;
+	}
+	/**
+	 * Return the luma of an ARGB color, between 0 and 255.
+	 * @param color the color.
+	 */
+	private static int luma(final int color)
+	{
+		return ((((color >> 16) & 0xff) * 77) + (((color >> 8) & 0xff) * 150) + ((color & 0xff) * 29)) >> 8;
+	}
+}
@@ -0,0 +1,485 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2013 Jeremy Othieno.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package clockwork.graphics;
+
+import java.awt.event.ActionEvent;
+import java.awt.event.ActionListener;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+
+import javax.swing.Timer;
+
+import clockwork.scene.Scene;
+import clockwork.system.RuntimeOptions;
+import clockwork.system.Services;
+
+/**
+ * A virtual texture is a texture whose mipmap pyramid is too large to be held in memory.
+ * The pyramid is stored in a page file, where each level is split into square pages, and
+ * only the pages the sampler touches are streamed in. Sampling a page that is not resident
+ * records it in the texture's feedback, which schedules the page to be loaded on a
+ * background thread, and the sample falls back to the finest coarser level that is
+ * resident. Once pages have been loaded, the scene is rendered again so that they are
+ * used. The coarsest level fits in a single page and is always resident. Loaded pages
+ * are kept in a least recently used cache.
+ * <p>
+ * A page file starts with a header made of five big-endian integers: the {@link #MAGIC}
+ * number, the texture's width and height, the page size and the number of levels. The
+ * levels follow from the finest to the coarsest, each as a row-major sequence of pages.
+ * A page holds the (PAGE_SIZE + 1) x (PAGE_SIZE + 1) texels, in row-major order, starting
+ * at the page's origin: the extra column and row duplicate the neighbouring pages' texels
+ * so that a page can be filtered without its neighbours. Texels beyond the level's edges
+ * repeat the edge texels.
+ * @see clockwork.asset.io.writer.VirtualTextureWriter
+ */
+public class VirtualTexture extends Texture
+{
+	/**
+	 * The page file's magic number, "VTEX".
+	 */
+	public static final int MAGIC = 0x56544558;
+	/**
+	 * The width and height of a page, in texels, excluding its border.
+	 */
+	public static final int PAGE_SIZE = 128;
+	/**
+	 * The width and height of a stored page, in texels, including its border.
+	 */
+	public static final int PAGE_STRIDE = PAGE_SIZE + 1;
+	/**
+	 * The size of the page file's header, in bytes.
+	 */
+	public static final int HEADER_SIZE = 5 * 4;
+	/**
+	 * The thread that loads pages from every virtual texture's page file.
+	 */
+	private static final ExecutorService loader = Executors.newSingleThreadExecutor(new ThreadFactory()
+	{
+		@Override
+		public Thread newThread(final Runnable runnable)
+		{
+			final Thread thread = new Thread(runnable, "Virtual texture loader");
+			thread.setDaemon(true);
+			return thread;
+		}
+	});
+	/**
+	 * The delay between a page being loaded and the scene being rendered again, in
+	 * milliseconds. Pages that are loaded during the delay are used by the same frame.
+	 */
+	private static final int UPDATE_DELAY = 50;
+	/**
+	 * The timer that renders the scene again once pages have been loaded. The whole frame
+	 * is damaged since the scene itself has not changed. It runs on the event dispatch
+	 * thread, like the controls that render the scene.
+	 */
+	private static final Timer updater = new Timer(UPDATE_DELAY, new ActionListener()
+	{
+		@Override
+		public void actionPerformed(final ActionEvent e)
+		{
+			Services.Graphics.getFramebuffer().getDamageTracking().invalidate();
+			Scene.RunUpdateTask();
+		}
+	});
+	static
+	{
+		updater.setRepeats(false);
+	}
+	/**
+	 * The page file.
+	 */
+	private final RandomAccessFile file;
+	/**
+	 * The dimensions of each level, in texels and in pages, as well as the offset of each
+	 * level's first page in the page file.
+	 */
+	private final int levelWidths[];
+	private final int levelHeights[];
+	private final int levelColumns[];
+	private final long levelOffsets[];
+	/**
+	 * The coarsest level's only page.
+	 */
+	private final int coarsestPage[];
+	/**
+	 * The resident pages, in least recently used order.
+	 */
+	private final LinkedHashMap<Long, int[]> cache;
+	/**
+	 * The feedback, i.e. the pages that were sampled while not resident and are being loaded.
+	 */
+	private final HashSet<Long> feedback = new HashSet<Long>();
+	/**
+	 * The pages that could not be loaded. They are not requested again.
+	 */
+	private final HashSet<Long> failures = new HashSet<Long>();
+	/**
+	 * Instantiate a virtual texture from a page file.
+	 * @param pageFile the page file.
+	 * @throws IOException if the page file could not be read or is not a valid page file.
+	 */
+	public VirtualTexture(final File pageFile) throws IOException
+	{
+		this(new Header(pageFile));
+	}
+	/**
+	 * Instantiate a virtual texture from a page file's header.
+	 * @param header the page file's header.
+	 * @throws IOException if the coarsest level could not be read.
+	 */
+	private VirtualTexture(final Header header) throws IOException
+	{
+		super(header.width, header.height);
+		this.file = header.file;
+
+		final int levels = header.levels;
+		levelWidths = new int[levels];
+		levelHeights = new int[levels];
+		levelColumns = new int[levels];
+		levelOffsets = new long[levels];
+
+		long offset = HEADER_SIZE;
+		for (int level = 0; level < levels; ++level)
+		{
+			levelWidths[level] = Math.max(1, width >> level);
+			levelHeights[level] = Math.max(1, height >> level);
+			levelColumns[level] = (levelWidths[level] + PAGE_SIZE - 1) / PAGE_SIZE;
+			levelOffsets[level] = offset;
+
+			final int rows = (levelHeights[level] + PAGE_SIZE - 1) / PAGE_SIZE;
+			offset += 4L * PAGE_STRIDE * PAGE_STRIDE * levelColumns[level] * rows;
+		}
+		if (file.length() < offset)
+		{
+			file.close();
+			throw new IOException("Truncated page file.");
+		}
+		coarsestPage = readPage(levels - 1, 0, 0);
+
+		final int capacity = Math.max(1, RuntimeOptions.VirtualTextureCacheSize);
+		cache = new LinkedHashMap<Long, int[]>(capacity, 0.75f, true)
+		{
+			/**
+			 * The serial version UID.
+			 */
+			private static final long serialVersionUID = 8152047358127610416L;
+			/**
+			 * Evict the least recently used page when the cache is full.
+			 */
+			@Override
+			protected boolean removeEldestEntry(final Map.Entry<Long, int[]> eldest)
+			{
+				return size() > capacity;
+			}
+		};
+	}
+	/**
+	 * Return the number of levels in the page file of a texture with a given resolution. The
+	 * coarsest level is the first one that fits in a single page.
+	 * @param width the texture's width.
+	 * @param height the texture's height.
+	 */
+	public static int GetLevelCount(int width, int height)
+	{
+		int levels = 1;
+		for (; width > PAGE_SIZE || height > PAGE_SIZE; ++levels)
+		{
+			width = Math.max(1, width >> 1);
+			height = Math.max(1, height >> 1);
+		}
+		return levels;
+	}
+	/**
+	 * Read a page from the page file.
+	 * @param level the page's level.
+	 * @param column the page's column.
+	 * @param row the page's row.
+	 * @throws IOException if the page could not be read.
+	 */
+	private int[] readPage(final int level, final int column, final int row) throws IOException
+	{
+		final byte bytes[] = new byte[4 * PAGE_STRIDE * PAGE_STRIDE];
+		final long index = column + ((long)row * levelColumns[level]);
+		synchronized (file)
+		{
+			file.seek(levelOffsets[level] + (index * bytes.length));
+			file.readFully(bytes);
+		}
+
+		final int page[] = new int[PAGE_STRIDE * PAGE_STRIDE];
+		ByteBuffer.wrap(bytes).asIntBuffer().get(page);
+		return page;
+	}
+	/**
+	 * Return a resident page, or null if the page is not resident. A page that is requested
+	 * but not resident is recorded in the feedback and scheduled to be loaded.
+	 * @param level the page's level.
+	 * @param column the page's column.
+	 * @param row the page's row.
+	 * @param isRequested true to load the page if it is not resident, false otherwise.
+	 */
+	private int[] getPage(final int level, final int column, final int row, final boolean isRequested)
+	{
+		if (level == levelWidths.length - 1)
+			return coarsestPage;
+
+		final Long key = Long.valueOf(((long)level << 48) | ((long)row << 24) | column);
+		synchronized (cache)
+		{
+			final int page[] = cache.get(key);
+			if (page == null && isRequested && !failures.contains(key) && feedback.add(key))
+				loader.execute(new PageLoader(key, level, column, row));
+
+			return page;
+		}
+	}
+	/**
+	 * Return the number of levels in the texture's mipmap pyramid.
+	 */
+	@Override
+	public int getMipmapLevels()
+	{
+		return levelWidths.length;
+	}
+	/**
+	 * Return the number of pages currently resident in memory, excluding the coarsest level.
+	 */
+	public int getResidentPageCount()
+	{
+		synchronized (cache)
+		{
+			return cache.size();
+		}
+	}
+	/**
+	 * Virtual textures are too large to be held in memory, so their texels are not available.
+	 */
+	@Override
+	public int[] getTexels()
+	{
+		return null;
+	}
+	/**
+	 * A virtual texture's page file already contains its mipmap pyramid.
+	 */
+	@Override
+	public void generateMipmaps()
+	{}
+	/**
+	 * A virtual texture's pages are stored in the page file's layout.
+	 */
+	@Override
+	public void tile()
+	{}
+	/**
+	 * A virtual texture's pages are not compressed.
+	 */
+	@Override
+	public boolean compress()
+	{
+		return false;
+	}
+	/**
+	 * Return the texel closest to the given normalised UV coordinate, in the finest resident
+	 * level.
+	 */
+	@Override
+	public int getTexel(final double u, final double v)
+	{
+		return samplePage(0, u, v, false);
+	}
+	/**
+	 * Return the weighted average of the four texels closest to the given normalised UV
+	 * coordinate in a mipmap level, or in the finest coarser level that is resident.
+	 */
+	@Override
+	protected int sampleBilinear(final int level, final double u, final double v)
+	{
+		return samplePage(level, u, v, true);
+	}
+	/**
+	 * Sample the page containing the given normalised UV coordinate in a mipmap level. If the
+	 * page is not resident, it is requested, and the finest coarser level that is resident is
+	 * sampled instead. The coarser levels' pages are not requested, since loading them could
+	 * evict the pages that the frame is still sampling.
+	 * @param level the finest level to sample.
+	 * @param u the horizontal texture coordinate.
+	 * @param v the vertical texture coordinate.
+	 * @param bilinear true to use bilinear filtering, false to use the nearest texel.
+	 */
+	private int samplePage(int level, double u, double v, final boolean bilinear)
+	{
+		u = u < 0.0 ? 0.0 : (u > 1.0 ? 1.0 : u);
+		v = v < 0.0 ? 0.0 : (v > 1.0 ? 1.0 : v);
+
+		final int requested = level;
+		for (;; ++level)
+		{
+			final int w = levelWidths[level];
+			final int h = levelHeights[level];
+
+			// Texel centers lie at half-integer coordinates.
+			final double x = (u * w) - (bilinear ? 0.5 : 0.0);
+			final double y = (v * h) - (bilinear ? 0.5 : 0.0);
+			final int x0 = Math.min(w - 1, x < 0.0 ? 0 : (int)x);
+			final int y0 = Math.min(h - 1, y < 0.0 ? 0 : (int)y);
+
+			final int page[] = getPage(level, x0 / PAGE_SIZE, y0 / PAGE_SIZE, level == requested);
+			if (page == null)
+				continue;
+
+			// The page's border holds the texels to the right of and below its last column and row.
+			final int px = x0 % PAGE_SIZE;
+			final int py = y0 % PAGE_SIZE;
+			final int offset = px + (py * PAGE_STRIDE);
+			if (!bilinear)
+				return page[offset];
+
+			final double fx = x < 0.0 ? 0.0 : Math.min(1.0, x - x0);
+			final double fy = y < 0.0 ? 0.0 : Math.min(1.0, y - y0);
+			final int t00 = page[offset], t10 = page[offset + 1];
+			final int t01 = page[offset + PAGE_STRIDE], t11 = page[offset + PAGE_STRIDE + 1];
+
+			int texel = 0;
+			for (int shift = 0; shift < 32; shift += 8)
+			{
+				final double c00 = (t00 >>> shift) & 0xff, c10 = (t10 >>> shift) & 0xff;
+				final double c01 = (t01 >>> shift) & 0xff, c11 = (t11 >>> shift) & 0xff;
+				final double top = c00 + ((c10 - c00) * fx);
+				final double bottom = c01 + ((c11 - c01) * fx);
+				texel |= ((int)(top + ((bottom - top) * fy) + 0.5)) << shift;
+			}
+			return texel;
+		}
+	}
+	/**
+	 * Convert the texture data to a string.
+	 */
+	@Override
+	public String toString()
+	{
+		return "virtual " + super.toString();
+	}
+	/**
+	 * A page file's header.
+	 */
+	private static final class Header
+	{
+		/**
+		 * The open page file.
+		 */
+		public final RandomAccessFile file;
+		/**
+		 * The texture's width and height, and the number of levels.
+		 */
+		public final int width;
+		public final int height;
+		public final int levels;
+		/**
+		 * Open a page file and read its header.
+		 * @param pageFile the page file.
+		 * @throws IOException if the header could not be read or is not a valid header.
+		 */
+		public Header(final File pageFile) throws IOException
+		{
+			file = new RandomAccessFile(pageFile, "r");
+			try
+			{
+				final boolean isValid = file.readInt() == MAGIC;
+				width = file.readInt();
+				height = file.readInt();
+				final int pageSize = file.readInt();
+				levels = file.readInt();
+				if (!isValid || width <= 0 || height <= 0 || levels != GetLevelCount(width, height))
+					throw new IOException("Invalid page file.");
+				if (pageSize != PAGE_SIZE)
+					throw new IOException("Unsupported page size.");
+			}
+			catch (IOException e)
+			{
+				file.close();
+				throw e;
+			}
+		}
+	}
+	/**
+	 * A task that loads a page and makes it resident.
+	 */
+	private final class PageLoader implements Runnable
+	{
+		/**
+		 * The page's cache key, level, column and row.
+		 */
+		private final Long key;
+		private final int level;
+		private final int column;
+		private final int row;
+		/**
+		 * Instantiate a PageLoader for a given page.
+		 */
+		public PageLoader(final Long key, final int level, final int column, final int row)
+		{
+			this.key = key;
+			this.level = level;
+			this.column = column;
+			this.row = row;
+		}
+		/**
+		 * Load the page, and schedule the scene to be rendered again. If the page could not be
+		 * loaded, it is recorded so that it is not requested again.
+		 */
+		@Override
+		public void run()
+		{
+			int page[] = null;
+			try
+			{
+				page = readPage(level, column, row);
+			}
+			catch (IOException e)
+			{
+				System.err.println("Could not load a virtual texture page: " + e.getMessage());
+			}
+			synchronized (cache)
+			{
+				if (page != null)
+					cache.put(key, page);
+				else
+					failures.add(key);
+				feedback.remove(key);
+			}
+			if (page != null && !updater.isRunning())
+				updater.start();
+		}
+	}
+}
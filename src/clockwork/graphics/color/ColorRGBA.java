@@ -116,6 +116,21 @@ public class ColorRGBA
 
 		return output;
 	}
+	/**
+	 * Linearly interpolate between two colors, rounding each channel to the nearest value.
+	 * The red and blue channels are interpolated in one integer, and the alpha and green
+	 * channels in another.
+	 * @param c0 the first color.
+	 * @param c1 the second color.
+	 * @param p the second color's weight, between 0 and 256.
+	 */
+	public static int lerp(final int c0, final int c1, final int p)
+	{
+		final int q = 256 - p;
+		final int rb = ((((c0 & 0x00ff00ff) * q) + ((c1 & 0x00ff00ff) * p) + 0x00800080) >>> 8) & 0x00ff00ff;
+		final int ag = (((((c0 >>> 8) & 0x00ff00ff) * q) + (((c1 >>> 8) & 0x00ff00ff) * p) + 0x00800080) >>> 8) & 0x00ff00ff;
+		return (ag << 8) | rb;
+	}
 	/**
 	 * Split a 32-bit integer ARGB value into a ColorRGBA.
 	 * @param rgba the ARGB value to split.
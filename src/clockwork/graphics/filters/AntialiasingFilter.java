@@ -0,0 +1,64 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2013 Jeremy Othieno.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package clockwork.graphics.filters;
+
+import clockwork.graphics.Antialiasing;
+import clockwork.system.RuntimeOptions;
+
+/**
+ * The post-processing stage that applies the current anti-aliasing algorithm.
+ * @see Antialiasing#ALGORITHM
+ */
+public class AntialiasingFilter extends FrameFilter
+{
+	/**
+	 * The FXAA filter, whose buffers are reused from one frame to the next.
+	 */
+	private final FXAA fxaa = new FXAA();
+
+	@Override
+	public boolean isEnabled()
+	{
+		return RuntimeOptions.EnableAntialiasing;
+	}
+
+	@Override
+	public boolean isRefinement()
+	{
+		return true;
+	}
+
+	@Override
+	public void filter(final int source[], final int target[], final int width, final int height)
+	{
+		switch (Antialiasing.ALGORITHM)
+		{
+			case FXAA:
+				fxaa.apply(source, target, width, height);
+				break;
+			default:
+				break;
+		}
+	}
+}
@@ -0,0 +1,91 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2013 Jeremy Othieno.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package clockwork.graphics.filters;
+
+import clockwork.system.RuntimeOptions;
+
+/**
+ * Color grading adjusts a pixel's saturation, by scaling its channels' distance to its
+ * luma, and then its contrast, by scaling its channels' distance to mid-grey.
+ * @see RuntimeOptions#ColorGradingSaturation
+ * @see RuntimeOptions#ColorGradingContrast
+ */
+public class ColorGrading extends PixelFilter
+{
+	/**
+	 * The saturation and contrast used in the current frame, in 16.16 fixed point.
+	 */
+	private int saturation = 1 << 16;
+	private int contrast = 1 << 16;
+
+	@Override
+	public boolean isEnabled()
+	{
+		return RuntimeOptions.EnableColorGrading;
+	}
+
+	@Override
+	public void prepare()
+	{
+		saturation = (int)Math.round(RuntimeOptions.ColorGradingSaturation * 65536.0);
+		contrast = (int)Math.round(RuntimeOptions.ColorGradingContrast * 65536.0);
+	}
+
+	@Override
+	public void filter(final int pixels[], final int from, final int to)
+	{
+		for (int offset = from; offset < to; ++offset)
+			pixels[offset] = filter(pixels[offset]);
+	}
+
+	@Override
+	public int filter(final int argb)
+	{
+		final int R = (argb >> 16) & 0xff;
+		final int G = (argb >> 8) & 0xff;
+		final int B = argb & 0xff;
+
+		// Y = 0.299R + 0.587G + 0.114B, in 16.16 fixed point.
+		final int Y = ((19595 * R) + (38470 * G) + (7471 * B)) >> 16;
+
+		return
+		(argb & 0xff000000) |
+		(grade(R, Y) << 16) |
+		(grade(G, Y) << 8) |
+		grade(B, Y);
+	}
+	/**
+	 * Grade a single channel.
+	 * @param c the channel's value.
+	 * @param Y the pixel's luma.
+	 */
+	private int grade(final int c, final int Y)
+	{
+		final long saturated = (Y << 16) + ((long)saturation * (c - Y));
+		final long graded = (128L << 16) + ((contrast * (saturated - (128L << 16))) >> 16);
+		final int value = (int)((graded + (1 << 15)) >> 16);
+
+		return value < 0 ? 0 : (value > 255 ? 255 : value);
+	}
+}
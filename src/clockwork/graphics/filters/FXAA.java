@@ -25,6 +25,8 @@ package clockwork.graphics.filters;
 
 import java.awt.Dimension;
 import java.awt.geom.Point2D;
+import java.util.ArrayList;
+import java.util.concurrent.Callable;
 
 import clockwork.graphics.Framebuffer;
 import clockwork.graphics.color.ColorRGBA;
@@ -150,117 +152,248 @@ public class FXAA
 	private static float FXAA_REDUCE_MUL = 1.0f / 8.0f;
 	private static float FXAA_SPAN_MAX = 8.0f;
 
-	// https://github.com/demoscenepassivist/SocialCoding/blob/master/code_demos_jogamp/shaders/fxaa.fs
-	public static void apply(final Framebuffer framebuffer)
+	/**
+	 * The frame being filtered. The filter reads from a copy of the color buffer, and the
+	 * luma of each of its pixels, while it writes into the color buffer itself. The copy
+	 * and the luma plane are reused from one frame to the next. Each filter instance owns
+	 * its frame, so instances can filter different frames concurrently.
+	 */
+	private int copy[] = new int[0];
+	private int source[] = null;
+	private float luma[] = new float[0];
+	private int target[] = null;
+	private int frameWidth = 0;
+	private int frameHeight = 0;
+	/**
+	 * The bands that compute the luma plane, and the bands that filter the frame. The bands
+	 * are processed by the post-processing threads.
+	 * @see PostProcessingChain
+	 */
+	private final ArrayList<Band> lumaBands = new ArrayList<Band>();
+	private final ArrayList<Band> filterBands = new ArrayList<Band>();
+
+	/**
+	 * Apply FXAA to a framebuffer's color buffer.
+	 * @param framebuffer the framebuffer to filter.
+	 */
+	public void apply(final Framebuffer framebuffer)
 	{
 		if (!RuntimeOptions.EnableAntialiasing)
 			return;
 
 		final Dimension resolution = framebuffer.getResolution();
-		final int w = resolution.width;
-		final int h = resolution.height;
-
-		// Store the framebuffer's inverse resolution.
-		FXAA_RCP_FRAME.x = 1.0f;//1.0f / w;
-		FXAA_RCP_FRAME.y = 1.0f;//1.0f / h;
-
 		final int pixels[] = framebuffer.getColorBuffer();
-		final Texture texture = new Texture(pixels, w, h);
+		if (copy.length != pixels.length)
+			copy = new int[pixels.length];
 
-		for (int i = 0; i < texture.height; ++i)
+		System.arraycopy(pixels, 0, copy, 0, pixels.length);
+		apply(copy, pixels, resolution.width, resolution.height);
+	}
+	/**
+	 * Apply FXAA to a frame.
+	 * @see https://github.com/demoscenepassivist/SocialCoding/blob/master/code_demos_jogamp/shaders/fxaa.fs
+	 * @param source the pixels to read from.
+	 * @param target the pixels to write to, which initially hold the same values as the source.
+	 * @param w the frame's width.
+	 * @param h the frame's height.
+	 */
+	public void apply(final int source[], final int target[], final int w, final int h)
+	{
+		// Resize the luma plane and bands when the resolution changes.
+		if (w != frameWidth || h != frameHeight || luma.length != source.length)
 		{
-			for (int j = 0; j < texture.width; ++j)
+			frameWidth = w;
+			frameHeight = h;
+			luma = new float[source.length];
+
+			lumaBands.clear();
+			filterBands.clear();
+			final int bandCount = Math.max(1, Math.min(h, PostProcessingChain.BAND_COUNT));
+			for (int band = 0; band < bandCount; ++band)
 			{
-				// Offset and XY coordinates of the current pixel.
-				final int offset = (i * w) + j;
-				final Point2D.Float posM = new Point2D.Float(j, i);
-				final Point2D.Float tmp = new Point2D.Float(0, 0);
-
-				tmp.x = (posM.x - 1.0f) * FXAA_RCP_FRAME.x;
-				tmp.y = (posM.y - 1.0f) * FXAA_RCP_FRAME.y;
-				final ColorRGBA rgbNW = texture2D(texture, tmp);
-				tmp.x = (posM.x + 1.0f) * FXAA_RCP_FRAME.x;
-				tmp.y = (posM.y - 1.0f) * FXAA_RCP_FRAME.y;
-				final ColorRGBA rgbNE = texture2D(texture, tmp);
-				tmp.x = (posM.x - 1.0f) * FXAA_RCP_FRAME.x;
-				tmp.y = (posM.y + 1.0f) * FXAA_RCP_FRAME.y;
-				final ColorRGBA rgbSW = texture2D(texture, tmp);
-				tmp.x = (posM.x + 1.0f) * FXAA_RCP_FRAME.x;
-				tmp.y = (posM.y + 1.0f) * FXAA_RCP_FRAME.y;
-				final ColorRGBA rgbSE = texture2D(texture, tmp);
-				tmp.x = (posM.x) * FXAA_RCP_FRAME.x;
-				tmp.y = (posM.y) * FXAA_RCP_FRAME.y;
-				final ColorRGBA rgbM  = texture2D(texture, tmp);
-
-
-			   float lumaNW = luma(rgbNW);
-			   float lumaNE = luma(rgbNE);
-			   float lumaSW = luma(rgbSW);
-			   float lumaSE = luma(rgbSE);
-			   float lumaM  = luma(rgbM);
-			   float lumaMin = Math.min(lumaM, Math.min(Math.min(lumaNW, lumaNE), Math.min(lumaSW, lumaSE)));
-			   float lumaMax = Math.max(lumaM, Math.max(Math.max(lumaNW, lumaNE), Math.max(lumaSW, lumaSE)));
-
-			   final Point2D.Float dir = new Point2D.Float
-			   (
-			   	-((lumaNW + lumaNE) - (lumaSW + lumaSE)),
-			   	((lumaNW + lumaSW) - (lumaNE + lumaSE))
-			   );
-			   final float dirReduce =
-			   Math.max((lumaNW + lumaNE + lumaSW + lumaSE) * (0.25f * FXAA_REDUCE_MUL),FXAA_REDUCE_MIN);
-
-			   final float rcpDirMin = 1.0f/(Math.min(Math.abs(dir.x), Math.abs(dir.y)) + dirReduce);
-
-
-			   dir.x = Math.min(FXAA_SPAN_MAX, Math.max(-FXAA_SPAN_MAX, dir.x * rcpDirMin)) * FXAA_RCP_FRAME.x;
-			   dir.y = Math.min(FXAA_SPAN_MAX, Math.max(-FXAA_SPAN_MAX, dir.y * rcpDirMin)) * FXAA_RCP_FRAME.y;
-
-			   final Point2D.Float pos0 = new Point2D.Float
-			   (
-			   	posM.x * FXAA_RCP_FRAME.x + dir.x * (1.0f/3.0f - 0.5f),
-			   	posM.y * FXAA_RCP_FRAME.y + dir.y * (1.0f/3.0f - 0.5f)
-			   );
-			   final Point2D.Float pos1 = new Point2D.Float
-			   (
-			   	posM.x * FXAA_RCP_FRAME.x + dir.x * (2.0f/3.0f - 0.5f),
-			   	posM.y * FXAA_RCP_FRAME.y + dir.y * (2.0f/3.0f - 0.5f)
-			   );
-			   final ColorRGBA rgbA =
-			   texture2D(texture, pos0).add(texture2D(texture, pos1)).multiply(0.5f);
-
-
-			   final Point2D.Float pos2 = new Point2D.Float
-			   (
-			   	posM.x * FXAA_RCP_FRAME.x + dir.x * (-0.5f),
-			   	posM.y * FXAA_RCP_FRAME.y + dir.y * (-0.5f)
-			   );
-			   final Point2D.Float pos3 = new Point2D.Float
-			   (
-			   	posM.x * FXAA_RCP_FRAME.x + dir.x * (0.5f),
-			   	posM.y * FXAA_RCP_FRAME.y + dir.y * (0.5f)
-			   );
-			   final ColorRGBA rgbB =
-			   rgbA.multiply(0.5f).add(texture2D(texture, pos2).add(texture2D(texture, pos3)).multiply(0.25f));
-
-			   float lumaB = luma(rgbB);
-			   if ((lumaB < lumaMin) || (lumaB > lumaMax))
-			   	pixels[offset] = ColorRGBA.merge(rgbA.r, rgbA.g, rgbA.b, 1.0f);
-			   else
-			   	pixels[offset] = ColorRGBA.merge(rgbB.r, rgbB.g, rgbB.b, 1.0f);
+				final int y0 = (band * h) / bandCount;
+				final int y1 = ((band + 1) * h) / bandCount;
+				lumaBands.add(new Band(y0, y1, true));
+				filterBands.add(new Band(y0, y1, false));
 			}
 		}
-	}
 
-	static ColorRGBA texture2D(final Texture tex, final Point2D.Float position)
+		// The luma plane must be complete before any band is filtered, since a band reads
+		// the rows around it.
+		this.source = source;
+		this.target = target;
+		try
+		{
+			PostProcessingChain.InvokeAll(lumaBands);
+			PostProcessingChain.InvokeAll(filterBands);
+		}
+		catch (InterruptedException e)
+		{
+			Thread.currentThread().interrupt();
+		}
+		finally
+		{
+			this.source = null;
+			this.target = null;
+		}
+	}
+	/**
+	 * Calculate the luma of each pixel in a band of rows.
+	 * @param y0 the band's first row.
+	 * @param y1 the row after the band's last row.
+	 */
+	private void calculateLuma(final int y0, final int y1)
+	{
+		final int end = y1 * frameWidth;
+		for (int offset = y0 * frameWidth; offset < end; ++offset)
+			luma[offset] = luma(source[offset]);
+	}
+	/**
+	 * Filter a band of rows. Each row is first scanned for edge pixels, i.e. pixels whose
+	 * neighbourhood has enough contrast to be filtered, and only those are filtered.
+	 * @param y0 the band's first row.
+	 * @param y1 the row after the band's last row.
+	 * @param edges a buffer that holds a row's edge pixels.
+	 */
+	private void filter(final int y0, final int y1, final int edges[])
 	{
-		final int x = Math.round(position.x);
-		final int y = Math.round(position.y);
-		int argb = 0;
+		final int w = frameWidth;
+		final int h = frameHeight;
+		for (int y = y0; y < y1; ++y)
+		{
+			final int N = Math.max(0, y - 1) * w;
+			final int M = y * w;
+			final int S = Math.min(h - 1, y + 1) * w;
 
-		if (x > 0 && x < tex.width && y > 0 && y < tex.height)
-			argb = tex.pixels[x + (y * tex.width)];
+			int edgeCount = 0;
+			for (int x = 0; x < w; ++x)
+			{
+				final int W = Math.max(0, x - 1);
+				final int E = Math.min(w - 1, x + 1);
+				final float lumaNW = luma[N + W], lumaNE = luma[N + E];
+				final float lumaSW = luma[S + W], lumaSE = luma[S + E];
+				final float lumaM = luma[M + x];
+				final float lumaMin = Math.min(lumaM, Math.min(Math.min(lumaNW, lumaNE), Math.min(lumaSW, lumaSE)));
+				final float lumaMax = Math.max(lumaM, Math.max(Math.max(lumaNW, lumaNE), Math.max(lumaSW, lumaSE)));
+
+				if (lumaMax - lumaMin >= Math.max(FXAA_EDGE_THRESHOLD_MIN, lumaMax * FXAA_EDGE_THRESHOLD))
+					edges[edgeCount++] = x;
+			}
+			for (int i = 0; i < edgeCount; ++i)
+				filterPixel(edges[i], y);
+		}
+	}
+	/**
+	 * Filter an edge pixel by blending the pixels along the direction of its local luma
+	 * gradient.
+	 * @param x the pixel's horizontal coordinate.
+	 * @param y the pixel's vertical coordinate.
+	 */
+	private void filterPixel(final int x, final int y)
+	{
+		final int w = frameWidth;
+		final int N = Math.max(0, y - 1) * w;
+		final int S = Math.min(frameHeight - 1, y + 1) * w;
+		final int W = Math.max(0, x - 1);
+		final int E = Math.min(w - 1, x + 1);
+		final float lumaNW = luma[N + W], lumaNE = luma[N + E];
+		final float lumaSW = luma[S + W], lumaSE = luma[S + E];
+		final float lumaM = luma[(y * w) + x];
+		final float lumaMin = Math.min(lumaM, Math.min(Math.min(lumaNW, lumaNE), Math.min(lumaSW, lumaSE)));
+		final float lumaMax = Math.max(lumaM, Math.max(Math.max(lumaNW, lumaNE), Math.max(lumaSW, lumaSE)));
+
+		float dirX = -((lumaNW + lumaNE) - (lumaSW + lumaSE));
+		float dirY = ((lumaNW + lumaSW) - (lumaNE + lumaSE));
+		final float dirReduce =
+		Math.max((lumaNW + lumaNE + lumaSW + lumaSE) * (0.25f * FXAA_REDUCE_MUL), FXAA_REDUCE_MIN);
+		final float rcpDirMin = 1.0f / (Math.min(Math.abs(dirX), Math.abs(dirY)) + dirReduce);
+		dirX = Math.min(FXAA_SPAN_MAX, Math.max(-FXAA_SPAN_MAX, dirX * rcpDirMin));
+		dirY = Math.min(FXAA_SPAN_MAX, Math.max(-FXAA_SPAN_MAX, dirY * rcpDirMin));
+
+		// Two samples close to the pixel, and two further along the gradient's direction.
+		final int c0 = sample(x + (dirX * (1.0f / 3.0f - 0.5f)), y + (dirY * (1.0f / 3.0f - 0.5f)));
+		final int c1 = sample(x + (dirX * (2.0f / 3.0f - 0.5f)), y + (dirY * (2.0f / 3.0f - 0.5f)));
+		final int c2 = sample(x + (dirX * -0.5f), y + (dirY * -0.5f));
+		final int c3 = sample(x + (dirX * 0.5f), y + (dirY * 0.5f));
+
+		final float rA = (((c0 >> 16) & 0xff) + ((c1 >> 16) & 0xff)) * 0.5f;
+		final float gA = (((c0 >> 8) & 0xff) + ((c1 >> 8) & 0xff)) * 0.5f;
+		final float bA = ((c0 & 0xff) + (c1 & 0xff)) * 0.5f;
+		final float rB = (rA * 0.5f) + ((((c2 >> 16) & 0xff) + ((c3 >> 16) & 0xff)) * 0.25f);
+		final float gB = (gA * 0.5f) + ((((c2 >> 8) & 0xff) + ((c3 >> 8) & 0xff)) * 0.25f);
+		final float bB = (bA * 0.5f) + (((c2 & 0xff) + (c3 & 0xff)) * 0.25f);
+
+		// If the wider blend leaves the neighbourhood's luma range, it crossed another edge.
+		final float lumaB = ((0.299f * rB) + (0.587f * gB) + (0.114f * bB)) * (1.0f / 255.0f);
+		final boolean isOutOfRange = (lumaB < lumaMin) || (lumaB > lumaMax);
+		target[(y * w) + x] = isOutOfRange ? pack(rA, gA, bA) : pack(rB, gB, bB);
+	}
+	/**
+	 * Return the source pixel closest to the given coordinates, clamped to the frame.
+	 * @param x the horizontal coordinate.
+	 * @param y the vertical coordinate.
+	 */
+	private int sample(final float x, final float y)
+	{
+		final int xi = Math.min(frameWidth - 1, Math.max(0, Math.round(x)));
+		final int yi = Math.min(frameHeight - 1, Math.max(0, Math.round(y)));
 
-		return ColorRGBA.split(argb);
+		return source[xi + (yi * frameWidth)];
+	}
+	/**
+	 * Pack 8-bit color channels into an opaque ARGB color.
+	 */
+	private static int pack(final float r, final float g, final float b)
+	{
+		return
+		0xff000000 |
+		(Math.min(255, Math.round(r)) << 16) |
+		(Math.min(255, Math.round(g)) << 8) |
+		Math.min(255, Math.round(b));
+	}
+	/**
+	 * A band of rows processed by a single thread.
+	 */
+	private final class Band implements Callable<Object>
+	{
+		/**
+		 * The band's first row and the row after its last row.
+		 */
+		private final int y0;
+		private final int y1;
+		/**
+		 * Does the band compute the luma plane, or filter the frame?
+		 */
+		private final boolean isLumaPass;
+		/**
+		 * A buffer that holds a row's edge pixels.
+		 */
+		private int edges[] = new int[0];
+		/**
+		 * Instantiate a band of rows.
+		 */
+		public Band(final int y0, final int y1, final boolean isLumaPass)
+		{
+			this.y0 = y0;
+			this.y1 = y1;
+			this.isLumaPass = isLumaPass;
+		}
+		/**
+		 * Process the band.
+		 */
+		@Override
+		public Object call()
+		{
+			if (isLumaPass)
+				calculateLuma(y0, y1);
+			else
+			{
+				if (edges.length != frameWidth)
+					edges = new int[frameWidth];
+				filter(y0, y1, edges);
+			}
+			return null;
+		}
 	}
 
 
@@ -647,7 +780,9 @@ public class FXAA
 	}
 	private static float luma(final int color)
 	{
-		return luma(ColorRGBA.split(color));
+		return
+		((0.299f * ((color >> 16) & 0xff)) + (0.587f * ((color >> 8) & 0xff)) + (0.114f * (color & 0xff))) *
+		(1.0f / 255.0f);
 	}
 
 
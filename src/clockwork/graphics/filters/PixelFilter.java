@@ -0,0 +1,58 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2013 Jeremy Othieno.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package clockwork.graphics.filters;
+
+/**
+ * A post-processing filter whose output pixel only depends on the input pixel at the same
+ * location. Adjacent pixel filters in a post-processing chain are fused into a single pass
+ * over the color buffer.
+ */
+public abstract class PixelFilter extends PostProcessingFilter
+{
+	/**
+	 * Prepare the filter for a new frame. This is called once before each pass, on the
+	 * thread that applies the chain, so any state the filter depends on can be updated here.
+	 */
+	public void prepare()
+	{}
+	/**
+	 * Filter a single pixel. This may be called from several threads at once.
+	 * @param argb the pixel's color.
+	 * @return the filtered color.
+	 */
+	public abstract int filter(final int argb);
+	/**
+	 * Filter a span of pixels in place. This may be called from several threads at once,
+	 * on different spans. Subclasses should override this with the same loop, so that
+	 * the call to filter(argb) is resolved to their own implementation and inlined.
+	 * @param pixels the pixels to filter.
+	 * @param from the offset of the span's first pixel.
+	 * @param to the offset after the span's last pixel.
+	 */
+	public void filter(final int pixels[], final int from, final int to)
+	{
+		for (int offset = from; offset < to; ++offset)
+			pixels[offset] = filter(pixels[offset]);
+	}
+}
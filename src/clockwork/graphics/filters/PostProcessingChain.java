@@ -0,0 +1,289 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2013 Jeremy Othieno.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package clockwork.graphics.filters;
+
+import java.awt.Rectangle;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+
+import clockwork.graphics.Framebuffer;
+
+/**
+ * An ordered list of post-processing filters applied to the framebuffer's color buffer.
+ * Consecutive pixel filters are fused into a single pass that applies all of them to one
+ * row at a time, so the color buffer is swept from memory once for all of them. Frame
+ * filters read from a ping-pong buffer shared by the whole chain.
+ * Only the region of the framebuffer that was rendered in the current frame is filtered.
+ * Every pass is divided into bands of rows that are processed by a shared pool of threads.
+ */
+public final class PostProcessingChain
+{
+	/**
+	 * The threads that process the bands, shared by every post-processing pass. There are
+	 * several bands per thread to balance uneven workloads.
+	 */
+	private static final int THREAD_COUNT = Runtime.getRuntime().availableProcessors();
+	static final int BAND_COUNT = THREAD_COUNT * 4;
+	static final ExecutorService threads = Executors.newFixedThreadPool(THREAD_COUNT, new ThreadFactory()
+	{
+		@Override
+		public Thread newThread(final Runnable runnable)
+		{
+			final Thread thread = new Thread(runnable, "Post-processing");
+			thread.setDaemon(true);
+			return thread;
+		}
+	});
+	/**
+	 * The chain's filters, in the order they are applied.
+	 */
+	private final CopyOnWriteArrayList<PostProcessingFilter> filters =
+	new CopyOnWriteArrayList<PostProcessingFilter>();
+	/**
+	 * The ping-pong buffer that frame filters read from.
+	 */
+	private int buffer[] = new int[0];
+	/**
+	 * Append a filter to the chain.
+	 * @param filter the filter to append.
+	 */
+	public void add(final PostProcessingFilter filter)
+	{
+		if (filter != null)
+			filters.add(filter);
+	}
+	/**
+	 * Insert a filter at a given position in the chain.
+	 * @param index the filter's position.
+	 * @param filter the filter to insert.
+	 */
+	public void add(final int index, final PostProcessingFilter filter)
+	{
+		if (filter != null)
+			filters.add(index, filter);
+	}
+	/**
+	 * Remove a filter from the chain.
+	 * @param filter the filter to remove.
+	 */
+	public void remove(final PostProcessingFilter filter)
+	{
+		filters.remove(filter);
+	}
+	/**
+	 * Return the chain's filters, in the order they are applied.
+	 */
+	public List<PostProcessingFilter> getFilters()
+	{
+		return filters;
+	}
+	/**
+	 * Apply the chain's enabled filters to the region of a framebuffer's color buffer that
+	 * was rendered in the current frame. Refinement filters are skipped if the framebuffer
+	 * holds a preview frame.
+	 * @param framebuffer the framebuffer to filter.
+	 */
+	public void apply(final Framebuffer framebuffer)
+	{
+		final int pixels[] = framebuffer.getColorBuffer();
+		final int width = framebuffer.getWidth();
+		final int height = framebuffer.getHeight();
+		final boolean isPreview = framebuffer.isPreview();
+		final Rectangle region = framebuffer.getRegion();
+		if (region.isEmpty())
+			return;
+
+		final ArrayList<PixelFilter> fused = new ArrayList<PixelFilter>();
+		for (final PostProcessingFilter filter : filters)
+		{
+			if (!filter.isEnabled() || (isPreview && filter.isRefinement()))
+				continue;
+
+			if (filter instanceof PixelFilter)
+				fused.add((PixelFilter)filter);
+			else if (filter instanceof FrameFilter)
+			{
+				// Flush the pixel filters that precede the frame filter.
+				applyPixelFilters(fused, pixels, width, region);
+				fused.clear();
+
+				if (buffer.length != pixels.length)
+					buffer = new int[pixels.length];
+				System.arraycopy(pixels, 0, buffer, 0, pixels.length);
+				((FrameFilter)filter).filter(buffer, pixels, width, height);
+
+				// A frame filter processes the whole frame since it reads the neighbourhood of
+				// the region, but the pixels outside the region have already been filtered.
+				if (region.width != width || region.height != height)
+					restore(buffer, pixels, width, height, region);
+			}
+		}
+		applyPixelFilters(fused, pixels, width, region);
+	}
+	/**
+	 * Restore the pixels outside a region to the values they held before a frame filter
+	 * was applied.
+	 * @param source the pixels before the filter was applied.
+	 * @param pixels the filtered pixels.
+	 * @param width the frame's width.
+	 * @param height the frame's height.
+	 * @param region the region whose pixels are kept.
+	 */
+	private static void restore
+	(
+		final int source[],
+		final int pixels[],
+		final int width,
+		final int height,
+		final Rectangle region
+	)
+	{
+		final int x1 = region.x + region.width;
+		final int y1 = region.y + region.height;
+		System.arraycopy(source, 0, pixels, 0, region.y * width);
+		System.arraycopy(source, y1 * width, pixels, y1 * width, (height - y1) * width);
+		for (int y = region.y; y < y1; ++y)
+		{
+			System.arraycopy(source, y * width, pixels, y * width, region.x);
+			System.arraycopy(source, x1 + (y * width), pixels, x1 + (y * width), width - x1);
+		}
+	}
+	/**
+	 * Apply a sequence of pixel filters to a region in a single pass.
+	 * @param fused the pixel filters, in the order they are applied.
+	 * @param pixels the pixels to filter.
+	 * @param width the frame's width.
+	 * @param region the region to filter.
+	 */
+	private static void applyPixelFilters
+	(
+		final List<PixelFilter> fused,
+		final int pixels[],
+		final int width,
+		final Rectangle region
+	)
+	{
+		if (fused.isEmpty())
+			return;
+
+		final PixelFilter pass[] = fused.toArray(new PixelFilter[fused.size()]);
+		for (final PixelFilter filter : pass)
+			filter.prepare();
+
+		ForEachBand(region.height, new Band()
+		{
+			@Override
+			public void process(final int y0, final int y1)
+			{
+				// Each filter processes a row while it is still in the cache.
+				for (int y = region.y + y0; y < region.y + y1; ++y)
+				{
+					final int from = region.x + (y * width);
+					for (final PixelFilter filter : pass)
+						filter.filter(pixels, from, from + region.width);
+				}
+			}
+		});
+	}
+	/**
+	 * Divide a frame's rows into bands and process them on the shared threads. This returns
+	 * once every band has been processed. It is also used by other per-pixel passes over
+	 * the framebuffer, such as the multisample resolve.
+	 * @param height the number of rows.
+	 * @param band the work to perform on each band.
+	 */
+	public static void ForEachBand(final int height, final Band band)
+	{
+		final int bandCount = Math.max(1, Math.min(height, BAND_COUNT));
+		final ArrayList<Callable<Object>> tasks = new ArrayList<Callable<Object>>(bandCount);
+		for (int b = 0; b < bandCount; ++b)
+		{
+			final int y0 = (b * height) / bandCount;
+			final int y1 = ((b + 1) * height) / bandCount;
+			tasks.add(new Callable<Object>()
+			{
+				@Override
+				public Object call()
+				{
+					band.process(y0, y1);
+					return null;
+				}
+			});
+		}
+		try
+		{
+			InvokeAll(tasks);
+		}
+		catch (InterruptedException e)
+		{
+			Thread.currentThread().interrupt();
+		}
+	}
+	/**
+	 * Process a set of tasks on the shared threads, and return once all of them are done. If
+	 * any task failed, the exception it threw is rethrown, rather than leaving its band of
+	 * rows silently unprocessed.
+	 * @param tasks the tasks to process.
+	 * @throws InterruptedException if the current thread is interrupted while waiting.
+	 */
+	static void InvokeAll(final Collection<? extends Callable<Object>> tasks) throws InterruptedException
+	{
+		for (final Future<Object> future : threads.invokeAll(tasks))
+		{
+			try
+			{
+				future.get();
+			}
+			catch (ExecutionException e)
+			{
+				final Throwable cause = e.getCause();
+				if (cause instanceof RuntimeException)
+					throw (RuntimeException)cause;
+				if (cause instanceof Error)
+					throw (Error)cause;
+				throw new RuntimeException(cause);
+			}
+		}
+	}
+	/**
+	 * The work performed on a band of rows.
+	 */
+	public static abstract class Band
+	{
+		/**
+		 * Process a band of rows.
+		 * @param y0 the band's first row.
+		 * @param y1 the row after the band's last row.
+		 */
+		public abstract void process(final int y0, final int y1);
+	}
+}
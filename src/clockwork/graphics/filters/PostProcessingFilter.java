@@ -0,0 +1,46 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2013 Jeremy Othieno.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package clockwork.graphics.filters;
+
+/**
+ * A full-screen filter applied to the framebuffer's color buffer once a frame has been
+ * rendered, as one of the stages of a post-processing chain.
+ * @see PostProcessingChain
+ */
+public abstract class PostProcessingFilter
+{
+	/**
+	 * Is the filter applied? Disabled filters are skipped by the post-processing chain.
+	 */
+	public abstract boolean isEnabled();
+	/**
+	 * Does the filter only refine the image's quality? Such filters are skipped in preview
+	 * frames, which are rendered while the user interacts with the scene.
+	 * @see clockwork.graphics.Framebuffer#isPreview
+	 */
+	public boolean isRefinement()
+	{
+		return false;
+	}
+}
@@ -0,0 +1,79 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2013 Jeremy Othieno.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package clockwork.graphics.filters;
+
+import clockwork.system.RuntimeOptions;
+
+/**
+ * Tone mapping compresses the highlights of each color channel with a Reinhard curve,
+ * y = (1 + e)x / (1 + ex), where e is the exposure. White is preserved and the curve
+ * flattens as the exposure increases.
+ * @see RuntimeOptions#ToneMappingExposure
+ */
+public class ToneMapping extends PixelFilter
+{
+	/**
+	 * The curve's value for each 8-bit channel value, and the exposure it was built for.
+	 */
+	private final int table[] = new int[256];
+	private double tableExposure = Double.NaN;
+
+	@Override
+	public boolean isEnabled()
+	{
+		return RuntimeOptions.EnableToneMapping;
+	}
+
+	@Override
+	public void prepare()
+	{
+		final double e = Math.max(0.0, RuntimeOptions.ToneMappingExposure);
+		if (e != tableExposure)
+		{
+			for (int i = 0; i < table.length; ++i)
+			{
+				final double x = i / 255.0;
+				table[i] = (int)Math.round(255.0 * ((1.0 + e) * x) / (1.0 + (e * x)));
+			}
+			tableExposure = e;
+		}
+	}
+
+	@Override
+	public void filter(final int pixels[], final int from, final int to)
+	{
+		for (int offset = from; offset < to; ++offset)
+			pixels[offset] = filter(pixels[offset]);
+	}
+
+	@Override
+	public int filter(final int argb)
+	{
+		return
+		(argb & 0xff000000) |
+		(table[(argb >> 16) & 0xff] << 16) |
+		(table[(argb >> 8) & 0xff] << 8) |
+		table[argb & 0xff];
+	}
+}
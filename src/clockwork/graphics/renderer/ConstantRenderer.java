@@ -23,6 +23,8 @@
  */
 package clockwork.graphics.renderer;
 
+import java.util.EnumSet;
+
 import clockwork.graphics.Vertex;
 
 
@@ -33,7 +35,7 @@ public final class ConstantRenderer extends PolygonRenderer
 	 */
 	protected ConstantRenderer()
 	{
-		super(Renderer.Type.Constant);
+		super(Renderer.Type.Constant, EnumSet.of(Renderer.Varying.Color));
 	}
 	/**
 	 * TODO Implement me.
@@ -0,0 +1,315 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2013 Jeremy Othieno.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package clockwork.graphics.renderer;
+
+import java.awt.Rectangle;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+
+import clockwork.graphics.Framebuffer;
+import clockwork.graphics.Material;
+import clockwork.graphics.PolygonFace;
+import clockwork.graphics.vsd.LightCulling;
+import clockwork.physics.lighting.LightEmitter;
+import clockwork.system.RuntimeOptions;
+import clockwork.types.math.Matrix4;
+import clockwork.types.math.Orientation;
+import clockwork.types.math.Point3f;
+
+/**
+ * Damage tracking. The state each renderable and light was drawn with is recorded along with
+ * its bounds in window coordinates. In the next frame, those that have changed, as well as
+ * those that were added or removed, damage both their previous and current bounds. Only the
+ * damaged region of the framebuffer is then cleared and rendered again, and a frame without
+ * any damage is not rendered at all. The whole frame is damaged when anything that affects
+ * every pixel changes, such as the camera, the renderer or the framebuffer's resolution.
+ */
+public final class DamageTracking
+{
+	/**
+	 * The state a renderable was drawn with, and its bounds.
+	 */
+	private static final class RenderableRecord
+	{
+		private int revision;
+		private final Matrix4 CMTM = new Matrix4();
+		private PolygonFace faces[];
+		private Material material;
+		private final Rectangle bounds = new Rectangle();
+		private boolean isSeen;
+	}
+	/**
+	 * The state a light was drawn with, and the bounds of the region it reaches.
+	 */
+	private static final class LightRecord
+	{
+		private int revision;
+		private final Point3f position = new Point3f();
+		private final Orientation orientation = new Orientation();
+		private final Rectangle bounds = new Rectangle();
+		private boolean isSeen;
+	}
+	/**
+	 * The records of the renderables, identified by the node they were created from, and
+	 * the records of the lights.
+	 */
+	private final IdentityHashMap<Object, RenderableRecord> renderables =
+	new IdentityHashMap<Object, RenderableRecord>();
+	private final IdentityHashMap<LightEmitter, LightRecord> lights =
+	new IdentityHashMap<LightEmitter, LightRecord>();
+	/**
+	 * The state of the previous frame that affects every pixel.
+	 */
+	private Renderer renderer = null;
+	private final Matrix4 VIEW = new Matrix4();
+	private final Matrix4 PROJECTION = new Matrix4();
+	private final Point3f viewerPosition = new Point3f();
+	private int width = 0;
+	private int height = 0;
+	private int samples = 0;
+	private int clearColor = 0;
+	private boolean isPreview = false;
+	/**
+	 * Has the whole frame been invalidated since the previous frame?
+	 */
+	private boolean isInvalidated = true;
+	/**
+	 * Is the whole current frame damaged?
+	 */
+	private boolean isFullFrame = true;
+	/**
+	 * The current frame's damaged region, and the frame's bounds.
+	 */
+	private final Rectangle damage = new Rectangle();
+	private final Rectangle frame = new Rectangle();
+	/**
+	 * Damage the whole of the next frame. This must be called when a change is made that
+	 * affects every pixel but is not otherwise tracked, such as a change to the runtime options.
+	 */
+	public void invalidate()
+	{
+		isInvalidated = true;
+	}
+	/**
+	 * Begin a new frame. The whole frame is damaged if damage tracking is disabled, if frames
+	 * are accumulated over time since each one is jittered differently, or if the renderer,
+	 * camera, or framebuffer's resolution, sample count, preview state or clear color have
+	 * changed since the previous frame.
+	 * @param renderer the renderer that renders the frame.
+	 * @param framebuffer the framebuffer the frame is rendered to.
+	 * @param VIEW the frame's VIEW transformation.
+	 * @param PROJECTION the frame's PROJECTION transformation, before it is jittered.
+	 * @param viewerPosition the viewer's position, by which the renderables' CMTMs are offset.
+	 */
+	void begin
+	(
+		final Renderer renderer,
+		final Framebuffer framebuffer,
+		final Matrix4 VIEW,
+		final Matrix4 PROJECTION,
+		final Point3f viewerPosition
+	)
+	{
+		isFullFrame =
+		isInvalidated ||
+		!RuntimeOptions.EnableDamageTracking ||
+		RuntimeOptions.RenderSurfaceNormals ||
+		framebuffer.isTemporallyAccumulated() ||
+		renderer != this.renderer ||
+		framebuffer.getWidth() != width ||
+		framebuffer.getHeight() != height ||
+		framebuffer.getSampleCount() != samples ||
+		framebuffer.getClearColorValue() != clearColor ||
+		framebuffer.isPreview() != isPreview ||
+		!VIEW.isEqual(this.VIEW) ||
+		!PROJECTION.isEqual(this.PROJECTION) ||
+		!viewerPosition.equals(this.viewerPosition);
+
+		isInvalidated = false;
+		this.renderer = renderer;
+		this.VIEW.copy(VIEW);
+		this.PROJECTION.copy(PROJECTION);
+		this.viewerPosition.copy(viewerPosition);
+		width = framebuffer.getWidth();
+		height = framebuffer.getHeight();
+		samples = framebuffer.getSampleCount();
+		clearColor = framebuffer.getClearColorValue();
+		isPreview = framebuffer.isPreview();
+
+		frame.setBounds(0, 0, width, height);
+		damage.setBounds(0, 0, 0, 0);
+		if (isFullFrame)
+			damage.setBounds(frame);
+
+		for (final RenderableRecord record : renderables.values())
+			record.isSeen = false;
+		for (final LightRecord record : lights.values())
+			record.isSeen = false;
+	}
+	/**
+	 * Record the state a light is drawn with in the current frame. A light that has changed
+	 * damages the region it reaches, before and after the change. When tiled light culling is
+	 * enabled, that region is the set of tiles the light is assigned to, and otherwise it is
+	 * the whole frame. Adding or removing a light damages the whole frame, since every light
+	 * contributes to the ambient term of every pixel.
+	 * @param light the light, whose uniforms must have been set for the current frame.
+	 * @param isShadowMapUpdated true if the light's shadow map was rendered again for the
+	 * current frame, which changes the shadows in the region it reaches.
+	 */
+	void update(final LightEmitter light, final boolean isShadowMapUpdated)
+	{
+		// The region the light reaches, which is infinite if the light is not attenuated.
+		final Rectangle bounds = new Rectangle(frame);
+		final double radius = light.getAttenuationRadius();
+		if (RuntimeOptions.EnableTiledLightCulling && !Double.isInfinite(radius))
+		{
+			final Point3f position = light.getUniformPosition();
+			final int size = LightCulling.TILE_SIZE;
+			final int x0 = (int)Math.floor((position.x - radius) / size) * size;
+			final int y0 = (int)Math.floor((position.y - radius) / size) * size;
+			final int x1 = ((int)Math.floor((position.x + radius) / size) + 1) * size;
+			final int y1 = ((int)Math.floor((position.y + radius) / size) + 1) * size;
+			bounds.setBounds(x0, y0, x1 - x0, y1 - y0);
+		}
+
+		LightRecord record = lights.get(light);
+		if (record == null)
+		{
+			record = new LightRecord();
+			lights.put(light, record);
+			damage(frame);
+		}
+		else if
+		(
+			isShadowMapUpdated ||
+			record.revision != light.getRevision() ||
+			!record.position.equals(light.getUniformPosition()) ||
+			record.orientation.roll != light.getEntity().getOrientation().roll ||
+			record.orientation.yaw != light.getEntity().getOrientation().yaw ||
+			record.orientation.pitch != light.getEntity().getOrientation().pitch
+		)
+		{
+			damage(record.bounds);
+			damage(bounds);
+		}
+
+		record.revision = light.getRevision();
+		record.position.copy(light.getUniformPosition());
+		record.orientation.copy(light.getEntity().getOrientation());
+		record.bounds.setBounds(bounds);
+		record.isSeen = true;
+	}
+	/**
+	 * Return the bounds a renderable was drawn with in the previous frame if it has not
+	 * changed since, or null if its vertices must be transformed to find its current bounds,
+	 * which must then be recorded.
+	 * @param renderable the renderable.
+	 * @see DamageTracking#update(Renderable)
+	 */
+	Rectangle getBounds(final Renderable renderable)
+	{
+		final RenderableRecord record = renderable.source != null ? renderables.get(renderable.source) : null;
+		if
+		(
+			isFullFrame ||
+			record == null ||
+			record.revision != renderable.revision ||
+			record.faces != renderable.faces ||
+			record.material != renderable.material ||
+			!record.CMTM.isEqual(renderable.CMTM)
+		)
+			return null;
+
+		record.isSeen = true;
+		return record.bounds;
+	}
+	/**
+	 * Record the state a renderable is drawn with in the current frame, and its current
+	 * bounds. Both its previous and current bounds are damaged.
+	 * @param renderable the renderable, whose bounds have been calculated.
+	 */
+	void update(final Renderable renderable)
+	{
+		damage(renderable.bounds);
+		if (renderable.source != null)
+		{
+			RenderableRecord record = renderables.get(renderable.source);
+			if (record == null)
+			{
+				record = new RenderableRecord();
+				renderables.put(renderable.source, record);
+			}
+			else if (!record.isSeen)
+				damage(record.bounds);
+
+			record.revision = renderable.revision;
+			record.CMTM.copy(renderable.CMTM);
+			record.faces = renderable.faces;
+			record.material = renderable.material;
+			record.bounds.setBounds(renderable.bounds);
+			record.isSeen = true;
+		}
+	}
+	/**
+	 * End the recording of the current frame, and return its damaged region. Renderables
+	 * and lights that were not drawn in the current frame have been removed, and damage the
+	 * region they were drawn in. The region is empty if the frame does not need to be rendered.
+	 */
+	Rectangle end()
+	{
+		final Iterator<RenderableRecord> r = renderables.values().iterator();
+		while (r.hasNext())
+		{
+			final RenderableRecord record = r.next();
+			if (!record.isSeen)
+			{
+				damage(record.bounds);
+				r.remove();
+			}
+		}
+		final Iterator<LightRecord> l = lights.values().iterator();
+		while (l.hasNext())
+		{
+			if (!l.next().isSeen)
+			{
+				damage(frame);
+				l.remove();
+			}
+		}
+		return damage.intersection(frame);
+	}
+	/**
+	 * Add a region to the current frame's damaged region.
+	 * @param region the damaged region.
+	 */
+	private void damage(final Rectangle region)
+	{
+		if (region.isEmpty())
+			return;
+		else if (damage.isEmpty())
+			damage.setBounds(region);
+		else
+			damage.add(region);
+	}
+}
@@ -23,7 +23,10 @@
  */
 package clockwork.graphics.renderer;
 
+import java.util.EnumSet;
+
 import clockwork.graphics.Fragment;
+import clockwork.graphics.Framebuffer;
 import clockwork.graphics.color.ColorRGBA;
 
 public final class DepthRenderer extends PolygonRenderer
@@ -33,7 +36,15 @@ public final class DepthRenderer extends PolygonRenderer
 	 */
 	protected DepthRenderer()
 	{
-		super(Renderer.Type.Depth);
+		super(Renderer.Type.Depth, EnumSet.noneOf(Renderer.Varying.class));
+	}
+	/**
+	 * Instantiate a depth renderer that renders off-screen to a given framebuffer.
+	 * @param framebuffer the framebuffer where the depth is rendered.
+	 */
+	DepthRenderer(final Framebuffer framebuffer)
+	{
+		super(Renderer.Type.Depth, EnumSet.noneOf(Renderer.Varying.class), framebuffer);
 	}
 	/**
 	 * @see Renderer#prepare.
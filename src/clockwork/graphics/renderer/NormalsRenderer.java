@@ -23,6 +23,8 @@
  */
 package clockwork.graphics.renderer;
 
+import java.util.EnumSet;
+
 import clockwork.graphics.Fragment;
 import clockwork.graphics.color.ColorRGB;
 import clockwork.system.RuntimeOptions;
@@ -34,7 +36,7 @@ public final class NormalsRenderer extends PolygonRenderer
 	 */
 	protected NormalsRenderer()
 	{
-		super(Renderer.Type.Normals);
+		super(Renderer.Type.Normals, EnumSet.of(Renderer.Varying.Normal));
 	}
 	/**
 	 * @see Renderer#prepare
@@ -24,13 +24,27 @@
 package clockwork.graphics.renderer;
 
 import clockwork.graphics.Fragment;
-import clockwork.graphics.color.ColorRGB;
 import clockwork.physics.lighting.LightEmitter;
 import clockwork.system.RuntimeOptions;
 
 
 public final class PhongRenderer extends PolygonRenderer
 {
+	/**
+	 * Is lighting enabled for the frame being rendered? The runtime option is read once
+	 * per frame instead of once per fragment.
+	 */
+	private boolean isLightingEnabled = RuntimeOptions.EnableLighting;
+	/**
+	 * Is Gouraud shading enabled for the frame being rendered, and what is the largest
+	 * projected area of a renderable that is Gouraud shaded?
+	 */
+	private boolean isGouraudShadingEnabled = RuntimeOptions.EnableGouraudShading;
+	private double gouraudShadingAreaThreshold = RuntimeOptions.GouraudShadingAreaThreshold;
+	/**
+	 * Is the current renderable lit per vertex (Gouraud shading) instead of per fragment?
+	 */
+	private boolean isPerVertexLighting = false;
 	/**
 	 * The default constructor.
 	 */
@@ -38,20 +52,79 @@ public final class PhongRenderer extends PolygonRenderer
 	{
 		super(Renderer.Type.Phong);
 	}
+	/**
+	 * @see Renderer#apply.
+	 */
+	@Override
+	public void apply(final RenderContext context)
+	{
+		isLightingEnabled = RuntimeOptions.EnableLighting;
+		isGouraudShadingEnabled = RuntimeOptions.EnableGouraudShading;
+		gouraudShadingAreaThreshold = RuntimeOptions.GouraudShadingAreaThreshold;
+		super.apply(context);
+	}
+	/**
+	 * Small renderables are Gouraud shaded: the lighting is calculated for each of the
+	 * primitive's vertices and stored in their color, which is then interpolated across
+	 * the primitive.
+	 * @see Renderer#primitiveProgram.
+	 */
+	@Override
+	protected void primitiveProgram(final Fragment fragments[])
+	{
+		isPerVertexLighting = isGouraudShadingEnabled && projectedArea <= gouraudShadingAreaThreshold;
+		if (isLightingEnabled && isPerVertexLighting)
+		{
+			for (final Fragment fragment : fragments)
+			{
+				final int color = calculateLighting(fragment);
+				fragment.r = ((color >> 16) & 0xff) * 0.00392156862; // 0.00392156862 = (1/255).
+				fragment.g = ((color >>  8) & 0xff) * 0.00392156862;
+				fragment.b =  (color        & 0xff) * 0.00392156862;
+				fragment.a = 1.0;
+			}
+		}
+	}
 	/**
 	 * @see Renderer#fragmentProgram.
 	 */
 	@Override
 	public int fragmentProgram(final Fragment fragment)
 	{
-		if (RuntimeOptions.EnableLighting)
+		if (isLightingEnabled && !isPerVertexLighting)
+			return calculateLighting(fragment);
+		return fragment.getColor();
+	}
+	/**
+	 * Return the color of a fragment lit by the scene's lights.
+	 * @param fragment the fragment to light.
+	 */
+	private int calculateLighting(final Fragment fragment)
+	{
+		// Only evaluate the lights that reach the fragment's tile.
+		if (isLightCullingEnabled)
 		{
-			final ColorRGB intensity = new ColorRGB();
-			for (final LightEmitter light : lights)
-				intensity.add(light.calculateFragmentColor(super.viewpoint, fragment, inputMaterial));
+			final LightEmitter reachingLights[] =
+			lightCulling.getLights((int)fragment.x, (int)fragment.y);
 
-			return intensity.merge();
+			return LightEmitter.calculateFragmentColor
+			(
+				super.viewpoint,
+				fragment,
+				inputMaterial,
+				reachingLights,
+				lights.length,
+				WINDOWTOWORLD
+			);
 		}
-		return fragment.getColor();
+		return LightEmitter.calculateFragmentColor
+		(
+			super.viewpoint,
+			fragment,
+			inputMaterial,
+			lights,
+			lights.length,
+			WINDOWTOWORLD
+		);
 	}
-}
\ No newline at end of file
+}
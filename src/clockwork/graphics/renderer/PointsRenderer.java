@@ -23,6 +23,8 @@
  */
 package clockwork.graphics.renderer;
 
+import java.util.EnumSet;
+
 import clockwork.graphics.Fragment;
 
 public final class PointsRenderer extends Renderer
@@ -32,7 +34,7 @@ public final class PointsRenderer extends Renderer
 	 */
 	protected PointsRenderer()
 	{
-		super(Renderer.Type.Points, Renderer.Mode.Points);
+		super(Renderer.Type.Points, Renderer.Mode.Points, EnumSet.of(Renderer.Varying.Color));
 	}
 	/**
 	 * A PointsRenderer doesn't do any special primitive assembly and
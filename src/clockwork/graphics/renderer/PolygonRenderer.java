@@ -24,19 +24,51 @@
 package clockwork.graphics.renderer;
 
 import java.util.Arrays;
+import java.util.EnumSet;
 
 import clockwork.graphics.Fragment;
+import clockwork.graphics.Framebuffer;
+import clockwork.system.RuntimeOptions;
 
 
 
 public abstract class PolygonRenderer extends Renderer
 {
+	/**
+	 * Is the fixed-point rasteriser used whatever the runtime options? Off-screen depth
+	 * passes rely on its fill rule, so that meshes leave no gaps along their shared edges.
+	 */
+	private final boolean isFixedPointRasterised;
 	/**
 	 * Instantiate a polygon renderer with a given render type.
 	 */
 	protected PolygonRenderer(final Renderer.Type type)
 	{
 		super(type, Renderer.Mode.Polygon);
+		isFixedPointRasterised = false;
+	}
+	/**
+	 * Instantiate a polygon renderer with a given render type, that reads a given set
+	 * of varyings.
+	 */
+	protected PolygonRenderer(final Renderer.Type type, final EnumSet<Renderer.Varying> varyings)
+	{
+		super(type, Renderer.Mode.Polygon, varyings);
+		isFixedPointRasterised = false;
+	}
+	/**
+	 * Instantiate a polygon renderer with a given render type, that reads a given set of
+	 * varyings and renders off-screen to a given framebuffer, with the fixed-point rasteriser.
+	 */
+	protected PolygonRenderer
+	(
+		final Renderer.Type type,
+		final EnumSet<Renderer.Varying> varyings,
+		final Framebuffer framebuffer
+	)
+	{
+		super(type, Renderer.Mode.Polygon, varyings, framebuffer);
+		isFixedPointRasterised = true;
 	}
 	/**
 	 * A PolygonRenderer creates a triangle from the three fragment it receives.
@@ -46,6 +78,14 @@ public abstract class PolygonRenderer extends Renderer
 	@Override
 	public final void primitiveAssembly(final Fragment fragments[])
 	{
+		// Sample coverage is computed from the fixed-point rasteriser's edge functions, so
+		// it is always used when the framebuffer is multisampled.
+		if (isFixedPointRasterised || RuntimeOptions.EnableFixedPointRasterisation || framebuffer.isMultisampled())
+		{
+			scanConversionFixedPoint(fragments[0], fragments[1], fragments[2]);
+			return;
+		}
+
 		// Sort the fragments based on their vertical positions, from lowest to highest.
 		Arrays.sort(fragments);
 
@@ -100,7 +140,10 @@ public abstract class PolygonRenderer extends Renderer
 
 
 		// The value of the interpolated fragment.
+		framebuffer.getVariableRateShading().beginPrimitive();
 		final Fragment fi = new Fragment();
+		if (isVaryingTextureCoordinates)
+			setTextureCoordinateDerivatives(fi, f0, f1, f2);
 
 		// Triangle type A:
 		if (f0.y == f1.y)
@@ -139,35 +182,52 @@ public abstract class PolygonRenderer extends Renderer
 		final double dyd = yd1 - yd0;
 		final double dyf = yf1 - yf0;
 
+		// Varyings that are not read by the fragment program are left uninterpolated.
+		double ud = 0.0, vd = 0.0, uf = 0.0, vf = 0.0;
+		double rd = 0.0, gd = 0.0, bd = 0.0, ad = 0.0;
+		double rf = 0.0, gf = 0.0, bf = 0.0, af = 0.0;
+		double nxd = 0.0, nyd = 0.0, nzd = 0.0;
+		double nxf = 0.0, nyf = 0.0, nzf = 0.0;
+
 		for (long y = Math.round(f0.y); y < Math.round(f2.y); ++y)
 		{
 			final double pd  = (y - yd0) / dyd;
 			final double ppd = 1.0 - pd;
 			final double xd  = (xd0  * ppd) + (xd1  * pd);
 			final double zd  = (zd0  * ppd) + (zd1  * pd);
-			final double ud  = (ud0  * ppd) + (ud1  * pd);
-			final double vd  = (vd0  * ppd) + (vd1  * pd);
-			final double rd  = (rd0  * ppd) + (rd1  * pd);
-			final double gd  = (gd0  * ppd) + (gd1  * pd);
-			final double bd  = (bd0  * ppd) + (bd1  * pd);
-			final double ad  = (ad0  * ppd) + (ad1  * pd);
-			final double nxd = (nxd0 * ppd) + (nxd1 * pd);
-			final double nyd = (nyd0 * ppd) + (nyd1 * pd);
-			final double nzd = (nzd0 * ppd) + (nzd1 * pd);
 
 			final double pf  = (y - yf0) / dyf;
 			final double ppf = 1.0 - pf;
 			final double xf  = (xf0  * ppf) + (xf1  * pf);
 			final double zf  = (zf0  * ppf) + (zf1  * pf);
-			final double uf  = (uf0  * ppf) + (uf1  * pf);
-			final double vf  = (vf0  * ppf) + (vf1  * pf);
-			final double rf  = (rf0  * ppf) + (rf1  * pf);
-			final double gf  = (gf0  * ppf) + (gf1  * pf);
-			final double bf  = (bf0  * ppf) + (bf1  * pf);
-			final double af  = (af0  * ppf) + (af1  * pf);
-			final double nxf = (nxf0 * ppf) + (nxf1 * pf);
-			final double nyf = (nyf0 * ppf) + (nyf1 * pf);
-			final double nzf = (nzf0 * ppf) + (nzf1 * pf);
+
+			if (isVaryingTextureCoordinates)
+			{
+				ud  = (ud0  * ppd) + (ud1  * pd);
+				vd  = (vd0  * ppd) + (vd1  * pd);
+				uf  = (uf0  * ppf) + (uf1  * pf);
+				vf  = (vf0  * ppf) + (vf1  * pf);
+			}
+			if (isVaryingColor)
+			{
+				rd  = (rd0  * ppd) + (rd1  * pd);
+				gd  = (gd0  * ppd) + (gd1  * pd);
+				bd  = (bd0  * ppd) + (bd1  * pd);
+				ad  = (ad0  * ppd) + (ad1  * pd);
+				rf  = (rf0  * ppf) + (rf1  * pf);
+				gf  = (gf0  * ppf) + (gf1  * pf);
+				bf  = (bf0  * ppf) + (bf1  * pf);
+				af  = (af0  * ppf) + (af1  * pf);
+			}
+			if (isVaryingNormal)
+			{
+				nxd = (nxd0 * ppd) + (nxd1 * pd);
+				nyd = (nyd0 * ppd) + (nyd1 * pd);
+				nzd = (nzd0 * ppd) + (nzd1 * pd);
+				nxf = (nxf0 * ppf) + (nxf1 * pf);
+				nyf = (nyf0 * ppf) + (nyf1 * pf);
+				nzf = (nzf0 * ppf) + (nzf1 * pf);
+			}
 
 			final double dx = xf - xd;
 			for (long x = Math.round(Math.min(xd, xf)); x <= Math.max(xd, xf); ++x)
@@ -181,21 +241,237 @@ public abstract class PolygonRenderer extends Renderer
 				fi.x = x;
 				fi.y = y;
 				fi.z = (p * zd) + (pp * zf);
-				fi.u = (p * ud) + (pp * uf);
-				fi.v = (p * vd) + (pp * vf);
-				fi.r = (p * rd) + (pp * rf);
-				fi.g = (p * gd) + (pp * gf);
-				fi.b = (p * bd) + (pp * bf);
-				fi.a = (p * ad) + (pp * af);
-
-				fi.ni = (p * nxd) + (pp * nxf);
-				fi.nj = (p * nyd) + (pp * nyf);
-				fi.nk = (p * nzd) + (pp * nzf);
+				if (isVaryingTextureCoordinates)
+				{
+					fi.u = (p * ud) + (pp * uf);
+					fi.v = (p * vd) + (pp * vf);
+				}
+				if (isVaryingColor)
+				{
+					fi.r = (p * rd) + (pp * rf);
+					fi.g = (p * gd) + (pp * gf);
+					fi.b = (p * bd) + (pp * bf);
+					fi.a = (p * ad) + (pp * af);
+				}
+				if (isVaryingNormal)
+				{
+					fi.ni = (p * nxd) + (pp * nxf);
+					fi.nj = (p * nyd) + (pp * nyf);
+					fi.nk = (p * nzd) + (pp * nzf);
+				}
 
 				framebuffer.write(this, fi);
 			}
 		}
 	}
+	/**
+	 * The number of fractional bits in a fixed-point window coordinate.
+	 */
+	private static final int SUBPIXEL_BITS = 4;
+	/**
+	 * The number of subpixel steps per pixel.
+	 */
+	private static final int SUBPIXEL_STEPS = 1 << SUBPIXEL_BITS;
+	/**
+	 * The offsets of the three edge functions at each sample position, relative to their
+	 * values at the pixel's center.
+	 */
+	private final long sampleEdges0[] = new long[Framebuffer.MAX_SAMPLE_COUNT];
+	private final long sampleEdges1[] = new long[Framebuffer.MAX_SAMPLE_COUNT];
+	private final long sampleEdges2[] = new long[Framebuffer.MAX_SAMPLE_COUNT];
+	/**
+	 * Perform scan conversion on a triangle whose vertices are snapped to 28.4 fixed-point
+	 * window coordinates. Pixel centers are tested against the triangle's three edge functions,
+	 * which are stepped with integer additions. A pixel center lying exactly on an edge is
+	 * only covered by the triangle if that edge is a top or left edge, so pixels on an edge
+	 * shared by two triangles are written exactly once.
+	 * <p>
+	 * If the framebuffer is multisampled, the edge functions are tested at each of a pixel's
+	 * sample positions instead, using the same fill rule, and the pixel is written with the
+	 * resulting coverage mask. The fragment's values are interpolated once, at the pixel's
+	 * center, even if only some of its samples are covered.
+	 * @see http://msdn.microsoft.com/en-us/library/windows/desktop/cc627092.aspx#Triangle
+	 * @param f0 the first fragment that will make one point of a triangle.
+	 * @param f1 the second fragment that will make one point of a triangle.
+	 * @param f2 the third fragment that will make one point of a triangle.
+	 */
+	protected final void scanConversionFixedPoint(Fragment f0, Fragment f1, Fragment f2)
+	{
+		// Snap the vertices to the subpixel grid.
+		long x0 = Math.round(f0.x * SUBPIXEL_STEPS), y0 = Math.round(f0.y * SUBPIXEL_STEPS);
+		long x1 = Math.round(f1.x * SUBPIXEL_STEPS), y1 = Math.round(f1.y * SUBPIXEL_STEPS);
+		long x2 = Math.round(f2.x * SUBPIXEL_STEPS), y2 = Math.round(f2.y * SUBPIXEL_STEPS);
+
+		// Twice the triangle's signed area. Degenerate triangles cover no pixels, and the
+		// vertices are reordered so that the interior lies on the positive side of each edge.
+		long area = (x1 - x0) * (y2 - y0) - (y1 - y0) * (x2 - x0);
+		if (area == 0)
+			return;
+		else if (area < 0)
+		{
+			final Fragment f = f1;  f1 = f2;  f2 = f;
+			long t = x1;  x1 = x2;  x2 = t;
+			t = y1;  y1 = y2;  y2 = t;
+			area = -area;
+		}
+
+		// The triangle's bounding box in pixels, limited to the framebuffer. When multisampling,
+		// it is grown by half a pixel to include pixels whose samples, but not whose centers,
+		// may be covered.
+		final int samples = framebuffer.getSampleCount();
+		final long margin = samples > 1 ? SUBPIXEL_STEPS / 2 : 0;
+		final int xmin = (int)Math.max(0, (Math.min(x0, Math.min(x1, x2)) - margin + SUBPIXEL_STEPS - 1) >> SUBPIXEL_BITS);
+		final int ymin = (int)Math.max(0, (Math.min(y0, Math.min(y1, y2)) - margin + SUBPIXEL_STEPS - 1) >> SUBPIXEL_BITS);
+		final int xmax = (int)Math.min(framebuffer.getWidth()  - 1, (Math.max(x0, Math.max(x1, x2)) + margin) >> SUBPIXEL_BITS);
+		final int ymax = (int)Math.min(framebuffer.getHeight() - 1, (Math.max(y0, Math.max(y1, y2)) + margin) >> SUBPIXEL_BITS);
+		if (xmin > xmax || ymin > ymax)
+			return;
+
+		// The edge function increments for a one pixel step along either axis.
+		final long dx12 = (y1 - y2) * SUBPIXEL_STEPS, dy12 = (x2 - x1) * SUBPIXEL_STEPS;
+		final long dx20 = (y2 - y0) * SUBPIXEL_STEPS, dy20 = (x0 - x2) * SUBPIXEL_STEPS;
+		final long dx01 = (y0 - y1) * SUBPIXEL_STEPS, dy01 = (x1 - x0) * SUBPIXEL_STEPS;
+
+		// The fill rule's biases. Edges that are neither top nor left edges exclude the pixel
+		// centers that lie exactly on them.
+		final long bias0 = isTopLeftEdge(x1, y1, x2, y2) ? 0 : -1;
+		final long bias1 = isTopLeftEdge(x2, y2, x0, y0) ? 0 : -1;
+		final long bias2 = isTopLeftEdge(x0, y0, x1, y1) ? 0 : -1;
+
+		// Evaluate the edge functions at the bounding box's first pixel center.
+		final long px = (long)xmin << SUBPIXEL_BITS;
+		final long py = (long)ymin << SUBPIXEL_BITS;
+		long e0row = (x2 - x1) * (py - y1) - (y2 - y1) * (px - x1);
+		long e1row = (x0 - x2) * (py - y2) - (y0 - y2) * (px - x2);
+		long e2row = (x1 - x0) * (py - y0) - (y1 - y0) * (px - x0);
+
+		final double invarea = 1.0 / area;
+		framebuffer.getVariableRateShading().beginPrimitive();
+		final Fragment fi = new Fragment();
+		if (isVaryingTextureCoordinates)
+			setTextureCoordinateDerivatives(fi, f0, f1, f2);
+
+		// The edge function offsets at each sample position. Sample positions are given in
+		// sixteenths of a pixel, which is the subpixel grid's precision. The depth derivatives
+		// are needed to extrapolate the depth at each sample.
+		if (samples > 1)
+		{
+			final int positions[] = framebuffer.getSamplePositions();
+			for (int s = 0; s < samples; ++s)
+			{
+				final long sx = (positions[2 * s] * SUBPIXEL_STEPS) / 16;
+				final long sy = (positions[2 * s + 1] * SUBPIXEL_STEPS) / 16;
+				sampleEdges0[s] = (y1 - y2) * sx + (x2 - x1) * sy;
+				sampleEdges1[s] = (y2 - y0) * sx + (x0 - x2) * sy;
+				sampleEdges2[s] = (y0 - y1) * sx + (x1 - x0) * sy;
+			}
+			fi.dzdx = ((dx12 * (f0.z - f2.z)) + (dx20 * (f1.z - f2.z))) * invarea;
+			fi.dzdy = ((dy12 * (f0.z - f2.z)) + (dy20 * (f1.z - f2.z))) * invarea;
+		}
+
+		for (int y = ymin; y <= ymax; ++y)
+		{
+			long e0 = e0row, e1 = e1row, e2 = e2row;
+			for (int x = xmin; x <= xmax; ++x)
+			{
+				int coverage = 0;
+				if (samples > 1)
+				{
+					for (int s = 0; s < samples; ++s)
+					{
+						if ((e0 + sampleEdges0[s] + bias0 | e1 + sampleEdges1[s] + bias1 | e2 + sampleEdges2[s] + bias2) >= 0)
+							coverage |= 1 << s;
+					}
+				}
+				else if ((e0 + bias0 | e1 + bias1 | e2 + bias2) >= 0)
+					coverage = 1;
+
+				if (coverage != 0)
+				{
+					// The barycentric weights of the pixel center.
+					final double w0 = e0 * invarea;
+					final double w1 = e1 * invarea;
+					final double w2 = 1.0 - w0 - w1;
+
+					fi.x = x;
+					fi.y = y;
+					fi.z = (w0 * f0.z) + (w1 * f1.z) + (w2 * f2.z);
+					if (isVaryingTextureCoordinates)
+					{
+						fi.u = (w0 * f0.u) + (w1 * f1.u) + (w2 * f2.u);
+						fi.v = (w0 * f0.v) + (w1 * f1.v) + (w2 * f2.v);
+					}
+					if (isVaryingColor)
+					{
+						fi.r = (w0 * f0.r) + (w1 * f1.r) + (w2 * f2.r);
+						fi.g = (w0 * f0.g) + (w1 * f1.g) + (w2 * f2.g);
+						fi.b = (w0 * f0.b) + (w1 * f1.b) + (w2 * f2.b);
+						fi.a = (w0 * f0.a) + (w1 * f1.a) + (w2 * f2.a);
+					}
+					if (isVaryingNormal)
+					{
+						fi.ni = (w0 * f0.ni) + (w1 * f1.ni) + (w2 * f2.ni);
+						fi.nj = (w0 * f0.nj) + (w1 * f1.nj) + (w2 * f2.nj);
+						fi.nk = (w0 * f0.nk) + (w1 * f1.nk) + (w2 * f2.nk);
+					}
+
+					if (samples > 1)
+						framebuffer.write(this, fi, x, y, coverage);
+					else
+						framebuffer.write(this, fi, x, y);
+				}
+				e0 += dx12;
+				e1 += dx20;
+				e2 += dx01;
+			}
+			e0row += dy12;
+			e1row += dy20;
+			e2row += dy01;
+		}
+	}
+	/**
+	 * Set the derivatives of a triangle's texture coordinates with respect to its window
+	 * coordinates. Texture coordinates are interpolated linearly in window space, so these are
+	 * constant across the triangle, and equal to the differences between neighbouring pixels.
+	 * @param fi the fragment whose derivatives are set.
+	 * @param f0 the first fragment that will make one point of a triangle.
+	 * @param f1 the second fragment that will make one point of a triangle.
+	 * @param f2 the third fragment that will make one point of a triangle.
+	 */
+	private static void setTextureCoordinateDerivatives
+	(
+		final Fragment fi,
+		final Fragment f0,
+		final Fragment f1,
+		final Fragment f2
+	)
+	{
+		final double dx1 = f1.x - f0.x, dy1 = f1.y - f0.y;
+		final double dx2 = f2.x - f0.x, dy2 = f2.y - f0.y;
+		final double area = (dx1 * dy2) - (dx2 * dy1);
+		if (area == 0.0)
+		{
+			fi.dudx = fi.dvdx = fi.dudy = fi.dvdy = 0.0;
+			return;
+		}
+
+		final double du1 = f1.u - f0.u, du2 = f2.u - f0.u;
+		final double dv1 = f1.v - f0.v, dv2 = f2.v - f0.v;
+		fi.dudx = ((du1 * dy2) - (du2 * dy1)) / area;
+		fi.dvdx = ((dv1 * dy2) - (dv2 * dy1)) / area;
+		fi.dudy = ((du2 * dx1) - (du1 * dx2)) / area;
+		fi.dvdy = ((dv2 * dx1) - (dv1 * dx2)) / area;
+	}
+	/**
+	 * Return true if the edge going from <xa, ya> to <xb, yb> is a top or left edge of a
+	 * triangle whose interior lies on the positive side of its edges, false otherwise.
+	 * Since a shared edge has opposite directions in its two triangles, exactly one of them
+	 * will consider it a top or left edge.
+	 */
+	private static boolean isTopLeftEdge(final long xa, final long ya, final long xb, final long yb)
+	{
+		return (ya == yb && xb > xa) || yb < ya;
+	}
 	/**
 	 * @see Renderer#fragmentProgram.
 	 */
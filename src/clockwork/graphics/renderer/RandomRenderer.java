@@ -23,6 +23,8 @@
  */
 package clockwork.graphics.renderer;
 
+import java.util.EnumSet;
+
 import clockwork.graphics.Vertex;
 import clockwork.graphics.color.ColorRGBA;
 
@@ -33,7 +35,7 @@ public final class RandomRenderer extends PolygonRenderer
 	 */
 	protected RandomRenderer()
 	{
-		super(Renderer.Type.Random);
+		super(Renderer.Type.Random, EnumSet.of(Renderer.Varying.Color));
 	}
 	/**
 	 * A counter used to generate a new color after 3 vertices.
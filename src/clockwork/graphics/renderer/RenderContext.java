@@ -72,6 +72,14 @@ public final class RenderContext
 	 * The PROJECTION transformation matrix.
 	 */
 	private final Matrix4 PROJECTION = new Matrix4();
+	/**
+	 * The versions of the VIEW and PROJECTION transformation matrices. A new version is
+	 * drawn from a counter shared by all contexts each time either matrix is set, so two
+	 * matrices with the same version are the same matrix.
+	 */
+	private static int Versions = 0;
+	private int VIEWVersion = ++Versions;
+	private int PROJECTIONVersion = ++Versions;
 	/**
 	 * Instantiate a RenderContext that is attached to a scene viewer.
 	 */
@@ -94,6 +102,14 @@ public final class RenderContext
 	{
 		this.viewpoint.setXYZ(viewpoint.getXYZ());
 	}
+	/**
+	 * Get the position of the viewer that owns this context. Renderables are transformed
+	 * relative to this position.
+	 */
+	public Point3f getViewerPosition()
+	{
+		return viewer.getPosition();
+	}
 	/**
 	 * Get the VIEW transformation matrix.
 	 */
@@ -107,6 +123,14 @@ public final class RenderContext
 	public void setVIEW(final Matrix4 view)
 	{
 		VIEW.copy(view);
+		VIEWVersion = ++Versions;
+	}
+	/**
+	 * Get the version of the VIEW transformation matrix.
+	 */
+	public int getVIEWVersion()
+	{
+		return VIEWVersion;
 	}
 	/**
 	 * Get the PROJECTION transformation matrix.
@@ -121,6 +145,14 @@ public final class RenderContext
 	public void setPROJECTION(final Matrix4 projection)
 	{
 		PROJECTION.copy(projection);
+		PROJECTIONVersion = ++Versions;
+	}
+	/**
+	 * Get the version of the PROJECTION transformation matrix.
+	 */
+	public int getPROJECTIONVersion()
+	{
+		return PROJECTIONVersion;
 	}
 	/**
 	 * Get the viewer's viewport.
@@ -23,9 +23,12 @@
  */
 package clockwork.graphics.renderer;
 
+import java.awt.Rectangle;
+
 import clockwork.graphics.Material;
 import clockwork.graphics.Model3D;
 import clockwork.graphics.PolygonFace;
+import clockwork.scene.SceneGraph;
 import clockwork.system.RuntimeOptions;
 import clockwork.types.math.Matrix4;
 
@@ -48,6 +51,26 @@ public final class Renderable implements Comparable<Renderable>
 	 * object space to world space.
 	 */
 	protected final Matrix4 CMTM = new Matrix4();
+	/**
+	 * The inverse transpose of the CMTM, used to transform surface normals from object
+	 * space to world space.
+	 */
+	protected final Matrix4 NORMAL = new Matrix4();
+	/**
+	 * The scene graph node the renderable was created from, or null if it was not created
+	 * from a node, and the sum of the node's and the model's revisions at the time. The node
+	 * identifies the renderable from one frame to the next. Both revisions only increase,
+	 * so their sum changes whenever either of them does.
+	 */
+	protected final SceneGraph.Node source;
+	protected final int revision;
+	/**
+	 * The renderable's bounding rectangle in window coordinates, and the area of that
+	 * rectangle, once its vertices have been transformed. The area is infinite if the
+	 * renderable has vertices behind the viewpoint.
+	 */
+	protected final Rectangle bounds = new Rectangle();
+	protected double projectedArea = Double.POSITIVE_INFINITY;
 	/**
 	 * Instantiate a Renderable with a given model and MODEL transformation matrix.
 	 * @param model the model to render.
@@ -55,19 +78,51 @@ public final class Renderable implements Comparable<Renderable>
 	 */
 	public Renderable(final Model3D model, final Matrix4 CMTM)
 	{
+		this(model, CMTM, CMTM != null ? Matrix4.normal(CMTM) : null);
+	}
+	/**
+	 * Instantiate a Renderable with a given model, MODEL transformation matrix and its
+	 * precalculated NORMAL transformation matrix.
+	 * @param model the model to render.
+	 * @param CMTM the model's current MODEL transformation matrix.
+	 * @param NORMAL the inverse transpose of the model's current MODEL transformation matrix.
+	 */
+	public Renderable(final Model3D model, final Matrix4 CMTM, final Matrix4 NORMAL)
+	{
+		this(model, CMTM, NORMAL, null);
+	}
+	/**
+	 * Instantiate a Renderable created from a given scene graph node, with a given model,
+	 * MODEL transformation matrix and its precalculated NORMAL transformation matrix.
+	 * @param model the model to render.
+	 * @param CMTM the model's current MODEL transformation matrix.
+	 * @param NORMAL the inverse transpose of the model's current MODEL transformation matrix.
+	 * @param source the node the renderable is created from.
+	 */
+	public Renderable(final Model3D model, final Matrix4 CMTM, final Matrix4 NORMAL, final SceneGraph.Node source)
+	{
+		this.source = source;
+		this.revision = (source != null ? source.getRevision() : 0) + model.getRevision();
 		this.faces = model.getMesh().getFaces();
 		this.material = model.getMaterial();
 
-		if (RuntimeOptions.EnableMODEL && CMTM != null)
+		if (RuntimeOptions.EnableMODEL && CMTM != null && NORMAL != null)
+		{
 			this.CMTM.copy(CMTM);
+			this.NORMAL.copy(NORMAL);
+		}
 	}
 	/**
-	 * TODO Implement me.
-	 * Compare two Renderable objects.
+	 * Compare two Renderable objects. Renderables are grouped by material so that those
+	 * sharing a material, such as models packed into a texture atlas, are rendered one
+	 * after the other.
 	 */
 	@Override
 	public int compareTo(final Renderable that)
 	{
-		return 0;
+		final int a = System.identityHashCode(this.material);
+		final int b = System.identityHashCode(that.material);
+
+		return a < b ? -1 : (a > b ? 1 : 0);
 	}
 }
@@ -25,24 +25,28 @@ package clockwork.graphics.renderer;
 
 import java.awt.Dimension;
 import java.awt.Point;
+import java.awt.Rectangle;
 import java.awt.geom.Point2D;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.EnumSet;
 import java.util.PriorityQueue;
 
 import clockwork.graphics.Fragment;
 import clockwork.graphics.Framebuffer;
 import clockwork.graphics.Material;
 import clockwork.graphics.PolygonFace;
+import clockwork.graphics.TemporalAccumulation;
 import clockwork.graphics.Vertex;
 import clockwork.graphics.camera.Viewport;
 import clockwork.graphics.color.ColorRGBA;
 import clockwork.graphics.vsd.Clipping;
 import clockwork.graphics.vsd.Culling;
+import clockwork.graphics.vsd.LightCulling;
 import clockwork.physics.lighting.LightEmitter;
 import clockwork.system.Debug;
 import clockwork.system.RuntimeOptions;
 import clockwork.system.Services;
-import clockwork.types.ConcurrentList;
 import clockwork.types.math.Matrix4;
 import clockwork.types.math.Point3f;
 import clockwork.types.math.Point4f;
@@ -121,6 +125,16 @@ public abstract class Renderer
 			return title;
 		}
 	}
+	/**
+	 * The interpolated vertex attributes (varyings) that a renderer's fragment program may
+	 * read. The window position and depth value are always interpolated.
+	 */
+	public static enum Varying
+	{
+		TextureCoordinates,
+		Color,
+		Normal
+	}
 	/**
 	 * The type of renderer.
 	 */
@@ -129,10 +143,18 @@ public abstract class Renderer
 	 * The default render mode.
 	 */
 	private final Renderer.Mode mode;
+	/**
+	 * The varyings read by this renderer. Attributes that are not read are neither
+	 * transformed by the vertex stage nor interpolated by the rasteriser.
+	 */
+	private final EnumSet<Renderer.Varying> varyings;
+	protected final boolean isVaryingTextureCoordinates;
+	protected final boolean isVaryingColor;
+	protected final boolean isVaryingNormal;
 	/**
 	 * The framebuffer where the output of the render operation is stored.
 	 */
-	protected final Framebuffer framebuffer = Services.Graphics.getFramebuffer();
+	protected final Framebuffer framebuffer;
 	/**
 	 * The Renderable that's currently being processed by the renderer.
 	 */
@@ -146,13 +168,38 @@ public abstract class Renderer
 	 */
 	private final Point2D.Double VIEWPORT = new Point2D.Double(1.0, 1.0);
 	/**
-	 * The current set of lights in the scene.
+	 * The current set of lights in the scene, whose uniforms are set for the current frame.
+	 */
+	protected LightEmitter lights[] = new LightEmitter[0];
+	/**
+	 * Is tiled light culling enabled for the frame being rendered? If it is not, the lights
+	 * are not assigned to the framebuffer's tiles.
+	 */
+	protected boolean isLightCullingEnabled = RuntimeOptions.EnableTiledLightCulling;
+	/**
+	 * The assignment of the current set of lights to the framebuffer's tiles.
 	 */
-	protected ConcurrentList<LightEmitter> lights = null;
+	protected final LightCulling lightCulling = new LightCulling();
+	/**
+	 * The renderables' transformed vertices, which are reused from one frame to the next.
+	 * The cache is shared by all renderers since its entries are keyed by renderer type.
+	 */
+	private static final VertexCache vertexCache = new VertexCache();
+	/**
+	 * The area of the current renderable's bounding rectangle in window coordinates, in pixels.
+	 * It is infinite if the renderable has vertices behind the viewpoint.
+	 */
+	protected double projectedArea = Double.POSITIVE_INFINITY;
+	/**
+	 * The data of the transformation from window coordinates to world space, which is used
+	 * to find a fragment's position in the lights' shadow maps, or null if shadows are disabled.
+	 */
+	protected double WINDOWTOWORLD[] = null;
 	/**
 	 * The current matrices.
 	 */
 	protected static Matrix4 VIEW = null;
+	protected static Matrix4 VIEWNORMAL = null;
 	protected static Matrix4 MODEL = null;
 	protected static Matrix4 NORMAL = null;
 	protected static Matrix4 MODELVIEW = null;
@@ -168,14 +215,53 @@ public abstract class Renderer
 	 */
 	protected static Material inputMaterial = null;
 	/**
-	 * The default constructor. Instantiate a Renderer with a given render mode.
+	 * The default constructor. Instantiate a Renderer with a given render mode, that reads
+	 * all varyings.
 	 * @param type the renderer type.
 	 * @param mode the default render mode.
 	 */
 	protected Renderer(final Renderer.Type type, final Renderer.Mode mode)
 	{
+		this(type, mode, EnumSet.allOf(Renderer.Varying.class));
+	}
+	/**
+	 * Instantiate a Renderer with a given render mode, that reads a given set of varyings.
+	 * @param type the renderer type.
+	 * @param mode the default render mode.
+	 * @param varyings the varyings read by the renderer's fragment program.
+	 */
+	protected Renderer
+	(
+		final Renderer.Type type,
+		final Renderer.Mode mode,
+		final EnumSet<Renderer.Varying> varyings
+	)
+	{
+		this(type, mode, varyings, Services.Graphics.getFramebuffer());
+	}
+	/**
+	 * Instantiate a Renderer with a given render mode, that reads a given set of varyings and
+	 * stores its output in a given framebuffer instead of the graphics subsystem's.
+	 * @param type the renderer type.
+	 * @param mode the default render mode.
+	 * @param varyings the varyings read by the renderer's fragment program.
+	 * @param framebuffer the framebuffer where the renderer's output is stored.
+	 */
+	protected Renderer
+	(
+		final Renderer.Type type,
+		final Renderer.Mode mode,
+		final EnumSet<Renderer.Varying> varyings,
+		final Framebuffer framebuffer
+	)
+	{
+		this.framebuffer = framebuffer;
 		this.type = type;
 		this.mode = mode;
+		this.varyings = EnumSet.copyOf(varyings);
+		this.isVaryingTextureCoordinates = varyings.contains(Renderer.Varying.TextureCoordinates);
+		this.isVaryingColor = varyings.contains(Renderer.Varying.Color);
+		this.isVaryingNormal = varyings.contains(Renderer.Varying.Normal);
 	}
 	/**
 	 * Get the renderer's type.
@@ -191,6 +277,13 @@ public abstract class Renderer
 	{
 		return mode;
 	}
+	/**
+	 * Return the varyings read by this renderer.
+	 */
+	public EnumSet<Renderer.Varying> getVaryings()
+	{
+		return EnumSet.copyOf(varyings);
+	}
 	/**
 	 * Prepare the renderer for use. Some renderers change different parameters around
 	 * the subsystem before they begin rendering. For example, the depth renderer changes
@@ -212,23 +305,74 @@ public abstract class Renderer
 		if (context != null)
 		{
 			final long t0 = System.currentTimeMillis();
+			isLightCullingEnabled = RuntimeOptions.EnableTiledLightCulling;
+
+			// Set the VIEWPORT transformation.
+			final Viewport viewport = context.getViewport();
+			if (viewport != null)
+			{
+				final Dimension resolution = framebuffer.getResolution();
+				VIEWPORT.x = resolution.width * viewport.width * 0.5;
+				VIEWPORT.y = resolution.height * viewport.height * 0.5;
+			}
 
 			// Set the matrices that are independent of the model.
 			VIEW = context.getVIEW();
 			PROJECTION = context.getPROJECTION();
 			VIEWPROJECTION = PROJECTION.multiply(VIEW);
 
+			// When frames are accumulated over time, the PROJECTION is jittered by a different
+			// subpixel offset in each frame.
+			final Point3f viewerPosition = context.getViewerPosition();
+			if (framebuffer.isTemporallyAccumulated())
+			{
+				final TemporalAccumulation accumulation = framebuffer.getTemporalAccumulation();
+				accumulation.update(VIEWPROJECTION, viewerPosition, VIEWPORT.x, VIEWPORT.y);
+				PROJECTION = accumulation.getJitter().multiply(PROJECTION);
+				VIEWPROJECTION = PROJECTION.multiply(VIEW);
+			}
+
+			// Static renderables reuse their transformed vertices, unless the PROJECTION is
+			// jittered differently in each frame.
+			vertexCache.begin
+			(
+				type,
+				context.getVIEWVersion(),
+				context.getPROJECTIONVersion(),
+				VIEWPORT.x,
+				VIEWPORT.y,
+				!framebuffer.isTemporallyAccumulated()
+			);
+
+			// The inverse transpose of a MODELVIEW transformation is the product of the inverse
+			// transposes of the VIEW and MODEL transformations. The VIEW's is calculated once
+			// per frame while each Renderable carries its own, cached by its scene object.
+			VIEWNORMAL = Matrix4.normal(VIEW);
+
 			// Set the viewer's viewpoint (position).
 			this.viewpoint = context.getViewpoint();
 
-			// Set the VIEWPORT transformation.
-			final Viewport viewport = context.getViewport();
-			if (viewport != null)
+			// The renderables' CMTMs are relative to the viewer. Undo the viewport transformation,
+			// the VIEWPROJECTION and that offset to convert window coordinates to world space.
+			if (RuntimeOptions.EnableShadows)
 			{
-				final Dimension resolution = framebuffer.getResolution();
-				VIEWPORT.x = resolution.width * viewport.width * 0.5;
-				VIEWPORT.y = resolution.height * viewport.height * 0.5;
+				final Matrix4 WINDOWTONDC = new Matrix4
+				(
+					new double[]
+					{
+						1.0 / VIEWPORT.x,              0.0, 0.0, -1.0,
+						             0.0, 1.0 / VIEWPORT.y, 0.0, -1.0,
+						             0.0,              0.0, 1.0,  0.0,
+						             0.0,              0.0, 0.0,  1.0
+					}
+				);
+				WINDOWTOWORLD = Matrix4.translate(viewerPosition)
+				.multiply(Matrix4.inverse(VIEWPROJECTION))
+				.multiply(WINDOWTONDC)
+				.getData();
 			}
+			else
+				WINDOWTOWORLD = null;
 
 			// Set debug variables.
 			Debug.PolygonCount.set(0);
@@ -236,87 +380,294 @@ public abstract class Renderer
 
 			// Get the queue of renderables.
 			final RenderProcessingQueue queue = context.getRenderProcessingQueue();
-			if (!queue.isEmpty())
-			{
-//FIXME				Framebuffer.READWRITE_LOCK.lock();
+//FIXME			Framebuffer.READWRITE_LOCK.lock();
 
-				// Set the lights.
-				lights = queue.getLightEmitters();
-				final PriorityQueue<Renderable> renderables = queue.getRenderables();
-				while (!renderables.isEmpty())
+			// Set the lights.
+			lights = queue.getLightEmitters().toArray(new LightEmitter[0]);
+			final PriorityQueue<Renderable> renderables = queue.getRenderables();
+
+			// Only the regions damaged since the previous frame are rendered again.
+			final DamageTracking damageTracking = framebuffer.getDamageTracking();
+			damageTracking.begin(this, framebuffer, VIEW, context.getPROJECTION(), viewerPosition);
+
+			// Update the lights' shadow maps. A map is only rendered again if its light or
+			// any of the shadow casters have moved since it was last rendered.
+			final boolean isShadowMapUpdated[] = new boolean[lights.length];
+			if (RuntimeOptions.EnableShadows)
+			{
+				for (int l = 0; l < lights.length; ++l)
 				{
-					// Get the renderable at the top of the queue.
-					currentRenderable = renderables.peek();
+					final LightEmitter light = lights[l];
+					final ShadowMap shadowMap = light.getShadowMap();
+					if (shadowMap != null)
+					{
+						isShadowMapUpdated[l] = shadowMap.update
+						(
+							light.getEntity().getPosition(),
+							light.getEntity().getOrientation(),
+							RuntimeOptions.ShadowMapResolution,
+							renderables,
+							viewerPosition
+						);
+					}
+				}
+			}
 
-					// Set the material attributes.
-					setMaterial(currentRenderable.material);
+			// Set the lights' uniforms, which remain constant for the whole frame.
+			for (int l = 0; l < lights.length; ++l)
+			{
+				lights[l].setUniforms();
+				damageTracking.update(lights[l], isShadowMapUpdated[l]);
+			}
 
-					// Setup the NORMAL, MODEL, MODELVIEW and MODELVIEWPROJECTION transformations.
-					MODEL = currentRenderable.CMTM;
-					MODELVIEW = VIEW.multiply(MODEL);
-					NORMAL = Matrix4.inverse(MODELVIEW).transpose();
-					MODELVIEWPROJECTION = VIEWPROJECTION.multiply(MODEL);
+			// Assign the lights to tiles.
+			if (isLightCullingEnabled)
+				lightCulling.assign(lights, framebuffer.getWidth(), framebuffer.getHeight());
 
-					// Update debug variables.
-					Debug.PolygonCount.getAndAdd(currentRenderable.faces.length);
+			// Find the renderables' bounds. Only the renderables that have changed since the
+			// previous frame are transformed, and they damage their previous and current bounds.
+			final Renderable ordered[] = new Renderable[renderables.size()];
+			final VertexCache.Entry transformed[] = new VertexCache.Entry[ordered.length];
+			final Rectangle bounds[] = new Rectangle[ordered.length];
+			for (int i = 0; i < ordered.length; ++i)
+			{
+				ordered[i] = renderables.remove();
+				Debug.PolygonCount.getAndAdd(ordered[i].faces.length);
+				vertexCache.keep(ordered[i]);
 
-					// The potentially-visible vertex stream.
-					final ArrayList<Vertex> potentiallyVisibleVertices = new ArrayList<Vertex>();
+				bounds[i] = damageTracking.getBounds(ordered[i]);
+				if (bounds[i] == null)
+				{
+					transformed[i] = transform(ordered[i]);
+					damageTracking.update(ordered[i]);
+					bounds[i] = ordered[i].bounds;
+				}
+			}
 
-					for (final PolygonFace face : currentRenderable.faces)
+			// Clear the damaged region, then render the renderables that overlap it. A frame
+			// without any damage is left as is.
+			final Rectangle damage = damageTracking.end();
+			if (!damage.isEmpty())
+			{
+				framebuffer.clear(damage);
+				for (int i = 0; i < ordered.length; ++i)
+				{
+					if (bounds[i].intersects(damage))
 					{
-						final Vertex inputVertices[] = face.getVertices();
-						final Point2D.Double uvcoords[] = face.getTextureCoordinates();
-						if (inputVertices != null)
-						{
-							for (int i = 0; i < inputVertices.length; ++i)
-							{
-								final Vertex input = inputVertices[i];
-								final Vertex output = new Vertex(input);
-
-								// Apply the vertex program to each input vertex.
-								vertexProgram(input, output);
-
-								// Set the texture coordinates.
-								if (uvcoords != null)
-								{
-									output.u = uvcoords[i].x;
-									output.v = uvcoords[i].y;
-								}
-								potentiallyVisibleVertices.add(output);
-							}
-						}
+						final VertexCache.Entry entry = transformed[i] != null ? transformed[i] : transform(ordered[i]);
+						currentRenderable = ordered[i];
+						setRenderable(ordered[i]);
+
+						// Perform rasterisation on visible vertices. The backfaces are culled once
+						// and the remaining triangles are cached along with the vertices.
+						projectedArea = ordered[i].projectedArea;
+						if (entry.triangles == null)
+							entry.triangles = cull(entry.vertices);
+						rasterise(entry.vertices, entry.triangles);
 					}
+					transformed[i] = null;
+				}
 
-					// Apply clipping to discard vertices that are not in the viewing window.
-					final Vertex clippedVertices[] = Clipping.apply(potentiallyVisibleVertices);
+				// The framebuffer now contains the rendered scene. We can now apply our
+				// post-processing filters to it.
+				framebuffer.postProcess();
+			}
+			vertexCache.end();
+//FIXME			Framebuffer.READWRITE_LOCK.unlock();
+			Debug.MillisecondsPerFrame.set(System.currentTimeMillis() - t0);
+		}
+	}
+	/**
+	 * Set the material attributes and the transformations of a given renderable.
+	 * @param renderable the renderable.
+	 */
+	private void setRenderable(final Renderable renderable)
+	{
+		// Set the material attributes.
+		setMaterial(renderable.material);
+
+		// Setup the NORMAL, MODEL, MODELVIEW and MODELVIEWPROJECTION transformations.
+		MODEL = renderable.CMTM;
+		MODELVIEW = VIEW.multiply(MODEL);
+		NORMAL = VIEWNORMAL.multiply(renderable.NORMAL);
+		MODELVIEWPROJECTION = VIEWPROJECTION.multiply(MODEL);
+	}
+	/**
+	 * Return the cache entry that holds a renderable's clipped vertices in normalised device
+	 * coordinates, and set the renderable's bounds in window coordinates and its projected
+	 * area. The vertices are only transformed if they are not cached.
+	 * @param renderable the renderable to transform.
+	 * @return the cache entry that holds the renderable's transformed vertices.
+	 */
+	private VertexCache.Entry transform(final Renderable renderable)
+	{
+		VertexCache.Entry entry = vertexCache.get(renderable);
+		if (entry == null)
+		{
+			entry = vertexCache.put(renderable);
+			entry.vertices = transform(renderable, entry.bounds);
+			entry.projectedArea = projectedArea;
+		}
+		renderable.bounds.setBounds(entry.bounds);
+		renderable.projectedArea = entry.projectedArea;
+		return entry;
+	}
+	/**
+	 * Apply the vertex program to a renderable's vertices, then clip them and convert them
+	 * to normalised device coordinates. The renderable's bounds in window coordinates are
+	 * calculated along the way, and its projected area is stored in projectedArea.
+	 * @param renderable the renderable to transform.
+	 * @param bounds where the renderable's bounds are stored.
+	 * @return the renderable's clipped vertices, in normalised device coordinates.
+	 */
+	private Vertex[] transform(final Renderable renderable, final Rectangle bounds)
+	{
+		currentRenderable = renderable;
+		setRenderable(renderable);
+
+		// The potentially-visible vertex stream.
+		final ArrayList<Vertex> potentiallyVisibleVertices = new ArrayList<Vertex>();
+
+		for (final PolygonFace face : renderable.faces)
+		{
+			final Vertex inputVertices[] = face.getVertices();
+			final Point2D.Double uvcoords[] = face.getTextureCoordinates();
+			if (inputVertices != null)
+			{
+				for (int i = 0; i < inputVertices.length; ++i)
+				{
+					// Only copy the attributes that the renderer reads.
+					final Vertex input = inputVertices[i];
+					final Vertex output = new Vertex(input.position);
+					if (isVaryingColor)
+						output.color.copy(input.color);
+
+					// Apply the vertex program to each input vertex.
+					vertexProgram(input, output);
 
-					// Perform a perspective-divide and a viewport transformation on each clipped vertex.
-					for (final Vertex vertex : clippedVertices)
+					// Set the texture coordinates.
+					if (isVaryingTextureCoordinates && uvcoords != null)
 					{
-						final Point4f position = vertex.position;
-						final double w = position.w;
-
-						// Perform the perspective-divide which will convert the vertices from clipping
-						// coordinate space to normalised device coordinate space.
-						position.x /= w;
-						position.y /= w;
-						position.z /= w;
-						position.w  = 1.0;
+						output.u = uvcoords[i].x;
+						output.v = uvcoords[i].y;
 					}
+					potentiallyVisibleVertices.add(output);
+				}
+			}
+		}
+
+		// Apply clipping to discard vertices that are not in the viewing window.
+		final Vertex clippedVertices[] = Clipping.apply(potentiallyVisibleVertices);
+
+		// Perform a perspective-divide and a viewport transformation on each clipped vertex.
+		double xmin = Double.POSITIVE_INFINITY, xmax = Double.NEGATIVE_INFINITY;
+		double ymin = Double.POSITIVE_INFINITY, ymax = Double.NEGATIVE_INFINITY;
+		boolean isBehindViewpoint = false;
+		for (final Vertex vertex : clippedVertices)
+		{
+			final Point4f position = vertex.position;
+			final double w = position.w;
+			if (w <= 0.0)
+				isBehindViewpoint = true;
+
+			// Perform the perspective-divide which will convert the vertices from clipping
+			// coordinate space to normalised device coordinate space.
+			position.x /= w;
+			position.y /= w;
+			position.z /= w;
+			position.w  = 1.0;
+
+			// Track the renderable's bounds in normalised device coordinates.
+			xmin = Math.min(xmin, position.x);
+			xmax = Math.max(xmax, position.x);
+			ymin = Math.min(ymin, position.y);
+			ymax = Math.max(ymax, position.y);
+		}
+
+		// Calculate the renderable's bounds in window coordinates, and their area. The bounds
+		// are padded by a pixel, which covers the rounding of window coordinates to pixels and
+		// the half pixel that multisampled primitives may extend over.
+		if (isBehindViewpoint)
+		{
+			projectedArea = Double.POSITIVE_INFINITY;
+			bounds.setBounds(Integer.MIN_VALUE / 2, Integer.MIN_VALUE / 2, Integer.MAX_VALUE, Integer.MAX_VALUE);
+		}
+		else if (clippedVertices.length == 0)
+		{
+			projectedArea = 0.0;
+			bounds.setBounds(0, 0, 0, 0);
+		}
+		else
+		{
+			projectedArea = (xmax - xmin) * VIEWPORT.x * (ymax - ymin) * VIEWPORT.y;
+
+			final int x0 = (int)Math.floor((xmin + 1.0) * VIEWPORT.x) - 1;
+			final int y0 = (int)Math.floor((ymin + 1.0) * VIEWPORT.y) - 1;
+			final int x1 = (int)Math.ceil((xmax + 1.0) * VIEWPORT.x) + 2;
+			final int y1 = (int)Math.ceil((ymax + 1.0) * VIEWPORT.y) + 2;
+			bounds.setBounds(x0, y0, x1 - x0, y1 - y0);
+		}
+		return clippedVertices;
+	}
+	/**
+	 * Render a set of meshes, as seen through a given VIEWPROJECTION transformation, to the
+	 * renderer's framebuffer, which must have been cleared. Unlike apply, no lights, materials,
+	 * caches or post-processing filters are involved and no triangles are culled, which is
+	 * what an off-screen depth pass such as a shadow map needs. Triangles are clipped against
+	 * the near plane, so those that cross it are still rendered.
+	 * @param VIEWPROJECTION the VIEWPROJECTION transformation.
+	 * @param meshes the faces of each mesh.
+	 * @param MODELs the data of each mesh's MODEL transformation.
+	 */
+	final void render
+	(
+		final Matrix4 VIEWPROJECTION,
+		final ArrayList<PolygonFace[]> meshes,
+		final ArrayList<double[]> MODELs
+	)
+	{
+		final Dimension resolution = framebuffer.getResolution();
+		VIEWPORT.x = resolution.width * 0.5;
+		VIEWPORT.y = resolution.height * 0.5;
 
-					// Perform rasterisation on visible vertices.
-					rasterise(clippedVertices);
+		final ArrayList<Vertex> vertices = new ArrayList<Vertex>();
+		for (int m = 0; m < meshes.size(); ++m)
+		{
+			// The mesh's vertices in clipping coordinates.
+			MODELVIEWPROJECTION = VIEWPROJECTION.multiply(new Matrix4(MODELs.get(m)));
+			vertices.clear();
+			for (final PolygonFace face : meshes.get(m))
+			{
+				final Vertex inputVertices[] = face.getVertices();
+				if (inputVertices != null)
+				{
+					for (final Vertex input : inputVertices)
+					{
+						final Vertex output = new Vertex(input.position);
+						vertexProgram(input, output);
+						vertices.add(output);
+					}
+				}
+			}
 
-					// Remove the renderable from the queue.
-					renderables.remove();
+			// Perform a perspective-divide and a viewport transformation on each clipped
+			// triangle's vertices. The fragments are created from the vertices' positions
+			// since a clipped vertex may be shared by more than one triangle.
+			final Vertex clippedVertices[] = Clipping.applyNearPlane(vertices);
+			for (int i = 0; i + 2 < clippedVertices.length; i += 3)
+			{
+				final Fragment fragments[] = new Fragment[3];
+				for (int j = 0; j < 3; ++j)
+				{
+					final Point4f position = clippedVertices[i + j].position;
+					final Fragment fragment = new Fragment();
+					fragment.x = ((position.x / position.w) + 1.0) * VIEWPORT.x;
+					fragment.y = ((position.y / position.w) + 1.0) * VIEWPORT.y;
+					fragment.z = position.z / position.w;
+					fragments[j] = fragment;
 				}
-				// The framebuffer now contains the rendered scene. We can now apply our
-				// post-processing filters to it.
-				framebuffer.postProcess();
-//FIXME				Framebuffer.READWRITE_LOCK.unlock();
+				primitiveAssembly(fragments);
 			}
-			Debug.MillisecondsPerFrame.set(System.currentTimeMillis() - t0);
 		}
 	}
 	/**
@@ -325,8 +676,19 @@ public abstract class Renderer
 	 */
 	public final void rasterise(final Vertex vertices[])
 	{
-		// Convert each triplet of vertices into a set of fragments.
-		for (int i = 0; i < vertices.length; i += 3)
+		rasterise(vertices, cull(vertices));
+	}
+	/**
+	 * Perform backface culling on a stream of vertices, where each triplet of vertices is a
+	 * triangle, and return the offset of the first vertex of each triangle that is not
+	 * discarded.
+	 * @param vertices the vertices, in normalised device coordinates.
+	 */
+	private static int[] cull(final Vertex vertices[])
+	{
+		final int offsets[] = new int[vertices.length / 3];
+		int count = 0;
+		for (int i = 0; i + 2 < vertices.length; i += 3)
 		{
 			final Vertex triangle[] =
 			{
@@ -334,30 +696,41 @@ public abstract class Renderer
 				vertices[i + 1],
 				vertices[i + 2]
 			};
-
-			// Perform backface culling. If the polygon isn't discarded, convert its vertices into
-			// fragments and continue with the rasterisation process.
 			if (!Culling.isBackface(triangle))
+				offsets[count++] = i;
+		}
+		return Arrays.copyOf(offsets, count);
+	}
+	/**
+	 * Rasterise a given set of triangles from a stream of vertices.
+	 * @param vertices the vertices, in normalised device coordinates.
+	 * @param triangles the offset of the first vertex of each triangle to rasterise.
+	 */
+	private void rasterise(final Vertex vertices[], final int triangles[])
+	{
+		// Convert each triplet of vertices into a set of fragments.
+		for (final int i : triangles)
+		{
+			final Fragment fragments[] = new Fragment[]
 			{
-				final Fragment fragments[] = new Fragment[]
-				{
-					new Fragment(triangle[0], VIEWPORT.x, VIEWPORT.y),
-					new Fragment(triangle[1], VIEWPORT.x, VIEWPORT.y),
-					new Fragment(triangle[2], VIEWPORT.x, VIEWPORT.y),
-				};
+				new Fragment(vertices[i    ], VIEWPORT.x, VIEWPORT.y),
+				new Fragment(vertices[i + 1], VIEWPORT.x, VIEWPORT.y),
+				new Fragment(vertices[i + 2], VIEWPORT.x, VIEWPORT.y),
+			};
 
-				if (RuntimeOptions.RenderSurfaceNormals)
-				{
-					for (final Fragment f : fragments)
-						drawSurfaceNormal(f);
-				}
+			if (RuntimeOptions.RenderSurfaceNormals)
+			{
+				for (final Fragment f : fragments)
+					drawSurfaceNormal(f);
+			}
 
-				// Update debug variables.
-				Debug.RenderedPolygonCount.getAndAdd(1);
+			// Update debug variables.
+			Debug.RenderedPolygonCount.getAndAdd(1);
 
-				// Perform primitive assembly on the fragments.
-				primitiveAssembly(fragments);
-			}
+			// Apply the primitive program to the primitive's fragments, then perform
+			// primitive assembly on them.
+			primitiveProgram(fragments);
+			primitiveAssembly(fragments);
 		}
 	}
 	/**
@@ -367,6 +740,15 @@ public abstract class Renderer
 	 * @param fragments a set of 3 fragments that will create a primitive.
 	 */
 	public abstract void primitiveAssembly(final Fragment fragments[]);
+	/**
+	 * The primitive program is applied to the fragments created from a primitive's vertices,
+	 * once they are in window coordinates and before primitive assembly interpolates them.
+	 * Any attribute it sets is therefore calculated once per vertex instead of once per
+	 * fragment. The default primitive program does nothing.
+	 * @param fragments a set of fragments created from a primitive's vertices.
+	 */
+	protected void primitiveProgram(final Fragment fragments[])
+	{}
 	/**
 	 * The vertex program is responsible for transforming a single vertex from
 	 * model space to clip space, where it will be clipped and passed onto the
@@ -379,7 +761,7 @@ public abstract class Renderer
 	public void vertexProgram(final Vertex input, final Vertex output)
 	{
 		output.position.setXYZW(MODELVIEWPROJECTION.multiply(input.position));
-		if (RuntimeOptions.EnableNORMAL)
+		if (isVaryingNormal && RuntimeOptions.EnableNORMAL)
 			output.normal.setIJK(Vector3f.normalise(NORMAL.multiply(input.normal)));
 	}
 	/**
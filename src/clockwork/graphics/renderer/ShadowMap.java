@@ -0,0 +1,228 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2013 Jeremy Othieno.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package clockwork.graphics.renderer;
+
+import java.util.ArrayList;
+import java.util.PriorityQueue;
+
+import clockwork.graphics.Framebuffer;
+import clockwork.graphics.PolygonFace;
+import clockwork.graphics.camera.Frustum;
+import clockwork.types.math.Matrix4;
+import clockwork.types.math.Orientation;
+import clockwork.types.math.Point3f;
+import clockwork.types.math.Vector3f;
+
+/**
+ * A shadow map is the depth of the scene as seen from a light. A point is in shadow if it
+ * is further from the light than the depth stored where it projects onto the map. The
+ * depth is rendered into a framebuffer's depth attachment, and is cached across frames
+ * until the light or any of the shadow casters move.
+ * @see http://en.wikipedia.org/wiki/Shadow_mapping
+ */
+public final class ShadowMap
+{
+	/**
+	 * The shadow map's vertical field of view, in degrees.
+	 */
+	private static final double FIELD_OF_VIEW = 90.0;
+	/**
+	 * The depth offset that prevents a surface from shadowing itself.
+	 */
+	private static final double DEPTH_BIAS = 1e-3;
+	/**
+	 * The tolerance used when comparing transformations, which absorbs the rounding
+	 * errors that appear when the viewer moves.
+	 */
+	private static final double EPSILON = 1e-9;
+	/**
+	 * The framebuffer whose depth attachment holds the shadow map.
+	 */
+	private final Framebuffer framebuffer = new Framebuffer(null);
+	/**
+	 * The renderer that renders the shadow casters' depth to the framebuffer. Both faces of
+	 * a caster's triangles cast shadows.
+	 */
+	private final DepthRenderer renderer = new DepthRenderer(framebuffer);
+	/**
+	 * The shadow map's resolution.
+	 */
+	private int resolution = 0;
+	/**
+	 * The light's VIEWPROJECTION transformation, which converts points from world space
+	 * to the light's clip space.
+	 */
+	private double LIGHTVIEWPROJECTION[] = new Matrix4().getData();
+	/**
+	 * The light's position and orientation when the map was last rendered.
+	 */
+	private final Point3f lightPosition = new Point3f(Double.NaN, Double.NaN, Double.NaN);
+	private final Orientation lightOrientation = new Orientation();
+	/**
+	 * The shadow casters' meshes and MODEL transformations when the map was last rendered.
+	 */
+	private final ArrayList<PolygonFace[]> casterFaces = new ArrayList<PolygonFace[]>();
+	private final ArrayList<double[]> casterMODELs = new ArrayList<double[]>();
+	/**
+	 * Update the shadow map if the light, or any of the shadow casters, have moved since it was
+	 * last rendered, or if its resolution has changed.
+	 * @param position the light's position.
+	 * @param orientation the light's orientation.
+	 * @param resolution the shadow map's resolution.
+	 * @param renderables the shadow casters.
+	 * @param viewpoint the viewer's position, by which the renderables' transformations are offset.
+	 * @return true if the shadow map was rendered, false if the cached map was still valid.
+	 */
+	boolean update
+	(
+		final Point3f position,
+		final Orientation orientation,
+		final int resolution,
+		final PriorityQueue<Renderable> renderables,
+		final Point3f viewpoint
+	)
+	{
+		// The renderables' CMTMs are relative to the viewer, so they are offset by its
+		// position to obtain MODEL transformations that do not change when the viewer moves.
+		final Matrix4 TOWORLD = Matrix4.translate(viewpoint);
+		final ArrayList<PolygonFace[]> faces = new ArrayList<PolygonFace[]>(renderables.size());
+		final ArrayList<double[]> MODELs = new ArrayList<double[]>(renderables.size());
+		for (final Renderable renderable : renderables)
+		{
+			faces.add(renderable.faces);
+			MODELs.add(TOWORLD.multiply(renderable.CMTM).getData());
+		}
+
+		if
+		(
+			resolution == this.resolution &&
+			position.equals(lightPosition) &&
+			orientation.roll == lightOrientation.roll &&
+			orientation.yaw == lightOrientation.yaw &&
+			orientation.pitch == lightOrientation.pitch &&
+			isSameCasters(faces, MODELs)
+		)
+			return false;
+
+		this.resolution = resolution;
+		lightPosition.copy(position);
+		lightOrientation.roll = orientation.roll;
+		lightOrientation.yaw = orientation.yaw;
+		lightOrientation.pitch = orientation.pitch;
+		casterFaces.clear();
+		casterFaces.addAll(faces);
+		casterMODELs.clear();
+		casterMODELs.addAll(MODELs);
+
+		render(position, orientation);
+		return true;
+	}
+	/**
+	 * Return true if a set of shadow casters is the same as the one the map was last rendered
+	 * with, false otherwise.
+	 */
+	private boolean isSameCasters(final ArrayList<PolygonFace[]> faces, final ArrayList<double[]> MODELs)
+	{
+		if (faces.size() != casterFaces.size())
+			return false;
+
+		for (int i = 0; i < faces.size(); ++i)
+		{
+			if (faces.get(i) != casterFaces.get(i))
+				return false;
+
+			final double a[] = MODELs.get(i);
+			final double b[] = casterMODELs.get(i);
+			for (int j = 0; j < 16; ++j)
+			{
+				if (Math.abs(a[j] - b[j]) > EPSILON * Math.max(1.0, Math.abs(b[j])))
+					return false;
+			}
+		}
+		return true;
+	}
+	/**
+	 * Render the shadow casters' depth as seen from the light.
+	 * @param position the light's position.
+	 * @param orientation the light's orientation.
+	 */
+	private void render(final Point3f position, final Orientation orientation)
+	{
+		// The light looks down its negative Z axis, rotated by its orientation.
+		final Vector3f forward = orientation.getRotationMatrix().multiply(new Vector3f(0.0, 0.0, -1.0));
+		final Point3f target = position.add(forward);
+		final Vector3f up = Math.abs(forward.j) > 0.99 ? new Vector3f(1.0, 0.0, 0.0) : new Vector3f(0.0, 1.0, 0.0);
+
+		// The lookAt and perspective matrices are stored transposed, so they are transposed
+		// to transform column vectors.
+		final Matrix4 VIEW = Matrix4.lookAt(position, target, up).transpose();
+		final Matrix4 PROJECTION = Matrix4.perspective
+		(
+			FIELD_OF_VIEW,
+			1.0,
+			Frustum.MinimumClippingPlaneDistance,
+			Frustum.MaximumClippingPlaneDistance
+		).transpose();
+		final Matrix4 VIEWPROJECTION = PROJECTION.multiply(VIEW);
+		LIGHTVIEWPROJECTION = VIEWPROJECTION.getData();
+
+		framebuffer.resize(resolution, resolution);
+		framebuffer.clear();
+		renderer.render(VIEWPROJECTION, casterFaces, casterMODELs);
+	}
+	/**
+	 * Return true if a point in world space is in the shadow of a caster, false otherwise.
+	 * Points that do not project onto the shadow map are not in shadow.
+	 * @param x the point's X coordinate.
+	 * @param y the point's Y coordinate.
+	 * @param z the point's Z coordinate.
+	 */
+	public boolean isShadowed(final double x, final double y, final double z)
+	{
+		if (resolution == 0)
+			return false;
+
+		// Transform the point to the light's clip space.
+		final double M[] = LIGHTVIEWPROJECTION;
+		final double w = (M[12] * x) + (M[13] * y) + (M[14] * z) + M[15];
+		if (w <= 0.0)
+			return false;
+
+		final double scale = resolution * 0.5;
+		final int xs = (int)Math.round(((((M[0] * x) + (M[1] * y) + (M[2] * z) + M[3]) / w) + 1.0) * scale);
+		final int ys = (int)Math.round(((((M[4] * x) + (M[5] * y) + (M[6] * z) + M[7]) / w) + 1.0) * scale);
+		if (xs < 0 || ys < 0 || xs >= resolution || ys >= resolution)
+			return false;
+
+		final double depth = ((M[8] * x) + (M[9] * y) + (M[10] * z) + M[11]) / w;
+		return depth - DEPTH_BIAS > framebuffer.getDepth(xs + (ys * resolution));
+	}
+	/**
+	 * Return the shadow map's resolution, or 0 if it has not been rendered.
+	 */
+	public int getResolution()
+	{
+		return resolution;
+	}
+}
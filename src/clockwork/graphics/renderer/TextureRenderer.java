@@ -23,6 +23,8 @@
  */
 package clockwork.graphics.renderer;
 
+import java.util.EnumSet;
+
 import clockwork.graphics.Fragment;
 
 
@@ -33,7 +35,7 @@ public final class TextureRenderer extends PolygonRenderer
 	 */
 	protected TextureRenderer()
 	{
-		super(Renderer.Type.Texture);
+		super(Renderer.Type.Texture, EnumSet.of(Renderer.Varying.TextureCoordinates));
 	}
 	/**
 	 * @see Renderer#fragmentProgram.
@@ -42,6 +44,6 @@ public final class TextureRenderer extends PolygonRenderer
 	public int fragmentProgram(final Fragment fragment)
 	{
 		return (inputMaterial != null && inputMaterial.diffuse != null) ?
-		inputMaterial.diffuse.getTexel(fragment.u, fragment.v) : 0xffffffff;
+		inputMaterial.diffuse.sample(fragment) : 0xffffffff;
 	}
 }
\ No newline at end of file
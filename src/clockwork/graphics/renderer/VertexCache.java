@@ -0,0 +1,215 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2013 Jeremy Othieno.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package clockwork.graphics.renderer;
+
+import java.awt.Rectangle;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+
+import clockwork.graphics.PolygonFace;
+import clockwork.graphics.Vertex;
+import clockwork.system.RuntimeOptions;
+import clockwork.types.math.Matrix4;
+
+/**
+ * A frame-coherent cache of the renderables' transformed vertices. A renderable's clipped
+ * vertex stream, and the set of its triangles that survive backface culling, remain the same
+ * from one frame to the next for as long as its MODEL transformation, the VIEW and PROJECTION
+ * transformations, the viewport, the renderer and the renderable's revision do not change.
+ * The revision changes when the mesh data is modified in place, e.g. its texture coordinates.
+ * The vertex program is then only applied when one of those changes, and not when only the
+ * lights or materials do.
+ * Renderables are identified by the scene graph node they were created from, and the entries
+ * of nodes that were not submitted for rendering in a frame, i.e. nodes that were removed
+ * from the scene or pruned, are evicted at the end of that frame. Renderables that damage
+ * tracking does not draw are still submitted, so their entries are kept.
+ */
+public final class VertexCache
+{
+	/**
+	 * A renderable's transformed vertices, and the state they were transformed in.
+	 */
+	static final class Entry
+	{
+		/**
+		 * The renderable's clipped vertices, in normalised device coordinates.
+		 */
+		Vertex vertices[] = new Vertex[0];
+		/**
+		 * The offset of the first vertex of each triangle that is not a backface, or null if
+		 * the triangles have not been culled yet.
+		 */
+		int triangles[] = null;
+		/**
+		 * The renderable's bounding rectangle in window coordinates, and its area.
+		 */
+		final Rectangle bounds = new Rectangle();
+		double projectedArea = Double.POSITIVE_INFINITY;
+		/**
+		 * The state the vertices were transformed in.
+		 */
+		private Renderer.Type type;
+		private final Matrix4 CMTM = new Matrix4();
+		private PolygonFace faces[];
+		private int revision;
+		private int VIEWVersion;
+		private int PROJECTIONVersion;
+		private double vx;
+		private double vy;
+		private int options;
+		/**
+		 * Was the entry's renderable submitted in the current frame?
+		 */
+		private boolean isSeen;
+	}
+	/**
+	 * The entries, identified by the node their renderable was created from.
+	 */
+	private final IdentityHashMap<Object, Entry> entries = new IdentityHashMap<Object, Entry>();
+	/**
+	 * The state the current frame's vertices are transformed in, and whether they are cached.
+	 */
+	private Renderer.Type type;
+	private int VIEWVersion;
+	private int PROJECTIONVersion;
+	private double vx;
+	private double vy;
+	private int options;
+	private boolean isEnabled;
+	/**
+	 * Begin a new frame.
+	 * @param type the type of renderer that renders the frame.
+	 * @param VIEWVersion the version of the frame's VIEW transformation.
+	 * @param PROJECTIONVersion the version of the frame's PROJECTION transformation.
+	 * @param vx the viewport's transformation component on the X axis.
+	 * @param vy the viewport's transformation component on the Y axis.
+	 * @param isEnabled true if the frame's vertices may be cached, false if its transformations
+	 * differ from one frame to the next, e.g. when its PROJECTION is jittered.
+	 */
+	void begin
+	(
+		final Renderer.Type type,
+		final int VIEWVersion,
+		final int PROJECTIONVersion,
+		final double vx,
+		final double vy,
+		final boolean isEnabled
+	)
+	{
+		this.type = type;
+		this.VIEWVersion = VIEWVersion;
+		this.PROJECTIONVersion = PROJECTIONVersion;
+		this.vx = vx;
+		this.vy = vy;
+		this.isEnabled = isEnabled && RuntimeOptions.EnableVertexCache;
+
+		// The runtime options that the vertex stage and backface culling depend on.
+		this.options =
+		(RuntimeOptions.EnableClipping ? 1 : 0) |
+		(RuntimeOptions.EnableNORMAL ? 2 : 0) |
+		(RuntimeOptions.EnableBackfaceCulling ? 4 : 0);
+
+		if (this.isEnabled)
+		{
+			for (final Entry entry : entries.values())
+				entry.isSeen = false;
+		}
+		else
+			entries.clear();
+	}
+	/**
+	 * Return a renderable's cached entry if it was transformed in the current frame's state,
+	 * or null if its vertices must be transformed again.
+	 * @param renderable the renderable.
+	 */
+	Entry get(final Renderable renderable)
+	{
+		final Entry entry = isEnabled && renderable.source != null ? entries.get(renderable.source) : null;
+		if
+		(
+			entry == null ||
+			entry.type != type ||
+			entry.faces != renderable.faces ||
+			entry.revision != renderable.revision ||
+			entry.VIEWVersion != VIEWVersion ||
+			entry.PROJECTIONVersion != PROJECTIONVersion ||
+			entry.vx != vx ||
+			entry.vy != vy ||
+			entry.options != options ||
+			!entry.CMTM.isEqual(renderable.CMTM)
+		)
+			return null;
+
+		entry.isSeen = true;
+		return entry;
+	}
+	/**
+	 * Keep a renderable's entry, if it has one, until the end of the next frame. This must
+	 * be called for every renderable submitted in the current frame, including those whose
+	 * vertices are not needed since they lie outside the frame's damaged region.
+	 * @param renderable the renderable.
+	 */
+	void keep(final Renderable renderable)
+	{
+		final Entry entry = renderable.source != null ? entries.get(renderable.source) : null;
+		if (entry != null)
+			entry.isSeen = true;
+	}
+	/**
+	 * Return an empty entry in which a renderable's transformed vertices are to be stored.
+	 * The entry is cached if the renderable was created from a node, and caching is enabled.
+	 * @param renderable the renderable.
+	 */
+	Entry put(final Renderable renderable)
+	{
+		final Entry entry = new Entry();
+		entry.type = type;
+		entry.CMTM.copy(renderable.CMTM);
+		entry.faces = renderable.faces;
+		entry.revision = renderable.revision;
+		entry.VIEWVersion = VIEWVersion;
+		entry.PROJECTIONVersion = PROJECTIONVersion;
+		entry.vx = vx;
+		entry.vy = vy;
+		entry.options = options;
+		entry.isSeen = true;
+		if (isEnabled && renderable.source != null)
+			entries.put(renderable.source, entry);
+
+		return entry;
+	}
+	/**
+	 * End the current frame, and evict the entries of the renderables that were not
+	 * submitted in it.
+	 */
+	void end()
+	{
+		final Iterator<Entry> i = entries.values().iterator();
+		while (i.hasNext())
+		{
+			if (!i.next().isSeen)
+				i.remove();
+		}
+	}
+}
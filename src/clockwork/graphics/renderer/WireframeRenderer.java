@@ -23,6 +23,8 @@
  */
 package clockwork.graphics.renderer;
 
+import java.util.EnumSet;
+
 import clockwork.graphics.Fragment;
 
 public final class WireframeRenderer extends Renderer
@@ -32,7 +34,7 @@ public final class WireframeRenderer extends Renderer
 	 */
 	protected WireframeRenderer()
 	{
-		super(Renderer.Type.Wireframe, Renderer.Mode.Wireframe);
+		super(Renderer.Type.Wireframe, Renderer.Mode.Wireframe, EnumSet.of(Renderer.Varying.Color));
 	}
 	/**
 	 * A WireframeRenderer simply creates edges out of the vertices and uses
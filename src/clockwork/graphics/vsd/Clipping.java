@@ -27,6 +27,7 @@ import java.util.ArrayList;
 
 import clockwork.graphics.Vertex;
 import clockwork.system.RuntimeOptions;
+import clockwork.types.math.Point4f;
 
 
 /**
@@ -72,4 +73,73 @@ public class Clipping
 		}
 		return input.toArray(new Vertex[0]);
 	}
+	/**
+	 * Clip a stream of triangles against the near clipping plane, where z = -w in clipping
+	 * coordinates. The part of a triangle that lies behind the plane is cut off and what remains
+	 * is split into one or two triangles with the same winding, so that no vertex is left
+	 * behind the viewpoint where the perspective-divide is undefined. The returned stream may
+	 * reference the same vertex more than once.
+	 * @param input the vertices in clipping coordinates, where each triplet is a triangle.
+	 */
+	public static Vertex[] applyNearPlane(final ArrayList<Vertex> input)
+	{
+		final ArrayList<Vertex> output = new ArrayList<Vertex>(input.size());
+		final Vertex polygon[] = new Vertex[4];
+		for (int i = 0; i + 2 < input.size(); i += 3)
+		{
+			// Walk the triangle's edges, keeping the vertices in front of the plane and adding
+			// a vertex wherever an edge crosses it.
+			int count = 0;
+			for (int j = 0; j < 3; ++j)
+			{
+				final Vertex a = input.get(i + j);
+				final Vertex b = input.get(i + ((j + 1) % 3));
+				final double da = a.position.z + a.position.w;
+				final double db = b.position.z + b.position.w;
+				if (da >= 0.0)
+					polygon[count++] = a;
+				if ((da >= 0.0) != (db >= 0.0))
+					polygon[count++] = interpolate(a, b, da / (da - db));
+			}
+
+			// Split the remaining polygon into a fan of triangles.
+			for (int j = 2; j < count; ++j)
+			{
+				output.add(polygon[0]);
+				output.add(polygon[j - 1]);
+				output.add(polygon[j]);
+			}
+		}
+		return output.toArray(new Vertex[0]);
+	}
+	/**
+	 * Return the vertex at a given point along the edge between two vertices, whose
+	 * attributes are linearly interpolated.
+	 * @param a the edge's first vertex.
+	 * @param b the edge's second vertex.
+	 * @param t the interpolant, where 0 is the first vertex and 1 is the second.
+	 */
+	private static Vertex interpolate(final Vertex a, final Vertex b, final double t)
+	{
+		final Vertex vertex = new Vertex
+		(
+			new Point4f
+			(
+				a.position.x + (t * (b.position.x - a.position.x)),
+				a.position.y + (t * (b.position.y - a.position.y)),
+				a.position.z + (t * (b.position.z - a.position.z)),
+				a.position.w + (t * (b.position.w - a.position.w))
+			)
+		);
+		vertex.u = a.u + (t * (b.u - a.u));
+		vertex.v = a.v + (t * (b.v - a.v));
+		vertex.normal.i = a.normal.i + (t * (b.normal.i - a.normal.i));
+		vertex.normal.j = a.normal.j + (t * (b.normal.j - a.normal.j));
+		vertex.normal.k = a.normal.k + (t * (b.normal.k - a.normal.k));
+		vertex.color.r = a.color.r + (t * (b.color.r - a.color.r));
+		vertex.color.g = a.color.g + (t * (b.color.g - a.color.g));
+		vertex.color.b = a.color.b + (t * (b.color.b - a.color.b));
+		vertex.color.a = a.color.a + (t * (b.color.a - a.color.a));
+		return vertex;
+	}
 }
\ No newline at end of file
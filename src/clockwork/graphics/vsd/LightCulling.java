@@ -0,0 +1,148 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2013 Jeremy Othieno.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package clockwork.graphics.vsd;
+
+import java.util.Arrays;
+
+import clockwork.physics.lighting.LightEmitter;
+
+/**
+ * Tiled light culling. The framebuffer is divided into square tiles and, once per frame,
+ * each light is assigned to the tiles its attenuation radius reaches. A fragment is then
+ * only lit by the lights assigned to the tile it lies in, instead of by every light in
+ * the scene.
+ * @see LightEmitter#getAttenuationRadius
+ */
+public final class LightCulling
+{
+	/**
+	 * The width and height of a tile, in pixels.
+	 */
+	public static final int TILE_SIZE = 16;
+	/**
+	 * The number of tile columns and rows.
+	 */
+	private int columns = 0;
+	private int rows = 0;
+	/**
+	 * The lights assigned to each tile, in row-major order, and the number of lights that
+	 * reach each tile. A tile's array is reused from one frame to the next, and is only
+	 * reallocated when the number of lights that reach the tile changes.
+	 */
+	private LightEmitter tiles[][] = new LightEmitter[0][];
+	private int counts[] = new int[0];
+	/**
+	 * Assign a set of lights to the tiles of a framebuffer with a given resolution.
+	 * The lights' uniforms must have been set for the current frame. The tiles are only
+	 * reallocated when the framebuffer's resolution changes.
+	 * @param lights the lights to assign.
+	 * @param width the framebuffer's width.
+	 * @param height the framebuffer's height.
+	 */
+	public void assign(final LightEmitter lights[], final int width, final int height)
+	{
+		columns = Math.max(1, (width + TILE_SIZE - 1) / TILE_SIZE);
+		rows = Math.max(1, (height + TILE_SIZE - 1) / TILE_SIZE);
+		if (tiles.length != columns * rows)
+		{
+			tiles = new LightEmitter[columns * rows][];
+			counts = new int[tiles.length];
+			for (int t = 0; t < tiles.length; ++t)
+				tiles[t] = new LightEmitter[0];
+		}
+
+		// Count the lights that reach each tile, then fill each tile's light array.
+		Arrays.fill(counts, 0);
+		for (final LightEmitter light : lights)
+			forEachTile(light, counts, null);
+		for (int t = 0; t < tiles.length; ++t)
+		{
+			if (tiles[t].length != counts[t])
+				tiles[t] = new LightEmitter[counts[t]];
+			counts[t] = 0;
+		}
+		for (final LightEmitter light : lights)
+			forEachTile(light, counts, tiles);
+	}
+	/**
+	 * Visit the tiles reached by a light. A tile is reached if its closest pixel lies within
+	 * the light's attenuation radius. The tile's count is incremented and, if an array of
+	 * tiles is given, the light is stored in the tile.
+	 * @param light the light to assign.
+	 * @param counts the number of lights assigned to each tile.
+	 * @param tiles the lights assigned to each tile, or null if they are only being counted.
+	 */
+	private void forEachTile(final LightEmitter light, final int counts[], final LightEmitter tiles[][])
+	{
+		final double radius = light.getAttenuationRadius();
+		final double lx = light.getUniformPosition().x;
+		final double ly = light.getUniformPosition().y;
+
+		// The range of tiles covered by the light's bounding square.
+		int cmin = 0, cmax = columns - 1;
+		int rmin = 0, rmax = rows - 1;
+		if (!Double.isInfinite(radius))
+		{
+			cmin = (int)Math.max(cmin, Math.floor((lx - radius) / TILE_SIZE));
+			cmax = (int)Math.min(cmax, Math.floor((lx + radius) / TILE_SIZE));
+			rmin = (int)Math.max(rmin, Math.floor((ly - radius) / TILE_SIZE));
+			rmax = (int)Math.min(rmax, Math.floor((ly + radius) / TILE_SIZE));
+		}
+
+		final double radius2 = radius * radius;
+		for (int r = rmin; r <= rmax; ++r)
+		{
+			// The vertical distance to the tile's closest pixel.
+			final int y0 = r * TILE_SIZE;
+			final double dy = ly < y0 ? y0 - ly : (ly > y0 + TILE_SIZE - 1 ? ly - (y0 + TILE_SIZE - 1) : 0.0);
+
+			for (int c = cmin; c <= cmax; ++c)
+			{
+				// The horizontal distance to the tile's closest pixel.
+				final int x0 = c * TILE_SIZE;
+				final double dx = lx < x0 ? x0 - lx : (lx > x0 + TILE_SIZE - 1 ? lx - (x0 + TILE_SIZE - 1) : 0.0);
+
+				if ((dx * dx) + (dy * dy) <= radius2)
+				{
+					final int t = c + (r * columns);
+					if (tiles != null)
+						tiles[t][counts[t]] = light;
+					++counts[t];
+				}
+			}
+		}
+	}
+	/**
+	 * Return the lights assigned to the tile containing a given pixel.
+	 * @param x the pixel's horizontal window coordinate.
+	 * @param y the pixel's vertical window coordinate.
+	 */
+	public LightEmitter[] getLights(final int x, final int y)
+	{
+		final int c = Math.min(columns - 1, Math.max(0, x / TILE_SIZE));
+		final int r = Math.min(rows - 1, Math.max(0, y / TILE_SIZE));
+
+		return tiles[c + (r * columns)];
+	}
+}
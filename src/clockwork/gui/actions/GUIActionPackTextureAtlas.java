@@ -0,0 +1,63 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2013 Jeremy Othieno.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package clockwork.gui.actions;
+
+import java.awt.event.ActionEvent;
+import java.util.List;
+
+import clockwork.asset.AssetManager;
+import clockwork.graphics.Texture;
+import clockwork.gui.controls.scene.SceneControlPanel;
+import clockwork.types.Task;
+
+
+public class GUIActionPackTextureAtlas extends GUIActionAdd<SceneControlPanel>
+{
+	/**
+	 * Instantiate a new action attached to a control panel.
+	 * @param controlPanel the control panel that this action is attached to.
+	 */
+	public GUIActionPackTextureAtlas(final SceneControlPanel controlPanel)
+	{
+		super(controlPanel, "Pack textures into an atlas");
+	}
+	/**
+	 * Pack the diffuse maps of every loaded 3D model into texture atlas pages, report the
+	 * result in the progress bar's feedback area, then update the scene. The packed models'
+	 * revisions change, so they are transformed and drawn again.
+	 * @see AssetManager#PackTextureAtlas
+	 */
+	@Override
+	public void onActionPerformed(final ActionEvent e)
+	{
+		final List<Texture> pages = AssetManager.PackTextureAtlas();
+		if (pages.isEmpty())
+			Task.GUI_PROGRESS_BAR.setFeedbackInformation("No textures could be packed");
+		else
+		{
+			Task.GUI_PROGRESS_BAR.setFeedbackInformation("Packed textures into " + pages.size() + " atlas page(s)");
+			controlPanel.update();
+		}
+	}
+}
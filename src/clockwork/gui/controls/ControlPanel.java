@@ -39,6 +39,7 @@ import clockwork.gui.UserInterface;
 import clockwork.gui.presentation.AbstractPresentation;
 import clockwork.scene.Scene;
 import clockwork.scene.SceneGraph;
+import clockwork.system.Services;
 
 
 /**
@@ -219,6 +220,9 @@ extends JPanel implements ControlPanelInterface
 			}
 			else
 				controls.getValue(currentEntry);
+
+			// The scene is rendered as a preview until the input has been idle.
+			Services.Graphics.getProgressiveRefinement().interact();
 			Scene.RunUpdateTask();
 		}
 	}
@@ -28,17 +28,20 @@ import java.awt.GridBagLayout;
 import java.awt.event.ActionEvent;
 import java.awt.event.ItemEvent;
 
+import javax.swing.ButtonGroup;
 import javax.swing.Icon;
 import javax.swing.JCheckBox;
 import javax.swing.JPanel;
 import javax.swing.JRadioButton;
 
+import clockwork.graphics.Texture;
 import clockwork.gui.UserInterface;
 import clockwork.gui.controls.ControlPanelInterface;
 import clockwork.physics.lighting.LightEmitter;
 import clockwork.scene.Scene;
 import clockwork.scene.SceneViewer;
 import clockwork.system.RuntimeOptions;
+import clockwork.system.Services;
 
 
 
@@ -70,6 +73,8 @@ public class RuntimeControlPanel extends JPanel implements ControlPanelInterface
 		{
 			new VisibleSurfaceDeterminationOptionsComponent(this),
 			new PerVertexOperationOptionsComponent(this),
+			new RasterisationOptionsComponent(this),
+			new TexturingOptionsComponent(this),
 			new PerFragmentOperationOptionsComponent(this),
 //			new AmbientOcclusionOptionsComponent(this),
 			new FramebufferOperationsOptionsComponent(this),
@@ -98,7 +103,8 @@ public class RuntimeControlPanel extends JPanel implements ControlPanelInterface
 			new JCheckBox("Enable VIEW transformation", RuntimeOptions.EnableVIEW),
 			new JCheckBox("Enable MODEL transformation", RuntimeOptions.EnableMODEL),
 			new JCheckBox("Enable NORMAL transformation", RuntimeOptions.EnableNORMAL),
-			new JCheckBox("Enable PROJECTION transformation", RuntimeOptions.EnablePROJECTION)
+			new JCheckBox("Enable PROJECTION transformation", RuntimeOptions.EnablePROJECTION),
+			new JCheckBox("Enable vertex cache", RuntimeOptions.EnableVertexCache)
 		};
 		/**
 		 * Instantiate a PerVertexOperationOptionsComponent attached to the main control panel.
@@ -143,6 +149,10 @@ public class RuntimeControlPanel extends JPanel implements ControlPanelInterface
 				RuntimeOptions.EnablePROJECTION = selected;
 				isPROJECTIONUpdated = true;
 			}
+			else if (source == checkboxes[4])
+			{
+				RuntimeOptions.EnableVertexCache = selected;
+			}
 
 			// Update the viewer.
 			final SceneViewer viewer = Scene.getUniqueInstance().getViewer();
@@ -163,6 +173,106 @@ public class RuntimeControlPanel extends JPanel implements ControlPanelInterface
 
 
 
+	private final class RasterisationOptionsComponent extends OptionsComponent
+	{
+		/**
+		 * The serial version UID.
+		 */
+		private static final long serialVersionUID = 4031773458110379412L;
+		/**
+		 * Rasterisation option check boxes.
+		 */
+		private final JCheckBox checkboxes[] = new JCheckBox[]
+		{
+			new JCheckBox("Enable fixed-point rasterisation", RuntimeOptions.EnableFixedPointRasterisation),
+			new JCheckBox("Enable variable-rate shading", RuntimeOptions.EnableVariableRateShading),
+		};
+		/**
+		 * Instantiate a RasterisationOptionsComponent attached to the main control panel.
+		 */
+		protected RasterisationOptionsComponent(final RuntimeControlPanel parent)
+		{
+			super(parent, "Rasterisation");
+
+			for (final JCheckBox checkbox : checkboxes)
+			{
+				add(checkbox);
+				checkbox.addItemListener(this);
+			}
+		}
+		/**
+		 * The event handlers.
+		 */
+		@Override
+		public void itemStateChanged(final ItemEvent e)
+		{
+			final Object source = e.getSource();
+			final boolean selected = e.getStateChange() == ItemEvent.SELECTED;
+
+			if (source == checkboxes[0])      RuntimeOptions.EnableFixedPointRasterisation = selected;
+			else if (source == checkboxes[1]) RuntimeOptions.EnableVariableRateShading = selected;
+
+			super.itemStateChanged(e);
+		}
+	}
+
+
+
+
+
+
+
+	private final class TexturingOptionsComponent extends OptionsComponent
+	{
+		/**
+		 * The serial version UID.
+		 */
+		private static final long serialVersionUID = -2906318426407412307L;
+		/**
+		 * Texture filter radio buttons, one per filter.
+		 */
+		private final JRadioButton radios[] = new JRadioButton[Texture.Filter.values().length];
+		/**
+		 * Instantiate a TexturingOptionsComponent attached to the main control panel.
+		 */
+		protected TexturingOptionsComponent(final RuntimeControlPanel parent)
+		{
+			super(parent, "Texturing");
+
+			final ButtonGroup group = new ButtonGroup();
+			for (final Texture.Filter filter : Texture.Filter.values())
+			{
+				final JRadioButton radio =
+				new JRadioButton(filter + " filtering", filter == RuntimeOptions.TextureFilter);
+
+				radios[filter.ordinal()] = radio;
+				group.add(radio);
+				add(radio);
+				radio.addActionListener(this);
+			}
+		}
+		/**
+		 * The event handlers.
+		 */
+		@Override
+		public void actionPerformed(final ActionEvent e)
+		{
+			final Object source = e.getSource();
+			for (final Texture.Filter filter : Texture.Filter.values())
+			{
+				if (source == radios[filter.ordinal()])
+					RuntimeOptions.TextureFilter = filter;
+			}
+			super.actionPerformed(e);
+		}
+	}
+
+
+
+
+
+
+
 	private final class PerFragmentOperationOptionsComponent extends OptionsComponent
 	{
 		/**
@@ -237,7 +347,8 @@ public class RuntimeControlPanel extends JPanel implements ControlPanelInterface
 			new JCheckBox("Enable View Frustum Culling", RuntimeOptions.EnableViewFrustumCulling),
 			new JCheckBox("Enable Clipping", RuntimeOptions.EnableClipping),
 			new JCheckBox("Enable Backface Culling", RuntimeOptions.EnableBackfaceCulling),
-			new JCheckBox("Enable Occlusion Culling", RuntimeOptions.EnableOcclusionCulling)
+			new JCheckBox("Enable Occlusion Culling", RuntimeOptions.EnableOcclusionCulling),
+			new JCheckBox("Enable Damage Tracking", RuntimeOptions.EnableDamageTracking)
 		};
 		/**
 		 * The default constructor.
@@ -266,6 +377,7 @@ public class RuntimeControlPanel extends JPanel implements ControlPanelInterface
 			else if (source == checkboxes[2]) RuntimeOptions.EnableClipping = selected;
 			else if (source == checkboxes[3]) RuntimeOptions.EnableBackfaceCulling = selected;
 			else if (source == checkboxes[4]) RuntimeOptions.EnableOcclusionCulling = selected;
+			else if (source == checkboxes[5]) RuntimeOptions.EnableDamageTracking = selected;
 
 			super.itemStateChanged(e);
 		}
@@ -290,7 +402,18 @@ public class RuntimeControlPanel extends JPanel implements ControlPanelInterface
 		private final JCheckBox checkboxes[] = new JCheckBox[]
 		{
 			new JCheckBox("Enable Anti-aliasing", RuntimeOptions.EnableAntialiasing),
+			new JCheckBox("Enable Tone Mapping", RuntimeOptions.EnableToneMapping),
+			new JCheckBox("Enable Color Grading", RuntimeOptions.EnableColorGrading),
+			new JCheckBox("Enable Gamma Correction", RuntimeOptions.EnableGammaCorrection),
+			new JCheckBox("Enable Temporal Accumulation", RuntimeOptions.EnableTemporalAccumulation),
+			new JCheckBox("Enable Dynamic Resolution", RuntimeOptions.EnableDynamicResolution),
+			new JCheckBox("Enable Progressive Refinement", RuntimeOptions.EnableProgressiveRefinement),
 		};
+		/**
+		 * Multisample anti-aliasing radio buttons, one per number of samples.
+		 */
+		private final int sampleCounts[] = new int[]{1, 2, 4, 8};
+		private final JRadioButton radios[] = new JRadioButton[sampleCounts.length];
 		/**
 		 * The default constructor.
 		 */
@@ -303,6 +426,34 @@ public class RuntimeControlPanel extends JPanel implements ControlPanelInterface
 				add(checkbox);
 				checkbox.addItemListener(this);
 			}
+
+			final ButtonGroup group = new ButtonGroup();
+			for (int i = 0; i < sampleCounts.length; ++i)
+			{
+				final JRadioButton radio = new JRadioButton
+				(
+					sampleCounts[i] == 1 ? "Disable multisampling" : sampleCounts[i] + "x multisampling",
+					sampleCounts[i] == RuntimeOptions.MultisampleCount
+				);
+				radios[i] = radio;
+				group.add(radio);
+				add(radio);
+				radio.addActionListener(this);
+			}
+		}
+		/**
+		 * The event handlers.
+		 */
+		@Override
+		public void actionPerformed(final ActionEvent e)
+		{
+			final Object source = e.getSource();
+			for (int i = 0; i < radios.length; ++i)
+			{
+				if (source == radios[i])
+					RuntimeOptions.MultisampleCount = sampleCounts[i];
+			}
+			super.actionPerformed(e);
 		}
 		/**
 		 * The event handlers.
@@ -314,6 +465,12 @@ public class RuntimeControlPanel extends JPanel implements ControlPanelInterface
 			final boolean selected = e.getStateChange() == ItemEvent.SELECTED;
 
 			if (source == checkboxes[0])      RuntimeOptions.EnableAntialiasing = selected;
+			else if (source == checkboxes[1]) RuntimeOptions.EnableToneMapping = selected;
+			else if (source == checkboxes[2]) RuntimeOptions.EnableColorGrading = selected;
+			else if (source == checkboxes[3]) RuntimeOptions.EnableGammaCorrection = selected;
+			else if (source == checkboxes[4]) RuntimeOptions.EnableTemporalAccumulation = selected;
+			else if (source == checkboxes[5]) RuntimeOptions.EnableDynamicResolution = selected;
+			else if (source == checkboxes[6]) RuntimeOptions.EnableProgressiveRefinement = selected;
 
 			super.itemStateChanged(e);
 		}
@@ -336,7 +493,12 @@ public class RuntimeControlPanel extends JPanel implements ControlPanelInterface
 		 */
 		private final JCheckBox checkboxes[] = new JCheckBox[]
 		{
-			new JCheckBox("Enable Screen Space Ambient Occlusion", false)
+			new JCheckBox("Enable Screen Space Ambient Occlusion", false),
+			new JCheckBox("Enable tiled light culling", RuntimeOptions.EnableTiledLightCulling),
+			new JCheckBox("Enable specular lookup tables", RuntimeOptions.EnableSpecularLookupTables),
+			new JCheckBox("Enable fast exponentiation", RuntimeOptions.EnableFastExponentiation),
+			new JCheckBox("Enable Gouraud shading for small objects", RuntimeOptions.EnableGouraudShading),
+			new JCheckBox("Enable shadows", RuntimeOptions.EnableShadows)
 		};
 		/**
 		 * Radio buttons.
@@ -396,6 +558,16 @@ public class RuntimeControlPanel extends JPanel implements ControlPanelInterface
 
 			if (source == checkboxes[0])
 				RuntimeOptions.EnableScreenSpaceAmbientOcclusion = selected;
+			else if (source == checkboxes[1])
+				RuntimeOptions.EnableTiledLightCulling = selected;
+			else if (source == checkboxes[2])
+				RuntimeOptions.EnableSpecularLookupTables = selected;
+			else if (source == checkboxes[3])
+				RuntimeOptions.EnableFastExponentiation = selected;
+			else if (source == checkboxes[4])
+				RuntimeOptions.EnableGouraudShading = selected;
+			else if (source == checkboxes[5])
+				RuntimeOptions.EnableShadows = selected;
 
 			super.itemStateChanged(e);
 		}
@@ -409,6 +581,8 @@ public class RuntimeControlPanel extends JPanel implements ControlPanelInterface
 	@Override
 	public void update()
 	{
+		// A runtime option may affect every pixel, so the next frame is rendered in full.
+		Services.Graphics.getFramebuffer().getDamageTracking().invalidate();
 		Scene.RunUpdateTask();
 	}
 
@@ -34,6 +34,7 @@ import clockwork.gui.actions.GUIActionAddModel3D;
 import clockwork.gui.actions.GUIActionAddStanfordBunny;
 import clockwork.gui.actions.GUIActionAddSuzanne;
 import clockwork.gui.actions.GUIActionAddUtahTeapot;
+import clockwork.gui.actions.GUIActionPackTextureAtlas;
 import clockwork.gui.presentation.AbstractTreeView;
 import clockwork.scene.SceneGraph;
 import clockwork.scene.SceneViewer;
@@ -95,6 +96,7 @@ public final class SceneTreeView extends AbstractTreeView<SceneGraph.Node>
 		addActions.add(new GUIActionAddSuzanne(parent));
 		addActions.add(new GUIActionAddUtahTeapot(parent));
 		addActions.add(new GUIActionAddStanfordBunny(parent));
+		addActions.add(new GUIActionPackTextureAtlas(parent));
 
 		setAvailableAddActions(addActions);
 	}
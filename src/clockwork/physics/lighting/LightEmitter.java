@@ -27,14 +27,17 @@ import clockwork.graphics.Fragment;
 import clockwork.graphics.Material;
 import clockwork.graphics.color.ColorRGB;
 import clockwork.graphics.renderer.RenderProcessingQueue;
+import clockwork.graphics.renderer.ShadowMap;
 import clockwork.scene.SceneEntityProperty;
 import clockwork.scene.SceneGraph;
 import clockwork.scene.SceneObject;
+import clockwork.system.RuntimeOptions;
 import clockwork.types.Matrix4Stack;
+import clockwork.types.math.FastMath;
 import clockwork.types.math.Matrix4;
 import clockwork.types.math.Orientation;
 import clockwork.types.math.Point3f;
-import clockwork.types.math.Vector3f;
+import clockwork.types.math.PowerTable;
 
 public class LightEmitter extends SceneEntityProperty<SceneObject>
 {
@@ -144,7 +147,11 @@ public class LightEmitter extends SceneEntityProperty<SceneObject>
 	 */
 	public void setColor(final ColorRGB color)
 	{
-		this.color.copy(color);
+		if (color != null && (color.r != this.color.r || color.g != this.color.g || color.b != this.color.b))
+		{
+			this.color.copy(color);
+			setModified();
+		}
 	}
 	/**
 	 * Return the type of emission.
@@ -158,7 +165,11 @@ public class LightEmitter extends SceneEntityProperty<SceneObject>
 	 */
 	public void setType(final Type type)
 	{
-		this.type = type;
+		if (this.type != type)
+		{
+			this.type = type;
+			setModified();
+		}
 	}
 	/**
 	 * Return the reflection model used by this emitter.
@@ -173,104 +184,285 @@ public class LightEmitter extends SceneEntityProperty<SceneObject>
 	 */
 	public void setReflectionModel(final LightEmitter.ReflectionModel model)
 	{
-		this.reflectionModel = model;
+		if (this.reflectionModel != model)
+		{
+			this.reflectionModel = model;
+			setModified();
+		}
 	}
 	/**
-	 * Return the color intensity of a given fragment when this light is applied to it.
+	 * The light's uniforms, which are constant while a frame is rendered. They are set
+	 * once per frame so that the lighting kernel does not need to chase any references.
+	 * @see LightEmitter#setUniforms
+	 */
+	private double Lx, Ly, Lz;
+	private double Lr, Lg, Lb;
+	private boolean isAttenuated;
+	private boolean isBlinnPhong;
+	private double attenuationRadius;
+	private final Point3f uniformPosition = new Point3f();
+	private ShadowMap uniformShadowMap;
+	/**
+	 * The light's shadow map, which is created when the light first casts shadows.
 	 */
-	public ColorRGB calculateFragmentColor
+	private ShadowMap shadowMap = null;
+	/**
+	 * The largest contribution a light may make to a color channel and still be considered
+	 * negligible. This is less than half of the smallest step of an 8-bit color channel.
+	 */
+	private static final double NegligibleContribution = 1.0 / 512.0;
+	/**
+	 * Set the light's uniforms from its current position, color, type and reflection model.
+	 * This must be called before the light is passed to the lighting kernel, and whenever
+	 * any of those change.
+	 */
+	public void setUniforms()
+	{
+		Lx = position.x;
+		Ly = position.y;
+		Lz = position.z;
+		Lr = color.r;
+		Lg = color.g;
+		Lb = color.b;
+		isAttenuated = type != LightEmitter.Type.Directional;
+		isBlinnPhong = reflectionModel == ReflectionModel.BlinnPhong;
+		uniformPosition.copy(position);
+		uniformShadowMap = type != LightEmitter.Type.Point ? shadowMap : null;
+
+		// Beyond the attenuation radius, the diffuse and specular contributions are negligible.
+		// Assuming material reflectances no greater than 1, both contributions sum to at most
+		// 2 * fatt * color, so the radius is the distance where that falls below the bound,
+		// i.e. the positive root of c3.d^2 + c2.d + c1 - (2 * color / bound) = 0.
+		if (isAttenuated)
+		{
+			final double K = 2.0 * Math.max(Lr, Math.max(Lg, Lb)) / NegligibleContribution;
+			final double c1 = constantAttenuationCoefficient;
+			final double c2 = linearAttenuationCoefficient;
+			final double c3 = quadraticAttenuationCoefficient;
+			final double discriminant = (c2 * c2) - (4.0 * c3 * (c1 - K));
+
+			attenuationRadius = discriminant > 0.0 ? Math.max(0.0, (Math.sqrt(discriminant) - c2) / (2.0 * c3)) : 0.0;
+		}
+		else
+			attenuationRadius = Double.POSITIVE_INFINITY;
+	}
+	/**
+	 * Return the light's position when its uniforms were last set.
+	 */
+	public Point3f getUniformPosition()
+	{
+		return uniformPosition;
+	}
+	/**
+	 * Return the light's shadow map, or null if the light does not cast shadows. Only spot
+	 * and directional lights cast shadows.
+	 */
+	public ShadowMap getShadowMap()
+	{
+		if (type == LightEmitter.Type.Point)
+			return null;
+		else if (shadowMap == null)
+			shadowMap = new ShadowMap();
+
+		return shadowMap;
+	}
+	/**
+	 * Return the distance beyond which the light's diffuse and specular contributions are
+	 * negligible, as of when its uniforms were last set. A light that is not attenuated has
+	 * an infinite attenuation radius.
+	 */
+	public double getAttenuationRadius()
+	{
+		return attenuationRadius;
+	}
+	/**
+	 * Return the packed ARGB color of a given fragment when a set of lights is applied to it.
+	 * The lights' uniforms must have been set for the current frame. The fragment's material
+	 * colors are looked up once for all lights, and no objects are allocated.
+	 * @param viewpoint the viewer's position.
+	 * @param fragment the fragment to shade.
+	 * @param material the fragment's material.
+	 * @param lights the lights applied to the fragment.
+	 */
+	public static int calculateFragmentColor
 	(
 		final Point3f viewpoint,
 		final Fragment fragment,
-		final Material material
+		final Material material,
+		final LightEmitter lights[]
+	)
+	{
+		return calculateFragmentColor(viewpoint, fragment, material, lights, lights.length);
+	}
+	/**
+	 * Return the packed ARGB color of a given fragment when a set of lights is applied to it,
+	 * where only the lights that reach the fragment are given. Every light in the scene still
+	 * contributes the ambient term.
+	 * @param viewpoint the viewer's position.
+	 * @param fragment the fragment to shade.
+	 * @param material the fragment's material.
+	 * @param lights the lights whose attenuation radius reaches the fragment.
+	 * @param lightCount the number of lights in the scene.
+	 */
+	public static int calculateFragmentColor
+	(
+		final Point3f viewpoint,
+		final Fragment fragment,
+		final Material material,
+		final LightEmitter lights[],
+		final int lightCount
+	)
+	{
+		return calculateFragmentColor(viewpoint, fragment, material, lights, lightCount, null);
+	}
+	/**
+	 * Return the packed ARGB color of a given fragment when a set of lights is applied to it,
+	 * where lights that have a shadow map do not light fragments that are in shadow.
+	 * @param viewpoint the viewer's position.
+	 * @param fragment the fragment to shade.
+	 * @param material the fragment's material.
+	 * @param lights the lights whose attenuation radius reaches the fragment.
+	 * @param lightCount the number of lights in the scene.
+	 * @param WINDOWTOWORLD the data of the transformation from window coordinates to world
+	 * space, or null if shadows are disabled.
+	 */
+	public static int calculateFragmentColor
+	(
+		final Point3f viewpoint,
+		final Fragment fragment,
+		final Material material,
+		final LightEmitter lights[],
+		final int lightCount,
+		final double WINDOWTOWORLD[]
 	)
 	{
-		final ColorRGB ambient = new ColorRGB();
-		final ColorRGB diffuse = new ColorRGB();
-		final ColorRGB specular = new ColorRGB();
-
 		// The surface position P and normal N.
-		final Point3f  P = new Point3f(fragment.x, fragment.y, fragment.z);
-		final Vector3f N = new Vector3f(fragment.ni, fragment.nj, fragment.nk);
+		final double Px = fragment.x, Py = fragment.y, Pz = fragment.z;
+		final double Nx = fragment.ni, Ny = fragment.nj, Nz = fragment.nk;
 
 		// The unit vector originating from the surface position, directed towards the viewpoint.
-//FIXME Find out why this doesn't work: final Vector3f V = Vector3f.normalise(P.subtract(viewpoint));
-		final Vector3f V = Vector3f.normalise(viewpoint.subtract(P));
-
-		// The unit vector originating from the surface position, directed towards this light source.
-		final Vector3f L = Vector3f.normalise(P.subtract(this.position));
-
-		// Calculate the light's attenuation factor.
-		final double fatt = type != LightEmitter.Type.Directional ?
-		getAttenuationFactor(Point3f.distance(P, this.position)) : 1.0;
+//FIXME Find out why this doesn't work: V = normalise(P - viewpoint)
+		double Vx = viewpoint.x - Px, Vy = viewpoint.y - Py, Vz = viewpoint.z - Pz;
+		final double Vm = Math.sqrt((Vx * Vx) + (Vy * Vy) + (Vz * Vz));
+		if (Vm != 0.0)
+		{
+			Vx /= Vm;
+			Vy /= Vm;
+			Vz /= Vm;
+		}
 
 		// The material's ambient, diffuse and specular colors.
-		final ColorRGB Oa = material.ambient != null ?
-		ColorRGB.split(material.ambient.getTexel(fragment.u, fragment.v)) : ColorRGB.White;
-		final ColorRGB Od = material.diffuse != null ?
-		ColorRGB.split(material.diffuse.getTexel(fragment.u, fragment.v)) : ColorRGB.White;
-		final ColorRGB Os = material.specular != null ?
-		ColorRGB.split(material.specular.getTexel(fragment.u, fragment.v)) : ColorRGB.White;
-
-		// Calculate the ambient contribution.
-		ambient.r = material.Ka.r * Oa.r * Od.r;
-		ambient.g = material.Ka.g * Oa.g * Od.g;
-		ambient.b = material.Ka.b * Oa.b * Od.b;
-
-		// Calculate the diffuse contribution.
-		final double diffuseFactor = N.dot(L);
-		if (diffuseFactor > 0)
+		double Oar = 1.0, Oag = 1.0, Oab = 1.0;
+		double Odr = 1.0, Odg = 1.0, Odb = 1.0;
+		double Osr = 1.0, Osg = 1.0, Osb = 1.0;
+		if (material.ambient != null)
 		{
-			diffuse.r = diffuseFactor * material.Kd.r * Od.r;
-			diffuse.g = diffuseFactor * material.Kd.g * Od.g;
-			diffuse.b = diffuseFactor * material.Kd.b * Od.b;
-
-			// Calculate the specular contribution.
-			final double specularFactor = getSpecularFactor(N, L, V, material.shininess);
-			specular.r = specularFactor * material.Ks.r * Os.r;
-			specular.g = specularFactor * material.Ks.g * Os.g;
-			specular.b = specularFactor * material.Ks.b * Os.b;
+			final int texel = material.ambient.sample(fragment);
+			Oar = ((texel >> 16) & 0xff) * 0.00392156862; // 0.00392156862 = (1/255).
+			Oag = ((texel >>  8) & 0xff) * 0.00392156862;
+			Oab =  (texel        & 0xff) * 0.00392156862;
 		}
-		// Add all contributions.
-		return new ColorRGB
-		(
-			ambient.r + ((diffuse.r + specular.r) * fatt * color.r),
-			ambient.g + ((diffuse.g + specular.g) * fatt * color.g),
-			ambient.b + ((diffuse.b + specular.b) * fatt * color.b)
-		);
-	}
-	/**
-	 * Return this light's specular factor.
-	 * @param N the surface normal.
-	 * @param L the light's direction vector.
-	 * @param V the view vector.
-	 * @param shininess the material's shininess.
-	 */
-	private double getSpecularFactor
-	(
-		final Vector3f N,
-		final Vector3f L,
-		final Vector3f V,
-		final double shininess
-	)
-	{
-		double gamma = 0;
+		if (material.diffuse != null)
+		{
+			final int texel = material.diffuse.sample(fragment);
+			Odr = ((texel >> 16) & 0xff) * 0.00392156862;
+			Odg = ((texel >>  8) & 0xff) * 0.00392156862;
+			Odb =  (texel        & 0xff) * 0.00392156862;
+		}
+		if (material.specular != null)
+		{
+			final int texel = material.specular.sample(fragment);
+			Osr = ((texel >> 16) & 0xff) * 0.00392156862;
+			Osg = ((texel >>  8) & 0xff) * 0.00392156862;
+			Osb =  (texel        & 0xff) * 0.00392156862;
+		}
+
+		// The ambient contribution, which is added once per light.
+		final double ambientr = material.Ka.r * Oar * Odr;
+		final double ambientg = material.Ka.g * Oag * Odg;
+		final double ambientb = material.Ka.b * Oab * Odb;
+
+		// The material's diffuse and specular reflectances.
+		final double Kdr = material.Kd.r * Odr;
+		final double Kdg = material.Kd.g * Odg;
+		final double Kdb = material.Kd.b * Odb;
+		final double Ksr = material.Ks.r * Osr;
+		final double Ksg = material.Ks.g * Osg;
+		final double Ksb = material.Ks.b * Osb;
+		final double shininess = material.shininess;
+		final PowerTable specularTable =
+		RuntimeOptions.EnableSpecularLookupTables ? material.getSpecularTable() : null;
+		final boolean isFastExponentiation = RuntimeOptions.EnableFastExponentiation;
 
-		if (this.reflectionModel == ReflectionModel.Phong)
+		// The fragment's position in world space, where it is tested against the shadow maps.
+		double Wx = 0.0, Wy = 0.0, Wz = 0.0;
+		if (WINDOWTOWORLD != null)
 		{
-			// Phong reflection model.
-			final Vector3f R = new Vector3f();// FIXME Vector3f.normalise(new Vector3f(L, N.multiply(2.0 * N.dot(L))));
-			gamma = Math.max(0, R.dot(V));
+			final double M[] = WINDOWTOWORLD;
+			final double Ww = (M[12] * Px) + (M[13] * Py) + (M[14] * Pz) + M[15];
+			Wx = ((M[0] * Px) + (M[1] * Py) + (M[ 2] * Pz) + M[ 3]) / Ww;
+			Wy = ((M[4] * Px) + (M[5] * Py) + (M[ 6] * Pz) + M[ 7]) / Ww;
+			Wz = ((M[8] * Px) + (M[9] * Py) + (M[10] * Pz) + M[11]) / Ww;
 		}
-		else if (this.reflectionModel == ReflectionModel.BlinnPhong)
+
+		double r = ambientr * lightCount, g = ambientg * lightCount, b = ambientb * lightCount;
+		for (final LightEmitter light : lights)
 		{
-			// Blinn-Phong shading model.
-			final Vector3f H = Vector3f.normalise(new Vector3f(L.i + V.i, L.j + V.j, L.k + V.k));
-			gamma = N.dot(H);
+			// The unit vector originating from the surface position, directed towards this light source.
+			double Lx = Px - light.Lx, Ly = Py - light.Ly, Lz = Pz - light.Lz;
+			final double distance = Math.sqrt((Lx * Lx) + (Ly * Ly) + (Lz * Lz));
+			if (distance != 0.0)
+			{
+				Lx /= distance;
+				Ly /= distance;
+				Lz /= distance;
+			}
+
+			// Calculate the diffuse and specular contributions.
+			final double diffuseFactor = (Nx * Lx) + (Ny * Ly) + (Nz * Lz);
+			if (diffuseFactor > 0)
+			{
+				// Fragments in the light's shadow only receive its ambient contribution.
+				final ShadowMap shadowMap = light.uniformShadowMap;
+				if (WINDOWTOWORLD != null && shadowMap != null && shadowMap.isShadowed(Wx, Wy, Wz))
+					continue;
+
+				// Calculate the light's attenuation factor.
+				final double fatt = light.isAttenuated ? light.getAttenuationFactor(distance) : 1.0;
+
+				double gamma = 0.0;
+				if (light.isBlinnPhong)
+				{
+					// Blinn-Phong shading model.
+					double Hx = Lx + Vx, Hy = Ly + Vy, Hz = Lz + Vz;
+					final double Hm = Math.sqrt((Hx * Hx) + (Hy * Hy) + (Hz * Hz));
+					if (Hm != 0.0)
+					{
+						Hx /= Hm;
+						Hy /= Hm;
+						Hz /= Hm;
+					}
+					gamma = (Nx * Hx) + (Ny * Hy) + (Nz * Hz);
+				}
+				// FIXME The Phong reflection model's reflection vector R = 2(N.L)N - L is not
+				// implemented yet, and its specular factor is therefore always 1.
+				final double specularFactor;
+				if (gamma == 0.0)
+					specularFactor = 1.0;
+				else if (gamma > 0.0 && gamma <= 1.0 && specularTable != null)
+					specularFactor = specularTable.get(gamma);
+				else if (gamma > 0.0 && isFastExponentiation)
+					specularFactor = FastMath.pow(gamma, shininess);
+				else
+					specularFactor = Math.pow(gamma, shininess);
+
+				r += ((diffuseFactor * Kdr) + (specularFactor * Ksr)) * fatt * light.Lr;
+				g += ((diffuseFactor * Kdg) + (specularFactor * Ksg)) * fatt * light.Lg;
+				b += ((diffuseFactor * Kdb) + (specularFactor * Ksb)) * fatt * light.Lb;
+			}
 		}
-		return (gamma != 0.0 ? Math.pow(gamma, shininess) : 1.0);
+		return ColorRGB.merge(r, g, b);
 	}
-
 	private final double constantAttenuationCoefficient = 0.2;
 	private final double linearAttenuationCoefficient = 0.5;
 	private final double quadraticAttenuationCoefficient = 0.8;
@@ -164,6 +164,12 @@ public final class SceneGraph
 		 * Has this node been pruned from the graph?
 		 */
 		private boolean isPruned = false;
+		/**
+		 * The number of times the node's contents have been modified. Unlike transformations,
+		 * which are compared directly, changes to the contents are detected by comparing
+		 * the revision with the one that was last rendered.
+		 */
+		private int revision = 0;
 		/**
 		 * Test whether a given node is a child of this node.
 		 */
@@ -261,6 +267,21 @@ public final class SceneGraph
 		{
 			return isPruned;
 		}
+		/**
+		 * Return the number of times the node's contents have been modified.
+		 */
+		public final int getRevision()
+		{
+			return revision;
+		}
+		/**
+		 * Mark the node's contents as modified. This must be called each time a change is
+		 * made that affects how the node is rendered, other than to its transformation.
+		 */
+		protected final void setModified()
+		{
+			++revision;
+		}
 		/**
 		 * Dispose of the node and its children.
 		 */
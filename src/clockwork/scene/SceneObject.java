@@ -48,6 +48,29 @@ public abstract class SceneObject extends SceneGraph.Branch
 	 * The object's scale.
 	 */
 	protected final Vector3f scale = new Vector3f(1.0f, 1.0f, 1.0f);
+	/**
+	 * The object's local MODEL transformation matrix, built from its position, orientation
+	 * and scale. It is only recalculated when one of these attributes has been modified.
+	 */
+	private final Matrix4 LOCAL = new Matrix4();
+	/**
+	 * Does the local MODEL transformation matrix need to be recalculated?
+	 */
+	private boolean isDirtyLOCAL = true;
+	/**
+	 * The parent transformation that was used to calculate the current CMTM. If the parent's
+	 * transformation hasn't changed since the last traversal, the cached CMTM is reused.
+	 */
+	private final Matrix4 parentCMTM = new Matrix4();
+	/**
+	 * The object's current MODEL transformation matrix, i.e. its world transformation.
+	 */
+	private Matrix4 CMTM = null;
+	/**
+	 * The object's NORMAL transformation matrix, i.e. the inverse transpose of its CMTM.
+	 * This is calculated on demand and discarded when the CMTM changes.
+	 */
+	private Matrix4 NORMAL = null;
 	/**
 	 * Instantiate a SceneObject with a given name, position, orientation, and scale.
 	 */
@@ -98,6 +121,7 @@ public abstract class SceneObject extends SceneGraph.Branch
 	public void setPosition(final Point3f position)
 	{
 		this.position.setXYZ(position.getXYZ());
+		setDirty();
 	}
 	/**
 	 * Add a delta value to the current position.
@@ -107,6 +131,7 @@ public abstract class SceneObject extends SceneGraph.Branch
 		position.x += delta.x;
 		position.y += delta.y;
 		position.z += delta.z;
+		setDirty();
 	}
 	/**
 	 * Get the object's orientation.
@@ -125,6 +150,7 @@ public abstract class SceneObject extends SceneGraph.Branch
 		{
 			this.orientation.copy(orientation);
 			this.orientation.clamp();
+			setDirty();
 		}
 	}
 	/**
@@ -139,6 +165,7 @@ public abstract class SceneObject extends SceneGraph.Branch
 		this.orientation.yaw += dyaw;
 		this.orientation.pitch += dpitch;
 		this.orientation.clamp();
+		setDirty();
 	}
 	/**
 	 * Get the object's scale.
@@ -153,6 +180,7 @@ public abstract class SceneObject extends SceneGraph.Branch
 	public final void setScale(final Vector3f scale)
 	{
 		this.scale.setIJK(scale.getIJK());
+		setDirty();
 	}
 	/**
 	 * Add a delta value to the current scale.
@@ -160,6 +188,58 @@ public abstract class SceneObject extends SceneGraph.Branch
 	public final void addScale(final Vector3f delta)
 	{
 		scale.add(delta);
+		setDirty();
+	}
+	/**
+	 * Mark the object's transformation matrices as outdated. This must be called each time
+	 * the object's position, orientation or scale is modified.
+	 */
+	protected final void setDirty()
+	{
+		isDirtyLOCAL = true;
+	}
+	/**
+	 * Return the object's local MODEL transformation matrix.
+	 */
+	public final Matrix4 getLocalMatrix()
+	{
+		if (isDirtyLOCAL)
+		{
+			LOCAL.copy(Matrix4.Model(position, orientation, scale));
+			isDirtyLOCAL = false;
+
+			// The world transformation depends on the local transformation.
+			CMTM = null;
+		}
+		return LOCAL;
+	}
+	/**
+	 * Return the object's current MODEL transformation matrix, relative to a given
+	 * parent transformation. The result is cached and reused for as long as neither the
+	 * object nor its parent transformation change.
+	 * @param parent the parent's transformation matrix.
+	 */
+	public final Matrix4 getWorldMatrix(final Matrix4 parent)
+	{
+		final Matrix4 local = getLocalMatrix();
+		if (CMTM == null || !parentCMTM.isEqual(parent))
+		{
+			parentCMTM.copy(parent);
+			CMTM = parent.multiply(local);
+			NORMAL = null;
+		}
+		return CMTM;
+	}
+	/**
+	 * Return the object's NORMAL transformation matrix, i.e. the inverse transpose of its
+	 * current MODEL transformation matrix.
+	 */
+	public final Matrix4 getNormalMatrix()
+	{
+		if (NORMAL == null)
+			NORMAL = CMTM != null ? Matrix4.normal(CMTM) : new Matrix4();
+
+		return NORMAL;
 	}
 	/**
 	 * Update the object.
@@ -180,8 +260,9 @@ public abstract class SceneObject extends SceneGraph.Branch
 		final RenderProcessingQueue queue
 	)
 	{
-		// Calculate the object's current MODEL transformation matrix.
-		final Matrix4 CMTM = stack.peek().multiply(Matrix4.Model(position, orientation, scale));
+		// Get the object's current MODEL transformation matrix. This is only recalculated if
+		// the object or one of its ancestors has been modified.
+		final Matrix4 CMTM = getWorldMatrix(stack.peek());
 
 		// Push the CMTM onto the stack.
 		stack.push(CMTM);
@@ -62,10 +62,14 @@ public final class Debug
 	 */
 	static
 	{
-		// Get the device's refresh rate.
-		GraphicsDevice[] devices = GraphicsEnvironment.getLocalGraphicsEnvironment().getScreenDevices();
-		if (devices.length > 0)
-			Debug.RefreshRate = devices[0].getDisplayMode().getRefreshRate();
+		// Get the device's refresh rate. There is no screen device when the renderer
+		// is run headless, e.g. by the benchmarks.
+		if (!GraphicsEnvironment.isHeadless())
+		{
+			GraphicsDevice[] devices = GraphicsEnvironment.getLocalGraphicsEnvironment().getScreenDevices();
+			if (devices.length > 0)
+				Debug.RefreshRate = devices[0].getDisplayMode().getRefreshRate();
+		}
 	}
 
 	/**
@@ -23,6 +23,7 @@
  */
 package clockwork.system;
 
+import clockwork.graphics.Texture;
 import clockwork.physics.lighting.LightEmitter;
 
 
@@ -46,6 +47,11 @@ public final class RuntimeOptions
 	public static boolean EnableBackfaceCulling = true;
 	public static boolean EnableOcclusionCulling = false;
 	public static boolean EnableClipping = false;
+	/**
+	 * Damage tracking only renders the regions of a frame covered by the renderables and
+	 * lights that have changed since the previous frame.
+	 */
+	public static boolean EnableDamageTracking = false;
 	/**
 	 * Per-vertex operations.
 	 */
@@ -53,6 +59,40 @@ public final class RuntimeOptions
 	public static boolean EnableMODEL = true;
 	public static boolean EnableNORMAL = true;
 	public static boolean EnablePROJECTION = true;
+	/**
+	 * The vertex cache reuses a renderable's transformed vertices for as long as its
+	 * transformations, the viewport and the renderer do not change.
+	 */
+	public static boolean EnableVertexCache = true;
+	/**
+	 * Rasterisation.
+	 */
+	public static boolean EnableFixedPointRasterisation = false;
+	/**
+	 * Variable-rate shading shades smooth tiles once per 2x2 or 4x4 block of pixels. A tile's
+	 * rate is reduced when the mean luma difference between its neighbouring pixels, out of
+	 * 255, is below the threshold, and reduced further below a quarter of it.
+	 */
+	public static boolean EnableVariableRateShading = false;
+	public static double VariableRateShadingThreshold = 4.0;
+	/**
+	 * Texturing.
+	 */
+	public static Texture.Filter TextureFilter = Texture.Filter.Nearest;
+	/**
+	 * Store loaded textures in the tiled memory layout. This can only be selected at startup,
+	 * before any texture is loaded.
+	 */
+	public static boolean EnableTiledTextures = false;
+	/**
+	 * Compress loaded opaque textures. This can only be selected at startup, before any
+	 * texture is loaded.
+	 */
+	public static boolean EnableTextureCompression = false;
+	/**
+	 * The maximum number of pages each virtual texture keeps in memory.
+	 */
+	public static int VirtualTextureCacheSize = 256;
 	/**
 	 * Per-fragment operations.
 	 */
@@ -65,6 +105,26 @@ public final class RuntimeOptions
 	 */
 	public static LightEmitter.ReflectionModel LightReflectionModel =
 	LightEmitter.ReflectionModel.Phong;
+	public static boolean EnableTiledLightCulling = false;
+	public static boolean EnableSpecularLookupTables = false;
+	public static boolean EnableFastExponentiation = false;
+	/**
+	 * The largest absolute error allowed in a specular lookup table's values. The default
+	 * is a quarter of an 8-bit color channel's smallest step.
+	 */
+	public static double SpecularLookupTableErrorBound = 1.0 / 1024.0;
+	/**
+	 * Gouraud shading evaluates lighting at each vertex instead of at each fragment. When it
+	 * is enabled, it is used for renderables whose projected area, in pixels, is no larger
+	 * than the threshold, where the vertices are typically fewer than the fragments.
+	 */
+	public static boolean EnableGouraudShading = false;
+	public static double GouraudShadingAreaThreshold = 64.0 * 64.0;
+	/**
+	 * Spot and directional lights cast shadows using shadow maps with the given resolution.
+	 */
+	public static boolean EnableShadows = false;
+	public static int ShadowMapResolution = 512;
 
 	/**
 	 * Framebuffer operations.
@@ -73,4 +133,46 @@ public final class RuntimeOptions
 	public static boolean EnableAmbientOcclusion = false;
 	public static boolean EnableScreenSpaceAmbientOcclusion = false;
 	public static boolean EnableBlending = false;
+	/**
+	 * The number of samples stored per pixel: 1 disables multisample anti-aliasing, while
+	 * 2, 4 or 8 enable it.
+	 */
+	public static int MultisampleCount = 1;
+	/**
+	 * Temporal accumulation blends each jittered frame with the previous frames. While the
+	 * camera moves, the current frame's weight is at least the given weight.
+	 */
+	public static boolean EnableTemporalAccumulation = false;
+	public static double TemporalAccumulationWeight = 0.25;
+	/**
+	 * Dynamic resolution scaling renders frames at a fraction of the display's resolution,
+	 * no smaller than the floor, so that they are rendered within the budget in milliseconds.
+	 */
+	public static boolean EnableDynamicResolution = false;
+	public static double DynamicResolutionBudget = 1000.0 / 30.0;
+	public static double DynamicResolutionFloor = 0.5;
+	/**
+	 * Progressive refinement renders previews, at the given fraction of the resolution and
+	 * without anti-aliasing, while the user interacts with the scene. Once the input has been
+	 * idle for the given delay in milliseconds, the scene is rendered again at full quality.
+	 */
+	public static boolean EnableProgressiveRefinement = false;
+	public static double PreviewResolutionScale = 0.5;
+	public static int RefinementDelay = 250;
+	/**
+	 * Post-processing filters. Tone mapping compresses highlights with the given exposure,
+	 * color grading scales saturation and contrast, and gamma correction applies 1/Gamma.
+	 */
+	public static boolean EnableToneMapping = false;
+	public static double ToneMappingExposure = 1.0;
+	public static boolean EnableColorGrading = false;
+	public static double ColorGradingSaturation = 1.25;
+	public static double ColorGradingContrast = 1.1;
+	public static boolean EnableGammaCorrection = false;
+	public static double Gamma = 2.2;
+	/**
+	 * Store depth values in single precision. This is selected at startup, before the
+	 * framebuffer is created. The rest of the pipeline remains in double precision.
+	 */
+	public static boolean EnableSinglePrecisionDepth = false;
 }
@@ -0,0 +1,81 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2013 Jeremy Othieno.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package clockwork.types.math;
+
+/**
+ * Fast approximations of common math functions, trading accuracy for speed.
+ */
+public final class FastMath
+{
+	private static final double LN2 = 0.6931471805599453;
+	private static final double INVLN2 = 1.4426950408889634; // 1/ln(2).
+	/**
+	 * Return an approximation of the base 2 logarithm of a given positive, finite value.
+	 * The value is split into its exponent and mantissa m, and log2(m) is approximated by
+	 * the series 2/ln(2).(t + t^3/3 + t^5/5 + t^7/7) where t = (m - 1)/(m + 1). The absolute
+	 * error is less than 2e-5.
+	 * @param x the value whose logarithm is to be calculated.
+	 */
+	public static double log2(final double x)
+	{
+		final long bits = Double.doubleToRawLongBits(x);
+		final int exponent = (int)((bits >>> 52) & 0x7ff) - 1023;
+		final double m = Double.longBitsToDouble((bits & 0x000fffffffffffffL) | 0x3ff0000000000000L);
+
+		final double t = (m - 1.0) / (m + 1.0);
+		final double t2 = t * t;
+
+		return exponent + (2.0 * INVLN2 * t * (1.0 + t2 * ((1.0 / 3.0) + t2 * ((1.0 / 5.0) + t2 * (1.0 / 7.0)))));
+	}
+	/**
+	 * Return an approximation of 2 raised to the power of a given value. The value is split
+	 * into an integer part i and a fraction f in [-0.5, 0.5], and 2^f is approximated by a
+	 * degree 5 Taylor polynomial of e^(f.ln(2)). The relative error is less than 3e-6.
+	 * @param y the exponent.
+	 */
+	public static double exp2(final double y)
+	{
+		if (y < -1022.0)
+			return 0.0;
+		else if (y > 1023.0)
+			return Double.POSITIVE_INFINITY;
+
+		final double i = Math.floor(y + 0.5);
+		final double f = (y - i) * LN2;
+		final double p = 1.0 + f * (1.0 + f * (0.5 + f * ((1.0 / 6.0) + f * ((1.0 / 24.0) + f * (1.0 / 120.0)))));
+
+		return Double.longBitsToDouble(((long)i + 1023) << 52) * p;
+	}
+	/**
+	 * Return an approximation of a positive, finite base raised to the power of an exponent,
+	 * calculated as 2^(exponent.log2(base)). Since the logarithm's error is scaled by the
+	 * exponent, the result's relative error grows with the exponent.
+	 * @param base the base.
+	 * @param exponent the exponent.
+	 */
+	public static double pow(final double base, final double exponent)
+	{
+		return exp2(exponent * log2(base));
+	}
+}
@@ -120,17 +120,13 @@ public final class Matrix4
 		{
 			newdata = new double[16];
 
-			for (int i = 0; i < 4; ++i)
+			final double a[] = this.data;
+			final double b[] = that.data;
+			for (int i = 0; i < 16; i += 4)
 			{
-				int offset = i * 4;
+				final double ai0 = a[i], ai1 = a[i + 1], ai2 = a[i + 2], ai3 = a[i + 3];
 				for (int j = 0; j < 4; ++j)
-				{
-					newdata[offset] = 0.0f;
-					for (int k = 0; k < 4; ++k)
-						newdata[offset] += this.get(i, k) * that.get(k, j);
-
-					++offset;
-				}
+					newdata[i + j] = ai0 * b[j] + ai1 * b[j + 4] + ai2 * b[j + 8] + ai3 * b[j + 12];
 			}
 		}
 		return new Matrix4(newdata);
@@ -189,12 +185,23 @@ public final class Matrix4
 		return new Matrix4(newdata);
 	}
 	/**
-	 * TODO Optimise: Replace get(i, j).
-	 * Return the inverse of the given matrix, courtesy of http://stackoverflow.com/q/2624422
+	 * Return true if the matrix is affine, i.e. its bottom row is <0, 0, 0, 1>, false otherwise.
+	 */
+	public boolean isAffine()
+	{
+		return data[12] == 0.0 && data[13] == 0.0 && data[14] == 0.0 && data[15] == 1.0;
+	}
+	/**
+	 * Return the inverse of the given matrix. Affine matrices, which make up the bulk of the
+	 * MODEL transformations, are inverted with {@link #inverseAffine}, while any other matrix
+	 * is inverted by cofactors, courtesy of http://stackoverflow.com/q/2624422
 	 * @param input the matrix whose inverse we wish to calculate.
 	 */
 	public static Matrix4 inverse(final Matrix4 input)
 	{
+		if (input != null && input.isAffine())
+			return Matrix4.inverseAffine(input);
+
 		final Matrix4 output = new Matrix4();
 		if (input != null)
 		{
@@ -237,6 +244,60 @@ public final class Matrix4
 		}
 		return output;
 	}
+	/**
+	 * Return the inverse of an affine matrix. The inverse of the upper 3x3 submatrix A is
+	 * calculated from its cofactors and the translation t is replaced by -inverse(A) * t, which
+	 * is a fraction of the cost of a general 4x4 inverse. The result is undefined if the given
+	 * matrix is not affine.
+	 * @param input the affine matrix whose inverse we wish to calculate.
+	 */
+	public static Matrix4 inverseAffine(final Matrix4 input)
+	{
+		final Matrix4 output = new Matrix4();
+		if (input != null)
+		{
+			final double a[] = input.data;
+			final double m[] = output.data;
+
+			// The cofactors of the upper 3x3 submatrix.
+			final double c00 = a[5] * a[10] - a[6] * a[9];
+			final double c01 = a[6] * a[8]  - a[4] * a[10];
+			final double c02 = a[4] * a[9]  - a[5] * a[8];
+			final double c10 = a[2] * a[9]  - a[1] * a[10];
+			final double c11 = a[0] * a[10] - a[2] * a[8];
+			final double c12 = a[1] * a[8]  - a[0] * a[9];
+			final double c20 = a[1] * a[6]  - a[2] * a[5];
+			final double c21 = a[2] * a[4]  - a[0] * a[6];
+			final double c22 = a[0] * a[5]  - a[1] * a[4];
+
+			final double invdet = 1.0 / (a[0] * c00 + a[1] * c01 + a[2] * c02);
+
+			m[0]  = c00 * invdet;
+			m[1]  = c10 * invdet;
+			m[2]  = c20 * invdet;
+			m[4]  = c01 * invdet;
+			m[5]  = c11 * invdet;
+			m[6]  = c21 * invdet;
+			m[8]  = c02 * invdet;
+			m[9]  = c12 * invdet;
+			m[10] = c22 * invdet;
+
+			// The inverse translation.
+			m[3]  = -(m[0] * a[3] + m[1] * a[7] + m[2]  * a[11]);
+			m[7]  = -(m[4] * a[3] + m[5] * a[7] + m[6]  * a[11]);
+			m[11] = -(m[8] * a[3] + m[9] * a[7] + m[10] * a[11]);
+		}
+		return output;
+	}
+	/**
+	 * Return the matrix used to transform surface normals, i.e. the inverse transpose of the
+	 * given matrix.
+	 * @param input the matrix whose normal matrix we wish to calculate.
+	 */
+	public static Matrix4 normal(final Matrix4 input)
+	{
+		return Matrix4.inverse(input).transpose();
+	}
 	/**
 	 * Return a translation matrix.
 	 */
@@ -291,40 +352,9 @@ public final class Matrix4
 	 */
 	public static Matrix4 rotate(final double roll, final double yaw, final double pitch)
 	{
-		// Convert degrees to radians.
-		final double alpha = Math.toRadians(roll);
-		final double gamma = Math.toRadians(yaw);
-		final double theta = Math.toRadians(pitch);
-
-		final double csx = Math.cos(alpha);
-		final double csy = Math.cos(gamma);
-		final double csz = Math.cos(theta);
-		final double snx = Math.sin(alpha);
-		final double sny = Math.sin(gamma);
-		final double snz = Math.sin(theta);
-
-		final double M[][] = new double[][]
-		{
-			{	// Rotation around the X axis.
-				 1.0, 0.0, 0.0, 0.0,
-				 0.0, csx,-snx, 0.0,
-				 0.0, snx, csx, 0.0,
-				 0.0, 0.0, 0.0, 1.0
-			},
-			{	// Rotation around the Y axis.
-				 csy, 0.0, sny, 0.0,
-				 0.0, 1.0, 0.0, 0.0,
-				-sny, 0.0, csy, 0.0,
-				 0.0, 0.0, 0.0, 1.0
-			},
-			{	// Rotation around the Z axis.
-				 csz,-snz, 0.0, 0.0,
-				 snz, csz, 0.0, 0.0,
-				 0.0, 0.0, 1.0, 0.0,
-				 0.0, 0.0, 0.0, 1.0
-			}
-		};
-		return new Matrix4(M[0]).multiply(new Matrix4(M[2]).multiply(new Matrix4(M[1])));
+		// The rotations around the X, Z and Y axes are composed, in that order, as a
+		// quaternion which is then converted into a matrix.
+		return Quaternion.fromEuler(roll, yaw, pitch).toMatrix4();
 	}
 	/**
 	 * Return a rotation matrix for a given orientation.
@@ -332,7 +362,15 @@ public final class Matrix4
 	 */
 	public static Matrix4 rotate(final Orientation orientation)
 	{
-		return Matrix4.rotate(orientation.roll, orientation.yaw, orientation.pitch);
+		return new Matrix4(orientation.getRotationMatrix());
+	}
+	/**
+	 * Return a rotation matrix for a given quaternion.
+	 * @param quaternion the quaternion that represents the rotation.
+	 */
+	public static Matrix4 rotate(final Quaternion quaternion)
+	{
+		return quaternion.toMatrix4();
 	}
 	/**
 	 * Copy the content of another matrix into this one.
@@ -343,6 +381,15 @@ public final class Matrix4
 		if (that != null)
 			System.arraycopy(that.data, 0, this.data, 0, 16);
 	}
+	/**
+	 * Test for equality between two matrices. Returns true if both matrices
+	 * hold identical data, false otherwise.
+	 * @param that the matrix to test.
+	 */
+	public boolean isEqual(final Matrix4 that)
+	{
+		return that != null && (this == that || Arrays.equals(this.data, that.data));
+	}
 	/**
 	 * Return the matrix value at the given indices.
 	 * @param i the row index.
@@ -475,11 +522,25 @@ public final class Matrix4
 		return buffer.toString();
 	}
 	/**
-	 * TODO Document parameters.
-	 * Calculate a model transformation matrix.
+	 * Calculate a model transformation matrix, i.e. the product of a translation, a rotation
+	 * and a scaling. The product is built directly from the orientation's cached rotation
+	 * matrix since scaling only multiplies its columns and translation only sets its last column.
+	 * @param p the model's position.
+	 * @param o the model's orientation.
+	 * @param s the model's scale.
 	 */
 	public static Matrix4 Model(final Point3f p, final Orientation o, final Vector3f s)
 	{
-		return Matrix4.translate(p).multiply(Matrix4.rotate(o).multiply(Matrix4.scale(s)));
+		final double r[] = o.getRotationMatrix().data;
+		return new Matrix4
+		(
+			new double[]
+			{
+				r[0] * s.i, r[1] * s.j, r[2]  * s.k, p.x,
+				r[4] * s.i, r[5] * s.j, r[6]  * s.k, p.y,
+				r[8] * s.i, r[9] * s.j, r[10] * s.k, p.z,
+				       0.0,        0.0,         0.0, 1.0
+			}
+		);
 	}
 }
@@ -43,6 +43,18 @@ public class Orientation
 	 * The pitch rotation angle in degrees.
 	 */
 	public double pitch = 0;
+	/**
+	 * The quaternion and rotation matrix equivalent to the Euler angles. Both are cached
+	 * until any of the angles is modified.
+	 */
+	private final Quaternion quaternion = new Quaternion();
+	private final Matrix4 rotation = new Matrix4();
+	/**
+	 * The Euler angles from which the cached quaternion and rotation matrix were calculated.
+	 */
+	private double cachedRoll = Double.NaN;
+	private double cachedYaw = Double.NaN;
+	private double cachedPitch = Double.NaN;
 	/**
 	 * The default constructor.
 	 */
@@ -74,13 +86,87 @@ public class Orientation
 		}
 	}
 	/**
-	 * Clamp this orientation's angles to the [0, 360[ range.
+	 * Clamp this orientation's angles to the [0, 360[ range. Angles that are already in range,
+	 * which is the common case, are left untouched.
 	 */
 	public void clamp()
 	{
-		roll = (roll + 360.0) % 360.0;
-		yaw = (yaw+ 360.0) % 360.0;
-		pitch = (pitch + 360.0) % 360.0;
+		roll = Orientation.clamp(roll);
+		yaw = Orientation.clamp(yaw);
+		pitch = Orientation.clamp(pitch);
+	}
+	/**
+	 * Clamp an angle to the [0, 360[ range.
+	 * @param angle the angle in degrees.
+	 */
+	private static double clamp(final double angle)
+	{
+		if (angle >= 0.0 && angle < 360.0)
+			return angle;
+
+		final double output = angle % 360.0;
+		return output < 0.0 ? output + 360.0 : output;
+	}
+	/**
+	 * Recalculate the cached quaternion and rotation matrix if the Euler angles
+	 * have been modified since they were last calculated.
+	 */
+	private void validate()
+	{
+		if (roll != cachedRoll || yaw != cachedYaw || pitch != cachedPitch)
+		{
+			quaternion.copy(Quaternion.fromEuler(roll, yaw, pitch));
+			quaternion.toMatrix4(rotation);
+			cachedRoll = roll;
+			cachedYaw = yaw;
+			cachedPitch = pitch;
+		}
+	}
+	/**
+	 * Return the quaternion that represents this orientation. The returned
+	 * quaternion must not be modified.
+	 */
+	public Quaternion toQuaternion()
+	{
+		validate();
+		return quaternion;
+	}
+	/**
+	 * Set the orientation from a quaternion. The Euler angles are updated so that the
+	 * orientation can still be edited through them.
+	 * @param that the quaternion to set.
+	 */
+	public void setQuaternion(final Quaternion that)
+	{
+		if (that != null)
+		{
+			quaternion.copy(that);
+			quaternion.normalise();
+			quaternion.toMatrix4(rotation);
+
+			final Orientation euler = quaternion.toOrientation();
+			cachedRoll = roll = euler.roll;
+			cachedYaw = yaw = euler.yaw;
+			cachedPitch = pitch = euler.pitch;
+		}
+	}
+	/**
+	 * Apply a rotation to this orientation.
+	 * @param delta the rotation to apply.
+	 */
+	public void rotate(final Quaternion delta)
+	{
+		if (delta != null)
+			setQuaternion(delta.multiply(toQuaternion()));
+	}
+	/**
+	 * Return the rotation matrix that represents this orientation. The matrix is
+	 * cached until the orientation changes, and must not be modified.
+	 */
+	public Matrix4 getRotationMatrix()
+	{
+		validate();
+		return rotation;
 	}
 	/**
 	 * Convert the orientation to a 3D point value.
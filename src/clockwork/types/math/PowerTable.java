@@ -0,0 +1,126 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2013 Jeremy Othieno.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package clockwork.types.math;
+
+/**
+ * A lookup table for the function x^exponent over the interval [0, 1]. The function is
+ * sampled at evenly spaced points and linearly interpolated between them. The table is
+ * made just large enough for the interpolation error to stay within a given bound.
+ */
+public final class PowerTable
+{
+	/**
+	 * The smallest and largest number of intervals a table may be divided into.
+	 */
+	private static final int MIN_INTERVALS = 64;
+	private static final int MAX_INTERVALS = 1 << 16;
+	/**
+	 * The tabulated function's exponent.
+	 */
+	private final double exponent;
+	/**
+	 * The bound on the absolute interpolation error.
+	 */
+	private final double errorBound;
+	/**
+	 * The number of intervals and the function's values at their end points.
+	 */
+	private final int intervals;
+	private final double table[];
+	/**
+	 * Instantiate a table with a given number of intervals.
+	 */
+	private PowerTable(final double exponent, final double errorBound, final int intervals)
+	{
+		this.exponent = exponent;
+		this.errorBound = errorBound;
+		this.intervals = intervals;
+		this.table = new double[intervals + 1];
+		for (int i = 0; i <= intervals; ++i)
+			table[i] = Math.pow((double)i / intervals, exponent);
+	}
+	/**
+	 * Create a table for the function x^exponent whose interpolation error does not exceed
+	 * a given bound. If the bound cannot be met by a reasonably sized table, which happens
+	 * when the function is too steep near 0, null is returned.
+	 * @param exponent the function's exponent.
+	 * @param errorBound the bound on the absolute interpolation error.
+	 */
+	public static PowerTable create(final double exponent, final double errorBound)
+	{
+		for (int intervals = MIN_INTERVALS; intervals <= MAX_INTERVALS; intervals <<= 1)
+		{
+			final PowerTable table = new PowerTable(exponent, errorBound, intervals);
+			if (table.getMaximumError() <= errorBound)
+				return table;
+		}
+		return null;
+	}
+	/**
+	 * Return the largest interpolation error, measured at the quarter points of each interval.
+	 * Since x^exponent is either convex or concave over [0, 1], the error within an interval
+	 * peaks once, close to its middle.
+	 */
+	private double getMaximumError()
+	{
+		double error = 0.0;
+		for (int i = 0; i < intervals; ++i)
+		{
+			for (int q = 1; q < 4; ++q)
+			{
+				final double x = (i + (q * 0.25)) / intervals;
+				error = Math.max(error, Math.abs(get(x) - Math.pow(x, exponent)));
+			}
+		}
+		return error;
+	}
+	/**
+	 * Return the tabulated function's exponent.
+	 */
+	public double getExponent()
+	{
+		return exponent;
+	}
+	/**
+	 * Return the bound on the table's absolute interpolation error.
+	 */
+	public double getErrorBound()
+	{
+		return errorBound;
+	}
+	/**
+	 * Return the interpolated value of x^exponent, where x is in [0, 1].
+	 * @param x the base.
+	 */
+	public double get(final double x)
+	{
+		final double p = x * intervals;
+		final int i = (int)p;
+		if (i >= intervals)
+			return table[intervals];
+
+		final double t0 = table[i];
+		return t0 + ((p - i) * (table[i + 1] - t0));
+	}
+}
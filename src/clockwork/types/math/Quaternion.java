@@ -0,0 +1,292 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2013 Jeremy Othieno.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package clockwork.types.math;
+
+/**
+ * A unit quaternion used to represent rotations. Unlike Euler angles, quaternions can be
+ * composed and interpolated without suffering from gimbal lock, and converted to a rotation
+ * matrix without evaluating any trigonometric functions.
+ */
+public final class Quaternion
+{
+	/**
+	 * The quaternion's scalar (real) part.
+	 */
+	public double w = 1.0;
+	/**
+	 * The quaternion's vector (imaginary) part.
+	 */
+	public double x = 0.0;
+	public double y = 0.0;
+	public double z = 0.0;
+	/**
+	 * Instantiate an identity quaternion, i.e. a quaternion that represents no rotation.
+	 */
+	public Quaternion()
+	{}
+	/**
+	 * Instantiate a quaternion with given components.
+	 * @param w the scalar part.
+	 * @param x the vector part's X component.
+	 * @param y the vector part's Y component.
+	 * @param z the vector part's Z component.
+	 */
+	public Quaternion(final double w, final double x, final double y, final double z)
+	{
+		this.w = w;
+		this.x = x;
+		this.y = y;
+		this.z = z;
+	}
+	/**
+	 * Instantiate a quaternion copied from another.
+	 * @param that the quaternion to copy.
+	 */
+	public Quaternion(final Quaternion that)
+	{
+		copy(that);
+	}
+	/**
+	 * Copy a quaternion.
+	 * @param that the quaternion to copy.
+	 */
+	public void copy(final Quaternion that)
+	{
+		if (that != null)
+		{
+			this.w = that.w;
+			this.x = that.x;
+			this.y = that.y;
+			this.z = that.z;
+		}
+	}
+	/**
+	 * Return a quaternion that represents a rotation around a given axis.
+	 * @param axis the rotation axis.
+	 * @param angle the rotation angle in degrees.
+	 */
+	public static Quaternion fromAxisAngle(final Vector3f axis, final double angle)
+	{
+		final Vector3f u = Vector3f.normalise(axis);
+		final double theta = Math.toRadians(angle) * 0.5;
+		final double s = Math.sin(theta);
+
+		return new Quaternion(Math.cos(theta), u.i * s, u.j * s, u.k * s);
+	}
+	/**
+	 * Return a quaternion that represents the same rotation as a given set of Euler angles.
+	 * The rotations are composed in the same order as {@link Matrix4#rotate}, i.e. a rotation
+	 * around the X axis (roll), then the Z axis (pitch), then the Y axis (yaw).
+	 * @param roll the roll angle in degrees.
+	 * @param yaw the yaw angle in degrees.
+	 * @param pitch the pitch angle in degrees.
+	 */
+	public static Quaternion fromEuler(final double roll, final double yaw, final double pitch)
+	{
+		final double a = Math.toRadians(roll) * 0.5;
+		final double b = Math.toRadians(yaw) * 0.5;
+		final double c = Math.toRadians(pitch) * 0.5;
+
+		final double ca = Math.cos(a), sa = Math.sin(a);
+		final double cb = Math.cos(b), sb = Math.sin(b);
+		final double cc = Math.cos(c), sc = Math.sin(c);
+
+		// The product of the X, Z and Y rotations, in that order.
+		return new Quaternion
+		(
+			ca * cc * cb + sa * sc * sb,
+			sa * cc * cb - ca * sc * sb,
+			ca * cc * sb - sa * sc * cb,
+			ca * sc * cb + sa * cc * sb
+		);
+	}
+	/**
+	 * Convert the quaternion into roll, yaw and pitch Euler angles, in degrees. This is
+	 * the inverse of {@link #fromEuler}. The angles are in the [0, 360[ range.
+	 */
+	public Orientation toOrientation()
+	{
+		final double m[] = toMatrix4().getData();
+
+		// The sine of the pitch angle is held in the rotation matrix's first row.
+		final double sc = Math.max(-1.0, Math.min(1.0, -m[1]));
+		final double pitch = Math.asin(sc);
+
+		double roll, yaw;
+		if (Math.abs(sc) < 0.9999999)
+		{
+			roll = Math.atan2(m[9], m[5]);
+			yaw  = Math.atan2(m[2], m[0]);
+		}
+		else
+		{
+			// Gimbal lock: the roll and yaw rotations share an axis so the yaw is set to zero.
+			roll = sc > 0 ? Math.atan2(m[8], m[4]) : Math.atan2(-m[8], -m[4]);
+			yaw  = 0.0;
+		}
+		final Orientation output = new Orientation
+		(
+			Math.toDegrees(roll),
+			Math.toDegrees(yaw),
+			Math.toDegrees(pitch)
+		);
+		output.clamp();
+		return output;
+	}
+	/**
+	 * Return the product of this quaternion and another, i.e. the rotation represented by
+	 * that quaternion, followed by the rotation represented by this one.
+	 * @param that the quaternion to multiply.
+	 */
+	public Quaternion multiply(final Quaternion that)
+	{
+		return new Quaternion
+		(
+			w * that.w - x * that.x - y * that.y - z * that.z,
+			w * that.x + x * that.w + y * that.z - z * that.y,
+			w * that.y - x * that.z + y * that.w + z * that.x,
+			w * that.z + x * that.y - y * that.x + z * that.w
+		);
+	}
+	/**
+	 * Return the quaternion's conjugate which, for unit quaternions, is the inverse rotation.
+	 */
+	public Quaternion conjugate()
+	{
+		return new Quaternion(w, -x, -y, -z);
+	}
+	/**
+	 * Return the quaternion's magnitude.
+	 */
+	public double getMagnitude()
+	{
+		return Math.sqrt((w * w) + (x * x) + (y * y) + (z * z));
+	}
+	/**
+	 * Normalise this quaternion. Repeatedly composed rotations slowly drift away from
+	 * unit length, so this should be called after each composition.
+	 */
+	public Quaternion normalise()
+	{
+		final double magnitude = getMagnitude();
+		if (magnitude != 0.0)
+		{
+			final double invmagnitude = 1.0 / magnitude;
+			w *= invmagnitude;
+			x *= invmagnitude;
+			y *= invmagnitude;
+			z *= invmagnitude;
+		}
+		return this;
+	}
+	/**
+	 * Return the spherical linear interpolation between two quaternions.
+	 * @param start the quaternion at p = 0.
+	 * @param end the quaternion at p = 1.
+	 * @param p the interpolant.
+	 */
+	public static Quaternion slerp(final Quaternion start, final Quaternion end, final double p)
+	{
+		double cosine = start.w * end.w + start.x * end.x + start.y * end.y + start.z * end.z;
+
+		// Take the shortest path.
+		final double sign = cosine < 0.0 ? -1.0 : 1.0;
+		cosine *= sign;
+
+		double a = 1.0 - p;
+		double b = p * sign;
+
+		// Fall back on a linear interpolation when both rotations are nearly identical.
+		if (cosine < 0.9995)
+		{
+			final double theta = Math.acos(cosine);
+			final double invsine = 1.0 / Math.sin(theta);
+			a = Math.sin(a * theta) * invsine;
+			b = Math.sin(p * theta) * invsine * sign;
+		}
+		return new Quaternion
+		(
+			a * start.w + b * end.w,
+			a * start.x + b * end.x,
+			a * start.y + b * end.y,
+			a * start.z + b * end.z
+		).normalise();
+	}
+	/**
+	 * Return the rotation matrix represented by this quaternion.
+	 */
+	public Matrix4 toMatrix4()
+	{
+		final Matrix4 output = new Matrix4();
+		toMatrix4(output);
+		return output;
+	}
+	/**
+	 * Store the rotation matrix represented by this quaternion in a given matrix.
+	 * @param output the matrix where the rotation will be stored.
+	 */
+	public void toMatrix4(final Matrix4 output)
+	{
+		final double xx = x * x, yy = y * y, zz = z * z;
+		final double xy = x * y, xz = x * z, yz = y * z;
+		final double wx = w * x, wy = w * y, wz = w * z;
+
+		final double m[] = output.getData();
+		m[0]  = 1.0 - 2.0 * (yy + zz);
+		m[1]  = 2.0 * (xy - wz);
+		m[2]  = 2.0 * (xz + wy);
+		m[3]  = 0.0;
+		m[4]  = 2.0 * (xy + wz);
+		m[5]  = 1.0 - 2.0 * (xx + zz);
+		m[6]  = 2.0 * (yz - wx);
+		m[7]  = 0.0;
+		m[8]  = 2.0 * (xz - wy);
+		m[9]  = 2.0 * (yz + wx);
+		m[10] = 1.0 - 2.0 * (xx + yy);
+		m[11] = 0.0;
+		m[12] = 0.0;
+		m[13] = 0.0;
+		m[14] = 0.0;
+		m[15] = 1.0;
+	}
+	/**
+	 * Test for equality between two quaternions. Returns true if both quaternions
+	 * represent the same rotation, false otherwise.
+	 * @param that the quaternion to test.
+	 */
+	public boolean isEqual(final Quaternion that)
+	{
+		final double tolerance = 0.000001;
+		return that != null &&
+		Math.abs(Math.abs(w * that.w + x * that.x + y * that.y + z * that.z) - 1.0) < tolerance;
+	}
+	/**
+	 * Convert the quaternion data into a string.
+	 */
+	@Override
+	public String toString()
+	{
+		return String.format("<%.3f, %.3f, %.3f, %.3f>", w, x, y, z);
+	}
+}